@@ -0,0 +1,60 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+// Commits that list their files inline, so the cost grows with the number of tracked files.
+// deserialize decodes the header only; deserializeWithFiles also decodes the file lines.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class CommitBenchmark {
+  @Param({"10", "1000", "10000"})
+  int trackedFiles;
+
+  private Commit commit;
+  private byte[] bytes;
+
+  @Setup
+  public void setup() {
+    Map<String, String> tracked = new TreeMap<>();
+    for (int i = 0; i < trackedFiles; i++) {
+      String path = "dir" + (i % 100) + "/file" + i + ".txt";
+      tracked.put(path, Hashing.sha1(path.getBytes()));
+    }
+    commit = Commit.create("benchmark commit", List.of(Hashing.sha1(new byte[0])), tracked, 1_700_000_000_000L);
+    bytes = commit.serialize();
+  }
+
+  @Benchmark
+  public byte[] serialize() {
+    return commit.serialize();
+  }
+
+  @Benchmark
+  public Commit deserialize() {
+    return Commit.deserialize(bytes);
+  }
+
+  @Benchmark
+  public Map<String, String> deserializeWithFiles() {
+    return Commit.deserialize(bytes).getTrackedFiles();
+  }
+}
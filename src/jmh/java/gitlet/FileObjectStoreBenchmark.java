@@ -0,0 +1,74 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Loose-object writes and reads. Half of each blob is random and half is repeated text, so
+// deflate has work to do on both. Every write stores new content: the first bytes carry a
+// counter, since an id that is already stored is not written again. The store is emptied after
+// each iteration.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class FileObjectStoreBenchmark {
+  @Param({"1024", "65536", "1048576"})
+  int blobSize;
+
+  private Path repoDir;
+  private FileObjectStore store;
+  private byte[] data;
+  private String storedId;
+  private long counter;
+
+  @Setup(Level.Iteration)
+  public void setup() throws IOException {
+    repoDir = Files.createTempDirectory("gitlet-jmh-objects");
+    store = new FileObjectStore(repoDir);
+    data = new byte[blobSize];
+    new Random(blobSize).nextBytes(data);
+    byte[] text = "the quick brown fox jumps over the lazy dog\n".getBytes();
+    for (int i = blobSize / 2; i < blobSize; i++) data[i] = text[i % text.length];
+    storedId = store.writeBlob(data);
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(repoDir)) {
+      for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+    }
+  }
+
+  @Benchmark
+  public String writeBlob() throws IOException {
+    long n = ++counter;
+    for (int i = 0; i < 8 && i < data.length; i++) data[i] = (byte) (n >>> (8 * i));
+    return store.writeBlob(data);
+  }
+
+  @Benchmark
+  public byte[] readBlob() throws IOException {
+    return store.readBlob(storedId);
+  }
+}
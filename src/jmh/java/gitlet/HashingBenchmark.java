@@ -0,0 +1,53 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// SHA-1 of blob-sized buffers, as hex (the id every caller stores) and as an ObjectId.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class HashingBenchmark {
+  @Param({"1024", "65536", "1048576"})
+  int blobSize;
+
+  private byte[] data;
+  private String hex;
+
+  @Setup
+  public void setup() {
+    data = new byte[blobSize];
+    new Random(blobSize).nextBytes(data);
+    hex = Hashing.sha1(data);
+  }
+
+  @Benchmark
+  public String sha1Hex() {
+    return Hashing.sha1(data);
+  }
+
+  @Benchmark
+  public ObjectId sha1Id() {
+    return Hashing.sha1Id(data);
+  }
+
+  @Benchmark
+  public String objectIdHexRoundTrip() {
+    return ObjectId.fromHex(hex).name();
+  }
+}
@@ -0,0 +1,80 @@
+package gitlet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The index with a stat entry per tracked file and one in ten files staged.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class StagingAreaBenchmark {
+  @Param({"100", "10000", "100000"})
+  int indexEntries;
+
+  private Path root;
+  private Path indexFile;
+  private StagingArea index;
+  private Map<String, String> headTracked;
+
+  @Setup
+  public void setup() throws IOException {
+    root = Files.createTempDirectory("gitlet-jmh-index");
+    indexFile = root.resolve("index");
+    index = new StagingArea(root);
+    headTracked = new TreeMap<>();
+    for (int i = 0; i < indexEntries; i++) {
+      String path = "dir" + (i % 100) + "/file" + i + ".txt";
+      String blob = Hashing.sha1(path.getBytes());
+      headTracked.put(path, blob);
+      index.recordStat(path, new StagingArea.Stat(blob, 1000 + i, 1_700_000_000_000_000_000L + i, 10_000 + i, 0100644));
+      if (i % 10 == 0) index.stageForAddition(path, Hashing.sha1((path + "'").getBytes()));
+    }
+    index.save(indexFile);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+    }
+  }
+
+  @Benchmark
+  public StagingArea load() throws IOException {
+    StagingArea loaded = new StagingArea(root);
+    loaded.load(indexFile);
+    return loaded;
+  }
+
+  @Benchmark
+  public void save() throws IOException {
+    index.save(indexFile);
+  }
+
+  @Benchmark
+  public Map<String, String> applyTo() {
+    return index.applyTo(headTracked);
+  }
+}
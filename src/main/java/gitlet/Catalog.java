@@ -0,0 +1,322 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+
+// The commit catalog: one "<id>\t<timestamp>\t<parent>,<parent>\t<message>\n" record per commit,
+// appended by commit. catalog.idx maps each message token to the byte offsets of the records that
+// contain it, for every record before the offset in its header line; records after that (the tail)
+// are scanned directly until the tail is big enough to be worth reindexing.
+final class Catalog {
+  static final String INDEX_HEADER = "# gitlet catalog index ";
+  static final long REINDEX_TAIL_BYTES = 64L << 10;
+  // How long a commit waits for a concurrent rewrite (gc) to release the catalog.
+  static final long APPEND_WAIT_MILLIS = 10_000;
+
+  @FunctionalInterface
+  interface Visitor {
+    void accept(long offset, Commit.Header header) throws IOException;
+  }
+
+  private final Path file;
+  private final Path indexFile;
+
+  Catalog(Path file, Path indexFile) {
+    this.file = file;
+    this.indexFile = indexFile;
+  }
+
+  boolean exists() {
+    return Files.exists(file);
+  }
+
+  void create() throws IOException {
+    if (!exists()) rewrite(List.of());
+  }
+
+  // Appends hold the same lock as rewrites, so a record is never written to a file that is about to
+  // be replaced. A rewrite in progress is waited for rather than failing the commit.
+  void append(Commit.Header h) throws IOException {
+    byte[] line = format(h).getBytes(StandardCharsets.UTF_8);
+    LockFile lock = LockFile.acquire(file, APPEND_WAIT_MILLIS);
+    try (lock; FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+      ByteBuffer buf = ByteBuffer.wrap(line);
+      while (buf.hasRemaining()) ch.write(buf);
+    }
+  }
+
+  // Replaces the catalog with headers, in the order given, and reindexes it.
+  void rewrite(Collection<Commit.Header> headers) throws IOException {
+    try (LockFile lock = LockFile.acquire(file)) {
+      replace(lock, headers);
+    }
+    if (!headers.isEmpty()) reindex();
+  }
+
+  private void replace(LockFile lock, Collection<Commit.Header> headers) throws IOException {
+    StringBuilder sb = new StringBuilder(headers.size() * 96);
+    for (Commit.Header h : headers) sb.append(format(h));
+    // The old index points at offsets in the old file; drop it before the file changes under it.
+    Files.deleteIfExists(indexFile);
+    lock.write(sb.toString());
+    lock.commit();
+  }
+
+  // Keeps only the records whose commit id passes keep. The lock is held from the read to the
+  // replace, so no record appended in between is lost.
+  void retain(Predicate<String> keep) throws IOException {
+    List<Commit.Header> kept = new ArrayList<>();
+    boolean dropped = false;
+    try (LockFile lock = LockFile.acquire(file)) {
+      try (BufferedReader r = reader(0)) {
+        String line;
+        while ((line = r.readLine()) != null) {
+          if (line.isEmpty()) continue;
+          Commit.Header h = parse(line);
+          if (keep.test(h.id())) kept.add(h);
+          else dropped = true;
+        }
+      }
+      if (!dropped) return;
+      replace(lock, kept);
+    }
+    if (!kept.isEmpty()) reindex();
+  }
+
+  // Visits records from byte offset from to the end of the file, in the order they were appended.
+  void scan(long from, Visitor visitor) throws IOException {
+    long offset = from;
+    try (BufferedReader r = reader(from)) {
+      String line;
+      while ((line = r.readLine()) != null) {
+        long at = offset;
+        offset += line.getBytes(StandardCharsets.UTF_8).length + 1;
+        if (!line.isEmpty()) visitor.accept(at, parse(line));
+      }
+    }
+  }
+
+  // Ids of the commits whose message is exactly message, in catalog order.
+  List<String> find(String message) throws IOException {
+    Set<String> tokens = tokens(message);
+    List<String> out = new ArrayList<>();
+    if (tokens.isEmpty()) {
+      scan(0, (off, h) -> { if (h.message().equals(message)) out.add(h.id()); });
+      return out;
+    }
+    Index idx = Index.load(indexFile, Files.size(file));
+    if (Files.size(file) - idx.covered >= REINDEX_TAIL_BYTES) {
+      reindex();
+      idx = Index.load(indexFile, Files.size(file));
+    }
+    if (idx.covered > 0) {
+      long[] hits = null;
+      for (String t : tokens) {
+        long[] postings = idx.postings(t);
+        hits = hits == null ? postings : intersect(hits, postings);
+        if (hits.length == 0) break;
+      }
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+        for (long off : hits) {
+          Commit.Header h = parse(readLine(ch, off));
+          if (h.message().equals(message)) out.add(h.id());
+        }
+      }
+    }
+    scan(idx.covered, (off, h) -> { if (h.message().equals(message)) out.add(h.id()); });
+    return out;
+  }
+
+  // Rebuilds catalog.idx over the whole file. Skipped if another process is already doing it.
+  void reindex() throws IOException {
+    TreeMap<String, List<Long>> postings = new TreeMap<>();
+    long covered = Files.size(file);
+    scan(0, (off, h) -> {
+      if (off >= covered) return;
+      for (String t : tokens(h.message())) postings.computeIfAbsent(t, k -> new ArrayList<>()).add(off);
+    });
+    StringBuilder sb = new StringBuilder(INDEX_HEADER.length() + postings.size() * 24);
+    sb.append(INDEX_HEADER).append(covered).append('\n');
+    for (Map.Entry<String, List<Long>> e : postings.entrySet()) {
+      sb.append(e.getKey()).append('\t');
+      List<Long> offs = e.getValue();
+      for (int i = 0; i < offs.size(); i++) {
+        if (i > 0) sb.append(',');
+        sb.append(offs.get(i));
+      }
+      sb.append('\n');
+    }
+    LockFile lock;
+    try {
+      lock = LockFile.acquire(indexFile);
+    } catch (IOException e) {
+      return;
+    }
+    try (lock) {
+      lock.write(sb.toString());
+      lock.commit();
+    }
+  }
+
+  // Lowercased runs of letters and digits, each once.
+  static Set<String> tokens(String message) {
+    Set<String> out = new LinkedHashSet<>();
+    int start = -1;
+    for (int i = 0; i <= message.length(); i++) {
+      boolean word = i < message.length() && Character.isLetterOrDigit(message.charAt(i));
+      if (word && start < 0) start = i;
+      else if (!word && start >= 0) {
+        out.add(message.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return out;
+  }
+
+  static String format(Commit.Header h) {
+    return h.id() + '\t' + h.timestamp() + '\t' + String.join(",", h.parents()) + '\t' + h.message() + '\n';
+  }
+
+  static Commit.Header parse(String line) throws IOException {
+    String[] f = line.split("\t", 4);
+    if (f.length != 4 || f[0].length() != ObjectId.HEX_LENGTH) throw new IOException("Corrupt catalog record: " + line);
+    try {
+      List<String> parents = f[2].isEmpty() ? List.of() : List.of(f[2].split(","));
+      return new Commit.Header(f[0], f[3], Long.parseLong(f[1]), parents);
+    } catch (NumberFormatException e) {
+      throw new IOException("Corrupt catalog record: " + line, e);
+    }
+  }
+
+  private BufferedReader reader(long from) throws IOException {
+    FileChannel ch = FileChannel.open(file, StandardOpenOption.READ);
+    ch.position(from);
+    InputStream in = Channels.newInputStream(ch);
+    return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1 << 16);
+  }
+
+  private static String readLine(FileChannel ch, long off) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(256);
+    while (true) {
+      int n = ch.read(buf, off + buf.position());
+      byte[] a = buf.array();
+      for (int i = 0; i < buf.position(); i++) {
+        if (a[i] == '\n') return new String(a, 0, i, StandardCharsets.UTF_8);
+      }
+      if (n < 0) return new String(a, 0, buf.position(), StandardCharsets.UTF_8);
+      if (!buf.hasRemaining()) buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf.flip());
+    }
+  }
+
+  private static long[] intersect(long[] a, long[] b) {
+    long[] out = new long[Math.min(a.length, b.length)];
+    int n = 0;
+    for (int i = 0, j = 0; i < a.length && j < b.length; ) {
+      if (a[i] < b[j]) i++;
+      else if (a[i] > b[j]) j++;
+      else { out[n++] = a[i]; i++; j++; }
+    }
+    return Arrays.copyOf(out, n);
+  }
+
+  // catalog.idx mapped read-only: a header line with the covered byte count, then
+  // "<token>\t<offset>,<offset>\n" lines sorted by token, binary-searched like packed-refs.
+  private static final class Index {
+    private static final Index EMPTY = new Index(ByteBuffer.allocate(0), 0, 0);
+
+    private final ByteBuffer buf;
+    private final int start;
+    final long covered;
+
+    private Index(ByteBuffer buf, int start, long covered) {
+      this.buf = buf;
+      this.start = start;
+      this.covered = covered;
+    }
+
+    // An index covering more than the catalog holds was built for a file since rewritten; ignore it.
+    static Index load(Path file, long catalogSize) throws IOException {
+      if (!Files.exists(file)) return EMPTY;
+      MappedByteBuffer buf;
+      try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+        if (ch.size() > Integer.MAX_VALUE) throw new IOException("catalog index too large: " + file);
+        buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+      }
+      int nl = 0;
+      while (nl < buf.capacity() && buf.get(nl) != '\n') nl++;
+      String header = text(buf, 0, nl);
+      if (nl == buf.capacity() || !header.startsWith(INDEX_HEADER)) throw new IOException("Corrupt catalog index header: " + file);
+      long covered;
+      try {
+        covered = Long.parseLong(header.substring(INDEX_HEADER.length()));
+      } catch (NumberFormatException e) {
+        throw new IOException("Corrupt catalog index header: " + file, e);
+      }
+      return covered > catalogSize ? EMPTY : new Index(buf, nl + 1, covered);
+    }
+
+    long[] postings(String token) {
+      int lo = start;
+      int hi = buf.capacity();
+      while (lo < hi) {
+        int mid = lineStart(lo + (hi - lo) / 2);
+        if (tokenAt(mid).compareTo(token) < 0) lo = nextLine(mid);
+        else hi = mid;
+      }
+      if (lo >= buf.capacity() || !tokenAt(lo).equals(token)) return new long[0];
+      int from = tab(lo) + 1;
+      String[] parts = text(buf, from, nextLine(lo) - 1).split(",");
+      long[] out = new long[parts.length];
+      for (int i = 0; i < parts.length; i++) out[i] = Long.parseLong(parts[i]);
+      return out;
+    }
+
+    private String tokenAt(int pos) {
+      return text(buf, pos, tab(pos));
+    }
+
+    private int tab(int pos) {
+      int end = nextLine(pos) - 1;
+      int i = pos;
+      while (i < end && buf.get(i) != '\t') i++;
+      return i;
+    }
+
+    private int lineStart(int pos) {
+      while (pos > start && buf.get(pos - 1) != '\n') pos--;
+      return pos;
+    }
+
+    private int nextLine(int pos) {
+      int cap = buf.capacity();
+      while (pos < cap && buf.get(pos) != '\n') pos++;
+      return Math.min(cap, pos + 1);
+    }
+
+    private static String text(ByteBuffer buf, int from, int to) {
+      byte[] b = new byte[Math.max(0, to - from)];
+      buf.get(from, b);
+      return new String(b, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// FastCDC content-defined chunking. A gear hash rolls over the input and a chunk ends where its
+// masked bits are all zero, so an edit only moves the boundaries next to it and every other chunk
+// keeps its id. Cuts are normalized: a stricter mask before AVG_SIZE and a looser one after pulls
+// chunk sizes toward the average. Boundaries depend only on content, never on the read pattern.
+final class Chunker {
+  static final int MIN_SIZE = 16 << 10;
+  static final int AVG_SIZE = 64 << 10;
+  static final int MAX_SIZE = 256 << 10;
+  // 18 and 14 bits around log2(AVG_SIZE) = 16; the high bits of the gear hash cover the widest window.
+  private static final long MASK_S = -1L << (64 - 18);
+  private static final long MASK_L = -1L << (64 - 14);
+  private static final long[] GEAR = new long[256];
+
+  static {
+    // splitmix64 from a fixed seed: the table must never change, or every boundary would move.
+    long x = 0x6769746c6574L;
+    for (int i = 0; i < GEAR.length; i++) {
+      long z = (x += 0x9E3779B97F4A7C15L);
+      z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+      z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+      GEAR[i] = z ^ (z >>> 31);
+    }
+  }
+
+  static final String MANIFEST_HEADER = "manifest\n";
+
+  record Chunk(String id, long size) {}
+
+  @FunctionalInterface
+  interface Sink {
+    void accept(byte[] buf, int off, int len) throws IOException;
+  }
+
+  private Chunker() {}
+
+  // Feeds in to sink one chunk at a time; the buffer is reused, so sink must copy what it keeps.
+  static void split(InputStream in, Sink sink) throws IOException {
+    byte[] buf = new byte[MAX_SIZE];
+    int filled = 0;
+    boolean eof = false;
+    while (true) {
+      while (!eof && filled < buf.length) {
+        int n = in.read(buf, filled, buf.length - filled);
+        if (n < 0) eof = true;
+        else filled += n;
+      }
+      if (filled == 0) return;
+      int cut = cut(buf, 0, filled);
+      sink.accept(buf, 0, cut);
+      System.arraycopy(buf, cut, buf, 0, filled - cut);
+      filled -= cut;
+    }
+  }
+
+  // Length of the chunk starting at off, given len bytes available (the rest of the input if
+  // fewer than MAX_SIZE).
+  static int cut(byte[] buf, int off, int len) {
+    if (len <= MIN_SIZE) return len;
+    int n = Math.min(len, MAX_SIZE);
+    int normal = Math.min(n, AVG_SIZE);
+    long fp = 0;
+    int i = MIN_SIZE;
+    for (; i < normal; i++) {
+      fp = (fp << 1) + GEAR[buf[off + i] & 0xff];
+      if ((fp & MASK_S) == 0) return i;
+    }
+    for (; i < n; i++) {
+      fp = (fp << 1) + GEAR[buf[off + i] & 0xff];
+      if ((fp & MASK_L) == 0) return i;
+    }
+    return n;
+  }
+
+  // "manifest\n" then one "chunk\t<id>\t<size>\n" line per chunk, in content order.
+  static byte[] manifest(List<Chunk> chunks) {
+    StringBuilder sb = new StringBuilder(MANIFEST_HEADER.length() + chunks.size() * 56);
+    sb.append(MANIFEST_HEADER);
+    for (Chunk c : chunks) sb.append("chunk\t").append(c.id()).append('\t').append(c.size()).append('\n');
+    return sb.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  static List<Chunk> parseManifest(String id, byte[] data) throws IOException {
+    String text = new String(data, StandardCharsets.US_ASCII);
+    if (!text.startsWith(MANIFEST_HEADER)) throw new IOException("Object " + id + " is not a chunk manifest");
+    List<Chunk> out = new ArrayList<>();
+    for (String line : text.substring(MANIFEST_HEADER.length()).split("\n")) {
+      if (line.isEmpty()) continue;
+      String[] f = line.split("\t");
+      if (f.length != 3 || !f[0].equals("chunk") || !ObjectId.isValid(f[1])) throw new IOException("Corrupt manifest " + id + ": " + line);
+      try {
+        out.add(new Chunk(f[1], Long.parseLong(f[2])));
+      } catch (NumberFormatException e) {
+        throw new IOException("Corrupt manifest " + id + ": " + line, e);
+      }
+    }
+    return out;
+  }
+}
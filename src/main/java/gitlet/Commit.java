@@ -1,84 +1,246 @@
 package gitlet;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
 import static java.util.Objects.requireNonNull;
 
+// A commit either lists every file inline ("file" lines, the original format) or points at a
+// root Tree ("tree" line). Either way the file list is only built when getTrackedFiles() is called.
 public final class Commit {
+  // Flattens a root tree into path -> blob id; supplied by ObjectStore when reading commits.
+  @FunctionalInterface
+  interface TreeResolver {
+    Map<String,String> flatten(String treeId) throws IOException;
+  }
+
+  // The fields history walks need: everything before the first "file" line.
+  public record Header(String id, String message, long timestamp, List<String> parents) {}
+
   private final String message;
   private final long timestamp;
   private final List<String> parents;
-  private final Map<String, String> trackedFiles;
+  private final String treeId;
+  private final TreeResolver resolver;
+  private volatile Map<String, String> trackedFiles;
   private final String id;
+  // For commits parsed from bytes: the payload and where its "file" lines start. Files are
+  // decoded from here on the first getTrackedFiles() call.
+  private final byte[] raw;
+  private final int filesOffset;
 
-  private Commit(String message, long timestamp, List<String> parents, Map<String,String> trackedFiles, String id) {
+  private Commit(String message, long timestamp, List<String> parents, Map<String,String> trackedFiles,
+                 String treeId, TreeResolver resolver, String id, byte[] raw, int filesOffset) {
     this.message = requireNonNull(message, "message");
     this.timestamp = timestamp;
     this.parents = Collections.unmodifiableList(parents);
-    this.trackedFiles = Collections.unmodifiableMap(trackedFiles);
+    this.trackedFiles = trackedFiles == null ? null : Collections.unmodifiableMap(trackedFiles);
+    this.treeId = treeId;
+    this.resolver = resolver;
     this.id = requireNonNull(id, "id");
+    this.raw = raw;
+    this.filesOffset = filesOffset;
   }
 
   public static Commit create(String message, List<String> parents, Map<String,String> tracked, long timestamp) {
-    if (message.indexOf('\n') >= 0 || message.indexOf('\r') >= 0 || message.indexOf('\t') >= 0)
-      throw new IllegalArgumentException("message must be single-line without tabs");
+    checkMessage(message);
     List<String> ps = parents == null ? List.of() : List.copyOf(parents);
     Map<String,String> tf = new TreeMap<>(requireNonNull(tracked, "tracked"));
-    byte[] payload = serializePayload(message, timestamp, ps, tf);
+    byte[] payload = serializePayload(message, timestamp, ps, tf, null);
     String id = Hashing.sha1(payload);
-    return new Commit(message, timestamp, ps, tf, id);
+    return new Commit(message, timestamp, ps, tf, null, null, id, null, 0);
   }
 
+  public static Commit create(String message, List<String> parents, String treeId, long timestamp) {
+    checkMessage(message);
+    requireNonNull(treeId, "treeId");
+    List<String> ps = parents == null ? List.of() : List.copyOf(parents);
+    byte[] payload = serializePayload(message, timestamp, ps, null, treeId);
+    String id = Hashing.sha1(payload);
+    return new Commit(message, timestamp, ps, null, treeId, null, id, null, 0);
+  }
+
+  // Untrusted bytes: the id is computed by hashing them.
   public static Commit deserialize(byte[] data) {
-    String s = new String(requireNonNull(data, "data"), StandardCharsets.UTF_8);
-    String[] lines = s.split("\n", -1);
-    if (lines.length < 2 || !"commit".equals(lines[0])) throw new IllegalArgumentException("bad commit payload");
-    String[] m = splitOnce(lines[1], '\t');
-    if (m.length != 2 || !"message".equals(m[0])) throw new IllegalArgumentException("bad message field");
-    String message = m[1];
-    String[] t = splitOnce(lines[2], '\t');
-    if (t.length != 2 || !"timestamp".equals(t[0])) throw new IllegalArgumentException("bad timestamp field");
-    long timestamp = Long.parseLong(t[1]);
-
-    List<String> parents = new ArrayList<>();
-    Map<String,String> tracked = new TreeMap<>();
-    for (int i = 3; i < lines.length; i++) {
-      if (lines[i].isEmpty()) continue;
-      String[] parts = splitOnce(lines[i], '\t');
-      if (parts.length < 2) throw new IllegalArgumentException("bad line: " + lines[i]);
-      if ("parent".equals(parts[0])) {
-        parents.add(parts[1]);
-      } else if ("file".equals(parts[0])) {
-        String[] fb = splitOnce(parts[1], '\t');
-        if (fb.length != 2) throw new IllegalArgumentException("bad file line: " + lines[i]);
-        tracked.put(fb[0], fb[1]);
+    return parse(Hashing.sha1(requireNonNull(data, "data")), data, null);
+  }
+
+  // Trusted read path: id is the one the bytes were stored under and is not recomputed. Header
+  // fields are decoded now; "file" lines stay in data until getTrackedFiles() is called. data
+  // must not be modified afterwards.
+  static Commit parse(String id, byte[] data, TreeResolver resolver) {
+    requireNonNull(data, "data");
+    int pos = expectLine(data, 0, "commit");
+    int end = lineEnd(data, pos);
+    String message = field(data, pos, end, "message");
+    pos = end + 1;
+    end = lineEnd(data, pos);
+    long timestamp;
+    try {
+      timestamp = Long.parseLong(field(data, pos, end, "timestamp"));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("bad timestamp field");
+    }
+    pos = end + 1;
+
+    List<String> parents = new ArrayList<>(2);
+    String treeId = null;
+    while (pos < data.length) {
+      end = lineEnd(data, pos);
+      if (end == pos) {
+        pos++;
+        continue;
+      }
+      if (startsWith(data, pos, "parent\t")) {
+        parents.add(ascii(data, pos + "parent\t".length(), end));
+      } else if (startsWith(data, pos, "tree\t")) {
+        if (treeId != null) throw new IllegalArgumentException("duplicate tree field");
+        treeId = ascii(data, pos + "tree\t".length(), end);
+      } else if (startsWith(data, pos, "file\t")) {
+        if (treeId != null) throw new IllegalArgumentException("commit has both tree and file lines");
+        return new Commit(message, timestamp, parents, null, null, null, id, data, pos);
       } else {
-        throw new IllegalArgumentException("unknown field: " + parts[0]);
+        throw new IllegalArgumentException("unknown field: " + new String(data, pos, end - pos, StandardCharsets.UTF_8));
       }
+      pos = end + 1;
     }
-    byte[] payload = serializePayload(message, timestamp, parents, tracked);
-    String id = Hashing.sha1(payload);
-    return new Commit(message, timestamp, parents, tracked, id);
+    return treeId == null
+        ? new Commit(message, timestamp, parents, Map.of(), null, null, id, data, data.length)
+        : new Commit(message, timestamp, parents, null, treeId, resolver, id, data, data.length);
+  }
+
+  // Decodes "file\t<path>\t<blob>" lines straight from the payload bytes.
+  private static Map<String,String> decodeFiles(byte[] data, int pos) {
+    TreeMap<String,String> out = new TreeMap<>();
+    while (pos < data.length) {
+      int end = lineEnd(data, pos);
+      if (end == pos) {
+        pos++;
+        continue;
+      }
+      if (!startsWith(data, pos, "file\t")) throw new IllegalArgumentException("bad file line at byte " + pos);
+      int from = pos + "file\t".length();
+      int tab = indexOf(data, from, end, (byte) '\t');
+      if (tab < 0) throw new IllegalArgumentException("bad file line at byte " + pos);
+      out.put(new String(data, from, tab - from, StandardCharsets.UTF_8), ascii(data, tab + 1, end));
+      pos = end + 1;
+    }
+    return out;
+  }
+
+  private static int expectLine(byte[] data, int pos, String expected) {
+    int end = lineEnd(data, pos);
+    if (end - pos != expected.length() || !startsWith(data, pos, expected) || end == data.length)
+      throw new IllegalArgumentException("bad commit payload");
+    return end + 1;
+  }
+
+  private static String field(byte[] data, int pos, int end, String name) {
+    if (end - pos <= name.length() || !startsWith(data, pos, name) || data[pos + name.length()] != '\t')
+      throw new IllegalArgumentException("bad " + name + " field");
+    int from = pos + name.length() + 1;
+    return new String(data, from, end - from, StandardCharsets.UTF_8);
+  }
+
+  private static int lineEnd(byte[] data, int pos) {
+    int i = indexOf(data, pos, data.length, (byte) '\n');
+    return i < 0 ? data.length : i;
+  }
+
+  private static int indexOf(byte[] data, int from, int to, byte b) {
+    for (int i = from; i < to; i++) if (data[i] == b) return i;
+    return -1;
+  }
+
+  private static boolean startsWith(byte[] data, int pos, String prefix) {
+    if (data.length - pos < prefix.length()) return false;
+    for (int i = 0; i < prefix.length(); i++) if (data[pos + i] != prefix.charAt(i)) return false;
+    return true;
+  }
+
+  private static String ascii(byte[] data, int from, int to) {
+    return new String(data, from, to - from, StandardCharsets.ISO_8859_1);
+  }
+
+  // Reads only the header of a serialized commit from in, stopping before any "file" lines, so a
+  // flat commit's file list is never inflated. The id is taken on trust from the caller.
+  static Header readHeader(String id, InputStream in) throws IOException {
+    BufferedReader r = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 1024);
+    if (!"commit".equals(r.readLine())) throw new IllegalArgumentException("bad commit payload: " + id);
+    String[] m = splitOnce(requireLine(r, id), '\t');
+    if (m.length != 2 || !"message".equals(m[0])) throw new IllegalArgumentException("bad message field");
+    String[] t = splitOnce(requireLine(r, id), '\t');
+    if (t.length != 2 || !"timestamp".equals(t[0])) throw new IllegalArgumentException("bad timestamp field");
+    List<String> parents = new ArrayList<>(2);
+    String line;
+    while ((line = r.readLine()) != null) {
+      if (line.startsWith("parent\t")) parents.add(line.substring("parent\t".length()));
+      else if (line.startsWith("file\t")) break;
+    }
+    return new Header(id, m[1], Long.parseLong(t[1]), Collections.unmodifiableList(parents));
+  }
+
+  private static String requireLine(BufferedReader r, String id) throws IOException {
+    String line = r.readLine();
+    if (line == null) throw new IllegalArgumentException("truncated commit: " + id);
+    return line;
+  }
+
+  public Header header() {
+    return new Header(id, message, timestamp, parents);
   }
 
   public byte[] serialize() {
-    return serializePayload(message, timestamp, parents, trackedFiles);
+    if (raw != null) return raw.clone();
+    return treeId == null
+        ? serializePayload(message, timestamp, parents, trackedFiles, null)
+        : serializePayload(message, timestamp, parents, null, treeId);
   }
 
   public String getMessage() { return message; }
   public long getTimestamp() { return timestamp; }
   public List<String> getParents() { return parents; }
-  public Map<String,String> getTrackedFiles() { return trackedFiles; }
+  public String getTreeId() { return treeId; }
+
+  public Map<String,String> getTrackedFiles() {
+    Map<String,String> tf = trackedFiles;
+    if (tf != null) return tf;
+    if (treeId == null) {
+      tf = Collections.unmodifiableMap(decodeFiles(raw, filesOffset));
+      trackedFiles = tf;
+      return tf;
+    }
+    if (resolver == null) throw new IllegalStateException("commit " + id + " has tree " + treeId + "; read it through ObjectStore");
+    try {
+      tf = Collections.unmodifiableMap(resolver.flatten(treeId));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    trackedFiles = tf;
+    return tf;
+  }
   public String getId() { return id; }
 
-  private static byte[] serializePayload(String message, long timestamp, List<String> parents, Map<String,String> tracked) {
+  private static void checkMessage(String message) {
+    if (message.indexOf('\n') >= 0 || message.indexOf('\r') >= 0 || message.indexOf('\t') >= 0)
+      throw new IllegalArgumentException("message must be single-line without tabs");
+  }
+
+  private static byte[] serializePayload(String message, long timestamp, List<String> parents, Map<String,String> tracked, String treeId) {
     StringBuilder sb = new StringBuilder();
     sb.append("commit").append('\n');
     sb.append("message").append('\t').append(message).append('\n');
     sb.append("timestamp").append('\t').append(timestamp).append('\n');
+    if (treeId != null) sb.append("tree").append('\t').append(treeId).append('\n');
     for (String p : parents) sb.append("parent").append('\t').append(p).append('\n');
-    for (Map.Entry<String,String> e : tracked.entrySet())
-      sb.append("file").append('\t').append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+    if (tracked != null) {
+      for (Map.Entry<String,String> e : tracked.entrySet())
+        sb.append("file").append('\t').append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+    }
     return sb.toString().getBytes(StandardCharsets.UTF_8);
   }
 
@@ -0,0 +1,597 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// Side file listing commits by sorted id with parent positions, generation numbers and
+// timestamps, so history walks never parse commit objects.
+// Layout: MAGIC, version, count, extra-edge count, 256-entry fan-out, sorted raw ids,
+// per commit (parent1, parent2, generation, timestamp), extra edges, SHA-1 checksum.
+// A parent slot holds a position, NO_PARENT, or for octopus merges EXTRA | index into
+// the extra-edge list, whose final entry for a commit carries LAST.
+// New commits go to "<file>.tail" instead of rewriting the graph: TAIL_MAGIC, version, the
+// checksum of the graph it extends, then per commit raw id, timestamp, generation, parent count
+// and parent positions. Tail commits take the positions after the graph's own. A tail whose
+// checksum does not match the graph is stale and ignored. Writers hold "<file>.lock"; the tail is
+// folded into a full rewrite once it reaches MAX_TAIL commits, and whenever gc rewrites the graph.
+public final class CommitGraph {
+  static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+  static final int VERSION = 1;
+  static final int NO_PARENT = -1;
+  static final byte[] TAIL_MAGIC = {'G', 'C', 'T', 'L'};
+  static final String TAIL_SUFFIX = ".tail";
+  static final int MAX_TAIL = 256;
+  // How long a full rewrite waits for a commit to finish appending to the tail.
+  static final long WRITE_WAIT_MILLIS = 10_000;
+  private static final int TAIL_HEADER = 8 + 20;
+  private static final int EXTRA = 0x40000000;
+  private static final int LAST = 0x80000000;
+  private static final int FANOUT_OFF = 16;
+  private static final int IDS_OFF = FANOUT_OFF + 256 * 4;
+  private static final int RECORD = 4 + 4 + 4 + 8;
+  // mergeBase paint flags.
+  private static final int SIDE_A = 1;
+  private static final int SIDE_B = 2;
+  private static final int STALE = 4;
+  private static final int BASE = 8;
+
+  public record Node(ObjectId id, List<ObjectId> parents, long timestamp) {}
+
+  private static final CommitGraph EMPTY = new CommitGraph(null, 0);
+
+  private final ByteBuffer buf;
+  // Commits in the graph file; those in the tail follow at positions base and up.
+  private final int base;
+  private final int count;
+  private final int dataOff;
+  private final int extraOff;
+  private final ObjectId[] tailIds;
+  private final int[][] tailParents;
+  private final int[] tailGens;
+  private final long[] tailTimes;
+  private final Map<ObjectId, Integer> tailPos;
+  // Length of the intact part of the tail file, or -1 if it holds nothing usable.
+  private final long tailBytes;
+
+  private CommitGraph(ByteBuffer buf, int base) {
+    this(buf, base, new ObjectId[0], new int[0][], new int[0], new long[0], -1);
+  }
+
+  private CommitGraph(ByteBuffer buf, int base, ObjectId[] tailIds, int[][] tailParents, int[] tailGens, long[] tailTimes, long tailBytes) {
+    this.buf = buf;
+    this.base = base;
+    this.count = base + tailIds.length;
+    this.dataOff = IDS_OFF + base * ObjectId.RAW_LENGTH;
+    this.extraOff = dataOff + base * RECORD;
+    this.tailIds = tailIds;
+    this.tailParents = tailParents;
+    this.tailGens = tailGens;
+    this.tailTimes = tailTimes;
+    this.tailPos = new HashMap<>();
+    for (int i = 0; i < tailIds.length; i++) tailPos.put(tailIds[i], base + i);
+    this.tailBytes = tailBytes;
+  }
+
+  public static CommitGraph load(Path file) throws IOException {
+    CommitGraph g = loadBase(file);
+    Path tail = tailFile(file);
+    return Files.exists(tail) ? g.withTail(tail) : g;
+  }
+
+  private static CommitGraph loadBase(Path file) throws IOException {
+    if (!Files.exists(file)) return EMPTY;
+    MappedByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (ch.size() < IDS_OFF + 20) throw new IOException("Commit graph too small: " + file);
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buf.get(i) != MAGIC[i]) throw new IOException("Not a commit graph: " + file);
+    }
+    if (buf.getInt(4) != VERSION) throw new IOException("Unsupported commit graph version in " + file);
+    int count = buf.getInt(8);
+    int extra = buf.getInt(12);
+    long expected = (long) IDS_OFF + (long) count * (ObjectId.RAW_LENGTH + RECORD) + 4L * extra + 20;
+    if (count < 0 || extra < 0 || expected != buf.capacity()) throw new IOException("Corrupt commit graph: " + file);
+    return new CommitGraph(buf, count);
+  }
+
+  static Path tailFile(Path file) {
+    return file.resolveSibling(file.getFileName() + TAIL_SUFFIX);
+  }
+
+  // Reads the tail's records up to the first torn or inconsistent one.
+  private CommitGraph withTail(Path tail) throws IOException {
+    ByteBuffer t = ByteBuffer.wrap(Files.readAllBytes(tail));
+    if (t.capacity() < TAIL_HEADER || t.getInt(4) != VERSION) return this;
+    for (int i = 0; i < TAIL_MAGIC.length; i++) {
+      if (t.get(i) != TAIL_MAGIC[i]) return this;
+    }
+    byte[] bound = new byte[20];
+    t.get(8, bound);
+    if (!Arrays.equals(bound, checksum())) return this;
+    List<ObjectId> ids = new ArrayList<>();
+    List<int[]> parents = new ArrayList<>();
+    List<Integer> gens = new ArrayList<>();
+    List<Long> times = new ArrayList<>();
+    int off = TAIL_HEADER;
+    while (t.capacity() - off >= ObjectId.RAW_LENGTH + 16) {
+      int n = t.getInt(off + ObjectId.RAW_LENGTH + 12);
+      int end = off + ObjectId.RAW_LENGTH + 16 + 4 * n;
+      if (n < 0 || n > (t.capacity() - off) / 4 || end > t.capacity()) break;
+      int[] ps = new int[n];
+      boolean valid = true;
+      for (int k = 0; k < n; k++) {
+        ps[k] = t.getInt(off + ObjectId.RAW_LENGTH + 16 + 4 * k);
+        // Parents always come before their children.
+        valid &= ps[k] >= 0 && ps[k] < base + ids.size();
+      }
+      if (!valid) break;
+      ids.add(ObjectId.fromBuffer(t, off));
+      times.add(t.getLong(off + ObjectId.RAW_LENGTH));
+      gens.add(t.getInt(off + ObjectId.RAW_LENGTH + 8));
+      parents.add(ps);
+      off = end;
+    }
+    return new CommitGraph(buf, base, ids.toArray(new ObjectId[0]), parents.toArray(new int[0][]),
+        gens.stream().mapToInt(Integer::intValue).toArray(), times.stream().mapToLong(Long::longValue).toArray(), off);
+  }
+
+  // The graph file's trailing SHA-1, which a tail must carry to extend it; zeros when there is none.
+  private byte[] checksum() {
+    byte[] out = new byte[20];
+    if (buf != null) buf.get(buf.capacity() - 20, out);
+    return out;
+  }
+
+  public int count() { return count; }
+
+  public int find(String id) {
+    return ObjectId.isValid(id) ? find(ObjectId.fromHex(id)) : -1;
+  }
+
+  public int find(ObjectId id) {
+    Integer inTail = tailPos.get(id);
+    if (inTail != null) return inTail;
+    if (base == 0) return -1;
+    int first = id.firstByte();
+    int lo = first == 0 ? 0 : buf.getInt(FANOUT_OFF + (first - 1) * 4);
+    int hi = buf.getInt(FANOUT_OFF + first * 4) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = id.compareTo(buf, IDS_OFF + mid * ObjectId.RAW_LENGTH);
+      if (c == 0) return mid;
+      if (c < 0) hi = mid - 1;
+      else lo = mid + 1;
+    }
+    return -1;
+  }
+
+  // Insertion point for id among the sorted commits of the graph file; the tail is not sorted.
+  int lowerBound(ObjectId id) {
+    int lo = 0;
+    int hi = base;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (id.compareTo(buf, IDS_OFF + mid * ObjectId.RAW_LENGTH) > 0) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  // Up to limit commit ids starting with hexPrefix (any case), in id order. The graph file's ids
+  // are binary-searched; the short tail is scanned.
+  public List<ObjectId> findPrefix(String hexPrefix, int limit) {
+    if (hexPrefix.isEmpty() || hexPrefix.length() > ObjectId.HEX_LENGTH || limit <= 0) return List.of();
+    String prefix = hexPrefix.toLowerCase();
+    String low = prefix + "0".repeat(ObjectId.HEX_LENGTH - prefix.length());
+    if (!ObjectId.isValid(low)) return List.of();
+    TreeSet<ObjectId> found = new TreeSet<>();
+    for (int i = lowerBound(ObjectId.fromHex(low)); i < base && found.size() < limit; i++) {
+      ObjectId id = id(i);
+      if (!id.name().startsWith(prefix)) break;
+      found.add(id);
+    }
+    for (ObjectId id : tailIds) if (id.name().startsWith(prefix)) found.add(id);
+    List<ObjectId> out = new ArrayList<>(found);
+    return out.size() > limit ? out.subList(0, limit) : out;
+  }
+
+  public ObjectId id(int pos) {
+    if (pos >= base) return tailIds[pos - base];
+    return ObjectId.fromBuffer(buf, IDS_OFF + pos * ObjectId.RAW_LENGTH);
+  }
+
+  public int generation(int pos) {
+    if (pos >= base) return tailGens[pos - base];
+    return buf.getInt(dataOff + pos * RECORD + 8);
+  }
+
+  public long timestamp(int pos) {
+    if (pos >= base) return tailTimes[pos - base];
+    return buf.getLong(dataOff + pos * RECORD + 12);
+  }
+
+  public int firstParent(int pos) {
+    if (pos >= base) return tailParents[pos - base].length > 0 ? tailParents[pos - base][0] : NO_PARENT;
+    return buf.getInt(dataOff + pos * RECORD);
+  }
+
+  public int[] parents(int pos) {
+    if (pos >= base) return tailParents[pos - base].clone();
+    int p1 = buf.getInt(dataOff + pos * RECORD);
+    int p2 = buf.getInt(dataOff + pos * RECORD + 4);
+    if (p1 == NO_PARENT) return new int[0];
+    if (p2 == NO_PARENT) return new int[] {p1};
+    if ((p2 & EXTRA) == 0) return new int[] {p1, p2};
+    List<Integer> out = new ArrayList<>();
+    out.add(p1);
+    for (int i = p2 & ~EXTRA; ; i++) {
+      int e = buf.getInt(extraOff + i * 4);
+      out.add(e & ~LAST);
+      if ((e & LAST) != 0) break;
+    }
+    return out.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  // True when ancestor is reachable from descendant (a commit is its own ancestor). Paths
+  // through commits with a generation below the ancestor's are skipped since they cannot reach it.
+  public boolean isAncestor(int ancestor, int descendant) {
+    int floor = generation(ancestor);
+    BitSet seen = new BitSet(count);
+    Deque<Integer> stack = new ArrayDeque<>();
+    stack.push(descendant);
+    seen.set(descendant);
+    while (!stack.isEmpty()) {
+      int c = stack.pop();
+      if (c == ancestor) return true;
+      for (int p : parents(c)) {
+        if (!seen.get(p) && generation(p) >= floor) {
+          seen.set(p);
+          stack.push(p);
+        }
+      }
+    }
+    return false;
+  }
+
+  // Best common ancestor of a and b, or -1 if they have none. Both sides are walked at once,
+  // highest generation first, painting each commit with the side(s) that reach it. A commit
+  // painted by both is a base and everything below it is marked stale; the walk ends once only
+  // stale commits are queued, so history older than the bases is never visited. Among several
+  // bases (criss-cross merges) the one with the highest generation wins.
+  public int mergeBase(int a, int b) {
+    if (a == b) return a;
+    Map<Integer, Integer> flags = new HashMap<>();
+    PriorityQueue<Integer> queue = new PriorityQueue<>((x, y) -> x.equals(y) ? 0
+        : generation(x) != generation(y) ? Integer.compare(generation(y), generation(x))
+        : timestamp(x) != timestamp(y) ? Long.compare(timestamp(y), timestamp(x)) : Integer.compare(x, y));
+    flags.put(a, SIDE_A);
+    flags.put(b, SIDE_B);
+    queue.add(a);
+    queue.add(b);
+    List<Integer> bases = new ArrayList<>();
+    while (hasFresh(queue, flags)) {
+      int c = queue.poll();
+      int f = flags.get(c) & (SIDE_A | SIDE_B | STALE);
+      if ((f & (SIDE_A | SIDE_B)) == (SIDE_A | SIDE_B)) {
+        if ((flags.get(c) & BASE) == 0) {
+          flags.put(c, flags.get(c) | BASE);
+          bases.add(c);
+        }
+        f |= STALE;
+      }
+      for (int p : parents(c)) {
+        int pf = flags.getOrDefault(p, 0);
+        if ((pf & f) == f) continue;
+        flags.put(p, pf | f);
+        queue.add(p);
+      }
+    }
+    int best = -1;
+    for (int c : bases) if (best < 0 || generation(c) > generation(best)) best = c;
+    return best;
+  }
+
+  private static boolean hasFresh(PriorityQueue<Integer> queue, Map<Integer, Integer> flags) {
+    for (int c : queue) if ((flags.get(c) & STALE) == 0) return true;
+    return false;
+  }
+
+  public List<Node> nodes() {
+    List<Node> out = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      List<ObjectId> ps = new ArrayList<>();
+      for (int p : parents(i)) ps.add(id(p));
+      out.add(new Node(id(i), ps, timestamp(i)));
+    }
+    return out;
+  }
+
+  // Adds a commit to the tail. If some parent is missing too (the graph predates it, or a
+  // concurrent append was skipped), the missing part of its history is walked and added with it.
+  public static void append(Path file, ObjectStore objects, Commit commit) throws IOException {
+    CommitGraph g = load(file);
+    if (g.find(commit.getId()) >= 0) return;
+    List<ObjectId> parents = new ArrayList<>();
+    boolean known = true;
+    for (String p : commit.getParents()) {
+      parents.add(ObjectId.fromHex(p));
+      known &= g.find(p) >= 0;
+    }
+    List<Node> added = known
+        ? List.of(new Node(ObjectId.fromHex(commit.getId()), parents, commit.getTimestamp()))
+        : walk(objects, List.of(commit.getId()), g);
+    add(file, objects, g, added);
+  }
+
+  // The graph with every commit reachable from roots, adding any it lacked.
+  public static CommitGraph extend(Path file, ObjectStore objects, Collection<String> roots) throws IOException {
+    CommitGraph g = load(file);
+    List<Node> missing = walk(objects, roots, g);
+    return missing.isEmpty() ? g : add(file, objects, g, missing);
+  }
+
+  // Records nodes under the lock, appending to the tail or, once it is full, rewriting the graph.
+  // If another writer holds the lock the nodes are only added in memory; the next append walks
+  // back to them. nodes were found missing from loaded; the graph reloaded under the lock may
+  // have lost some of their parents since (gc rewrote it and dropped the tail), so those are
+  // walked again rather than leaving edges out.
+  private static CommitGraph add(Path file, ObjectStore objects, CommitGraph loaded, List<Node> nodes) throws IOException {
+    LockFile lock;
+    try {
+      lock = LockFile.acquire(file);
+    } catch (IOException e) {
+      return loaded.with(nodes);
+    }
+    try (lock) {
+      CommitGraph g = load(file);
+      Set<ObjectId> adding = new HashSet<>();
+      for (Node n : nodes) adding.add(n.id());
+      List<String> lost = new ArrayList<>();
+      for (Node n : nodes) {
+        for (ObjectId p : n.parents()) if (!adding.contains(p) && g.find(p) < 0) lost.add(p.name());
+      }
+      List<Node> all = nodes;
+      if (!lost.isEmpty()) {
+        all = new ArrayList<>(nodes);
+        all.addAll(walk(objects, lost, g));
+      }
+      CommitGraph next = g.with(all);
+      if (next == g) return g;
+      if (next.count - next.base > MAX_TAIL) {
+        writeLocked(lock, next.nodes());
+        return load(file);
+      }
+      next.writeTail(file, g);
+      return next;
+    }
+  }
+
+  // A copy with nodes added to the tail, parents before children. Nodes already present are
+  // skipped. Every parent must be in the graph or among nodes: dropping an edge would understate
+  // generations and break ancestry queries.
+  CommitGraph with(Collection<Node> nodes) {
+    Map<ObjectId, Node> pending = new HashMap<>();
+    for (Node n : nodes) if (find(n.id()) < 0) pending.put(n.id(), n);
+    if (pending.isEmpty()) return this;
+    int size = tailIds.length + pending.size();
+    ObjectId[] ids = Arrays.copyOf(tailIds, size);
+    int[][] parents = Arrays.copyOf(tailParents, size);
+    int[] gens = Arrays.copyOf(tailGens, size);
+    long[] times = Arrays.copyOf(tailTimes, size);
+    Map<ObjectId, Integer> added = new HashMap<>();
+    int next = tailIds.length;
+    Deque<Node> stack = new ArrayDeque<>();
+    for (Node start : nodes) {
+      if (!pending.containsKey(start.id())) continue;
+      stack.push(start);
+      while (!stack.isEmpty()) {
+        Node c = stack.peek();
+        if (added.containsKey(c.id())) {
+          stack.pop();
+          continue;
+        }
+        boolean ready = true;
+        for (ObjectId p : c.parents()) {
+          Node pn = pending.get(p);
+          if (pn != null && !added.containsKey(p)) {
+            ready = false;
+            stack.push(pn);
+          }
+        }
+        if (!ready) continue;
+        stack.pop();
+        List<Integer> ps = new ArrayList<>();
+        int gen = 1;
+        for (ObjectId p : c.parents()) {
+          Integer local = added.get(p);
+          int pos = local != null ? local : find(p);
+          if (pos < 0) throw new IllegalArgumentException("Parent " + p.name() + " of " + c.id().name() + " is not in the commit graph");
+          ps.add(pos);
+          gen = Math.max(gen, (local != null ? gens[local - base] : generation(pos)) + 1);
+        }
+        ids[next] = c.id();
+        parents[next] = ps.stream().mapToInt(Integer::intValue).toArray();
+        gens[next] = gen;
+        times[next] = c.timestamp();
+        added.put(c.id(), base + next);
+        next++;
+      }
+    }
+    return new CommitGraph(buf, base, ids, parents, gens, times, tailBytes);
+  }
+
+  // Appends the records this graph has beyond before, which was loaded under the same lock. A
+  // missing, stale or torn tail file is rewritten whole instead.
+  private void writeTail(Path file, CommitGraph before) throws IOException {
+    Path tail = tailFile(file);
+    boolean intact = before.tailBytes >= 0 && Files.exists(tail) && Files.size(tail) == before.tailBytes;
+    int from = intact ? before.tailIds.length : 0;
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    if (!intact) {
+      out.write(TAIL_MAGIC);
+      out.writeInt(VERSION);
+      out.write(checksum());
+    }
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    for (int i = from; i < tailIds.length; i++) {
+      tailIds[i].copyRawTo(raw, 0);
+      out.write(raw);
+      out.writeLong(tailTimes[i]);
+      out.writeInt(tailGens[i]);
+      out.writeInt(tailParents[i].length);
+      for (int p : tailParents[i]) out.writeInt(p);
+    }
+    try (FileChannel ch = intact
+        ? FileChannel.open(tail, StandardOpenOption.WRITE, StandardOpenOption.APPEND)
+        : FileChannel.open(tail, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer b = ByteBuffer.wrap(bytes.toByteArray());
+      while (b.hasRemaining()) ch.write(b);
+      ch.force(false);
+    }
+  }
+
+  // Parses commits reachable from roots, stopping at any already in the given graph.
+  static List<Node> walk(ObjectStore objects, Collection<String> roots, CommitGraph known) throws IOException {
+    List<Node> out = new ArrayList<>();
+    Deque<String> todo = new ArrayDeque<>(roots);
+    Map<String, Boolean> seen = new HashMap<>();
+    while (!todo.isEmpty()) {
+      String id = todo.pop();
+      if (seen.put(id, Boolean.TRUE) != null || known.find(id) >= 0) continue;
+      Commit c = objects.readCommit(id);
+      List<ObjectId> ps = new ArrayList<>();
+      for (String p : c.getParents()) {
+        ps.add(ObjectId.fromHex(p));
+        todo.push(p);
+      }
+      out.add(new Node(ObjectId.fromHex(id), ps, c.getTimestamp()));
+    }
+    return out;
+  }
+
+  public static void rebuild(Path file, ObjectStore objects, Collection<String> roots) throws IOException {
+    write(file, walk(objects, roots, EMPTY));
+  }
+
+  // Writes a complete graph, replacing any tail. Parents missing from nodes are dropped from the edges.
+  public static void write(Path file, Collection<Node> nodes) throws IOException {
+    try (LockFile lock = LockFile.acquire(file, WRITE_WAIT_MILLIS)) {
+      writeLocked(lock, nodes);
+    }
+  }
+
+  private static void writeLocked(LockFile lock, Collection<Node> nodes) throws IOException {
+    TreeMap<ObjectId, Node> sorted = new TreeMap<>();
+    for (Node n : nodes) sorted.put(n.id(), n);
+    ObjectId[] ids = sorted.keySet().toArray(new ObjectId[0]);
+    Map<ObjectId, Integer> pos = new HashMap<>();
+    for (int i = 0; i < ids.length; i++) pos.put(ids[i], i);
+    int[][] parents = new int[ids.length][];
+    long[] times = new long[ids.length];
+    for (int i = 0; i < ids.length; i++) {
+      Node n = sorted.get(ids[i]);
+      parents[i] = n.parents().stream().filter(pos::containsKey).mapToInt(pos::get).toArray();
+      times[i] = n.timestamp();
+    }
+    lock.write(serialize(ids, parents, generations(parents), times));
+    // The tail extends the graph being replaced; drop it while the lock still keeps appends out.
+    Files.deleteIfExists(tailFile(lock.target()));
+    lock.commit();
+  }
+
+  // Iterative post-order so long linear histories do not overflow the stack.
+  private static int[] generations(int[][] parents) {
+    int[] gens = new int[parents.length];
+    Deque<Integer> stack = new ArrayDeque<>();
+    for (int start = 0; start < parents.length; start++) {
+      if (gens[start] != 0) continue;
+      stack.push(start);
+      while (!stack.isEmpty()) {
+        int c = stack.peek();
+        boolean ready = true;
+        for (int p : parents[c]) {
+          if (gens[p] == 0) {
+            ready = false;
+            stack.push(p);
+          }
+        }
+        if (!ready) continue;
+        stack.pop();
+        if (gens[c] != 0) continue;
+        int g = 1;
+        for (int p : parents[c]) g = Math.max(g, gens[p] + 1);
+        gens[c] = g;
+      }
+    }
+    return gens;
+  }
+
+  private static byte[] serialize(ObjectId[] ids, int[][] parents, int[] gens, long[] times) throws IOException {
+    List<Integer> extra = new ArrayList<>();
+    MessageDigest md = Hashing.newSha1();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(IDS_OFF + ids.length * (ObjectId.RAW_LENGTH + RECORD) + 20);
+    DigestOutputStream digestOut = new DigestOutputStream(bytes, md);
+    DataOutputStream out = new DataOutputStream(digestOut);
+    int extraCount = 0;
+    for (int[] ps : parents) if (ps.length > 2) extraCount += ps.length - 1;
+    out.write(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(ids.length);
+    out.writeInt(extraCount);
+    int[] fanout = new int[256];
+    for (ObjectId id : ids) fanout[id.firstByte()]++;
+    int running = 0;
+    for (int i = 0; i < 256; i++) {
+      running += fanout[i];
+      out.writeInt(running);
+    }
+    byte[] raw = new byte[ObjectId.RAW_LENGTH];
+    for (ObjectId id : ids) {
+      id.copyRawTo(raw, 0);
+      out.write(raw);
+    }
+    for (int i = 0; i < ids.length; i++) {
+      int[] ps = parents[i];
+      out.writeInt(ps.length > 0 ? ps[0] : NO_PARENT);
+      if (ps.length > 2) {
+        out.writeInt(EXTRA | extra.size());
+        for (int k = 1; k < ps.length; k++) extra.add(k == ps.length - 1 ? ps[k] | LAST : ps[k]);
+      } else {
+        out.writeInt(ps.length > 1 ? ps[1] : NO_PARENT);
+      }
+      out.writeInt(gens[i]);
+      out.writeLong(times[i]);
+    }
+    for (int e : extra) out.writeInt(e);
+    digestOut.on(false);
+    out.write(md.digest());
+    out.flush();
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,35 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// Follows first parents from a starting commit, reading one commit header per step. Holds only
+// the next id, so walking a long history takes constant memory.
+final class CommitWalker implements Iterator<Commit.Header> {
+  private final ObjectStore objects;
+  private String next;
+
+  CommitWalker(ObjectStore objects, String start) {
+    this.objects = objects;
+    this.next = start;
+  }
+
+  @Override
+  public boolean hasNext() {
+    return next != null;
+  }
+
+  @Override
+  public Commit.Header next() {
+    if (next == null) throw new NoSuchElementException();
+    try {
+      Commit.Header h = objects.readCommitHeader(next);
+      next = h.parents().isEmpty() ? null : h.parents().get(0);
+      return h;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
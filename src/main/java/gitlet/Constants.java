@@ -11,6 +11,10 @@ public final class Constants {
   public static final String headsDirName = "heads";
   public static final String headFileName = "HEAD";
   public static final String indexFileName = "index";
+  public static final String commitGraphFileName = "commit-graph";
+  public static final String packedRefsFileName = "packed-refs";
+  public static final String catalogFileName = "catalog";
+  public static final String catalogIndexFileName = "catalog.idx";
   public static final String defaultBranch = "master";
 
   public static Path dot(Path repoRoot) { 
@@ -30,6 +34,18 @@ public final class Constants {
 }
   public static Path indexFile(Path repoRoot) { 
     return dot(repoRoot).resolve(indexFileName); 
+}
+  public static Path commitGraph(Path repoRoot) { 
+    return dot(repoRoot).resolve(commitGraphFileName); 
+}
+  public static Path packedRefs(Path repoRoot) { 
+    return dot(repoRoot).resolve(packedRefsFileName); 
+}
+  public static Path catalog(Path repoRoot) { 
+    return dot(repoRoot).resolve(catalogFileName); 
+}
+  public static Path catalogIndex(Path repoRoot) { 
+    return dot(repoRoot).resolve(catalogIndexFileName); 
 }
   public static Path branchRef(Path repoRoot, String branch) { 
     return heads(repoRoot).resolve(branch); 
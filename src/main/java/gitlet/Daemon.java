@@ -0,0 +1,309 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+// Long-running server for DaemonClient. Keeps one warm Repository per working directory, so a
+// forwarded command skips JVM startup, class loading and reloading the index, and runs on JIT-
+// compiled code. Commands on the same repository run one at a time; each refreshes the repository
+// first, so changes made by gitlet processes outside the daemon are seen. System.out and System.err
+// are routed per thread to the client being served. Exits after being idle for the idle timeout.
+final class Daemon implements AutoCloseable {
+  static final String IDLE_PROPERTY = "gitlet.daemon.idleSeconds";
+  static final long DEFAULT_IDLE_SECONDS = 900;
+  // Warm repositories kept at once; the least recently used one is dropped first.
+  static final int MAX_REPOSITORIES = 64;
+
+  private static final ThreadLocal<OutputStream> OUT = new ThreadLocal<>();
+  private static final ThreadLocal<OutputStream> ERR = new ThreadLocal<>();
+
+  private final Path socket;
+  private final Duration idle;
+  private final ServerSocketChannel server;
+  private final UserPrincipal owner;
+  private final ExecutorService pool;
+  private final ScheduledExecutorService watchdog;
+  private final AtomicInteger active = new AtomicInteger();
+  private volatile long lastActiveNanos = System.nanoTime();
+  private final Map<Path, Repository> repos = new LinkedHashMap<>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Path, Repository> eldest) {
+      return size() > MAX_REPOSITORIES;
+    }
+  };
+
+  // Binds socket, replacing a stale socket file. Fails if another daemon is already listening, or
+  // if the socket's directory is not the current user's own with mode 0700.
+  Daemon(Path socket, Duration idle) throws IOException {
+    this.socket = socket;
+    this.idle = idle;
+    Path dir = socket.toAbsolutePath().getParent();
+    if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) {
+      if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+        throw new IOException("The gitlet daemon needs a POSIX file system for " + dir);
+      }
+      Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+    }
+    // Also covers a directory someone else created first, or one created just now under a umask
+    // that stripped owner bits.
+    DaemonClient.checkSocketDir(dir);
+    if (Files.exists(socket)) {
+      if (DaemonClient.forward(socket, dir, new String[0], OutputStream.nullOutputStream(), OutputStream.nullOutputStream()) >= 0) {
+        throw new IOException("A gitlet daemon is already listening on " + socket);
+      }
+      Files.delete(socket);
+    }
+    this.server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    server.bind(UnixDomainSocketAddress.of(socket));
+    // The socket was just created by this process, so its owner is the daemon's own user.
+    this.owner = Files.getOwner(socket, LinkOption.NOFOLLOW_LINKS);
+    this.pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+      Thread t = new Thread(r, "gitlet-daemon");
+      t.setDaemon(true);
+      return t;
+    });
+    this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "gitlet-daemon-idle");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  static void serve() throws IOException {
+    Path socket = DaemonClient.socketPath();
+    try (Daemon d = new Daemon(socket, Duration.ofSeconds(Long.getLong(IDLE_PROPERTY, DEFAULT_IDLE_SECONDS)))) {
+      System.out.println("gitlet daemon listening on " + socket);
+      d.run();
+    }
+  }
+
+  // Accepts clients until the idle timeout closes the socket.
+  void run() throws IOException {
+    PrintStream stdout = System.out;
+    PrintStream stderr = System.err;
+    System.setOut(new PrintStream(new Routed(OUT, stdout), false, StandardCharsets.UTF_8));
+    System.setErr(new PrintStream(new Routed(ERR, stderr), false, StandardCharsets.UTF_8));
+    long period = Math.max(1, Math.min(idle.toMillis(), 1000));
+    watchdog.scheduleWithFixedDelay(this::closeIfIdle, period, period, TimeUnit.MILLISECONDS);
+    try {
+      while (true) {
+        SocketChannel ch;
+        try {
+          ch = server.accept();
+        } catch (ClosedChannelException e) {
+          return;
+        }
+        active.incrementAndGet();
+        pool.execute(() -> {
+          try {
+            handle(ch);
+          } finally {
+            lastActiveNanos = System.nanoTime();
+            active.decrementAndGet();
+          }
+        });
+      }
+    } finally {
+      System.setOut(stdout);
+      System.setErr(stderr);
+    }
+  }
+
+  private void closeIfIdle() {
+    if (active.get() == 0 && System.nanoTime() - lastActiveNanos >= idle.toNanos()) {
+      try {
+        server.close();
+      } catch (IOException e) {
+        // Closing is best effort; close() retries when the daemon shuts down.
+      }
+    }
+  }
+
+  private void handle(SocketChannel ch) {
+    try (ch) {
+      if (!fromOwner(ch)) return;
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+      DataOutputStream reply = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch), 1 << 16));
+      int version = in.readInt();
+      if (version != DaemonClient.VERSION) throw new IOException("unsupported protocol version " + version);
+      Path cwd = Path.of(in.readUTF());
+      String[] args = new String[in.readInt()];
+      for (int i = 0; i < args.length; i++) args[i] = in.readUTF();
+
+      OutputStream out = new BufferedOutputStream(new Frames(DaemonClient.OUT, reply), 1 << 16);
+      OutputStream err = new BufferedOutputStream(new Frames(DaemonClient.ERR, reply), 1 << 12);
+      int code = run(cwd, args, out, err);
+      out.flush();
+      err.flush();
+      synchronized (reply) {
+        reply.writeByte(DaemonClient.EXIT);
+        reply.writeInt(code);
+        reply.flush();
+      }
+    } catch (IOException e) {
+      // The client went away; there is no one left to report to.
+    }
+  }
+
+  // Only the user running the daemon may use it: commands run with the daemon's permissions.
+  // Connections whose peer cannot be identified are refused as well.
+  private boolean fromOwner(SocketChannel ch) {
+    try {
+      UnixDomainPrincipal peer = ch.getOption(ExtendedSocketOptions.SO_PEERCRED);
+      return peer != null && owner.equals(peer.user());
+    } catch (IOException | UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  private int run(Path cwd, String[] args, OutputStream out, OutputStream err) {
+    OUT.set(out);
+    ERR.set(err);
+    try {
+      if (args.length == 0) {
+        Main.printUsage();
+        return 0;
+      }
+      Repository repo = repository(cwd);
+      synchronized (repo) {
+        try {
+          repo.refresh();
+          Main.dispatch(repo, args);
+          return 0;
+        } catch (Exception e) {
+          // A failed command may have left the instance half-updated; start the next one cold.
+          evict(cwd, repo);
+          System.err.println(e.getMessage());
+          return 1;
+        }
+      }
+    } catch (IOException e) {
+      System.err.println(e.getMessage());
+      return 1;
+    } finally {
+      System.out.flush();
+      System.err.flush();
+      OUT.remove();
+      ERR.remove();
+    }
+  }
+
+  private synchronized Repository repository(Path cwd) throws IOException {
+    Repository repo = repos.get(cwd);
+    if (repo == null) {
+      repo = new Repository(cwd);
+      repos.put(cwd, repo);
+    }
+    return repo;
+  }
+
+  private synchronized void evict(Path cwd, Repository repo) {
+    repos.remove(cwd, repo);
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchdog.shutdownNow();
+    pool.shutdown();
+    try {
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    server.close();
+    Files.deleteIfExists(socket);
+  }
+
+  // Writes each buffer it is given as one frame of the reply.
+  private static final class Frames extends OutputStream {
+    private final byte tag;
+    private final DataOutputStream reply;
+
+    Frames(byte tag, DataOutputStream reply) {
+      this.tag = tag;
+      this.reply = reply;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return;
+      synchronized (reply) {
+        reply.writeByte(tag);
+        reply.writeInt(len);
+        reply.write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (reply) {
+        reply.flush();
+      }
+    }
+  }
+
+  // Installed as System.out/System.err: sends each write to the stream of the client the current
+  // thread is serving, or to the daemon's own stream on any other thread.
+  private static final class Routed extends OutputStream {
+    private final ThreadLocal<OutputStream> target;
+    private final OutputStream fallback;
+
+    Routed(ThreadLocal<OutputStream> target, OutputStream fallback) {
+      this.target = target;
+      this.fallback = fallback;
+    }
+
+    private OutputStream out() {
+      OutputStream out = target.get();
+      return out != null ? out : fallback;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out().write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out().flush();
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.EnumSet;
+import java.util.Map;
+
+// Client side of the daemon protocol. Kept apart from Daemon and free of repository classes, so a
+// forwarded command loads little more than this class. The request is a version, the working
+// directory and argv; the reply is a run of OUT/ERR frames ("tag, length, bytes") ending in an
+// EXIT frame with the exit code. The socket lives in a directory that must belong to the current
+// user with mode 0700. Both sides check this, so no other user can reach the daemon or plant a
+// socket in front of it.
+final class DaemonClient {
+  // Set to true (or GITLET_DAEMON=1 in the environment) to forward commands to a running daemon.
+  static final String ENABLE_PROPERTY = "gitlet.daemon";
+  static final String SOCKET_PROPERTY = "gitlet.daemon.socket";
+  static final int VERSION = 1;
+  static final byte OUT = 1;
+  static final byte ERR = 2;
+  static final byte EXIT = 3;
+
+  private static final EnumSet<PosixFilePermission> OWNER_ONLY =
+      EnumSet.of(PosixFilePermission.OWNER_READ, PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+  private DaemonClient() {}
+
+  // Throws unless dir is a real directory (not a symlink) owned by the current user with mode 0700.
+  static void checkSocketDir(Path dir) throws IOException {
+    PosixFileAttributes attrs;
+    Map<String, Object> unix;
+    try {
+      attrs = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+      unix = Files.readAttributes(dir, "unix:uid", LinkOption.NOFOLLOW_LINKS);
+    } catch (UnsupportedOperationException e) {
+      throw new IOException("The gitlet daemon needs a POSIX file system for " + dir, e);
+    }
+    if (!attrs.isDirectory()) throw new IOException("Refusing to use " + dir + " for the gitlet daemon: not a directory");
+    if (((Number) unix.get("uid")).longValue() != currentUid()) {
+      throw new IOException("Refusing to use " + dir + " for the gitlet daemon: owned by " + attrs.owner().getName());
+    }
+    if (!attrs.permissions().equals(OWNER_ONLY)) {
+      throw new IOException("Refusing to use " + dir + " for the gitlet daemon: mode must be 0700");
+    }
+  }
+
+  static long currentUid() {
+    return new com.sun.security.auth.module.UnixSystem().getUid();
+  }
+
+  static boolean enabled() {
+    return Boolean.getBoolean(ENABLE_PROPERTY) || "1".equals(System.getenv("GITLET_DAEMON"));
+  }
+
+  // $java.io.tmpdir/gitlet-<user>/daemon.sock unless SOCKET_PROPERTY says otherwise.
+  static Path socketPath() {
+    String configured = System.getProperty(SOCKET_PROPERTY);
+    if (configured != null) return Path.of(configured);
+    return Path.of(System.getProperty("java.io.tmpdir"), "gitlet-" + System.getProperty("user.name"), "daemon.sock");
+  }
+
+  // Runs args in cwd on the daemon listening at socket, copying its output to out and err.
+  // Returns the command's exit code, or -1 if no daemon is listening. Throws if the socket's
+  // directory fails checkSocketDir.
+  static int forward(Path socket, Path cwd, String[] args, OutputStream out, OutputStream err) throws IOException {
+    Path dir = socket.toAbsolutePath().getParent();
+    if (!Files.exists(dir, LinkOption.NOFOLLOW_LINKS)) return -1;
+    checkSocketDir(dir);
+    SocketChannel ch;
+    try {
+      ch = SocketChannel.open(UnixDomainSocketAddress.of(socket));
+    } catch (SocketException e) {
+      return -1;
+    }
+    try (ch) {
+      DataOutputStream req = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+      req.writeInt(VERSION);
+      req.writeUTF(cwd.toAbsolutePath().normalize().toString());
+      req.writeInt(args.length);
+      for (String a : args) req.writeUTF(a);
+      req.flush();
+
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch), 1 << 16));
+      byte[] buf = new byte[1 << 16];
+      while (true) {
+        byte tag = in.readByte();
+        if (tag == EXIT) {
+          out.flush();
+          err.flush();
+          return in.readInt();
+        }
+        OutputStream dst = tag == OUT ? out : tag == ERR ? err : null;
+        if (dst == null) throw new IOException("gitlet daemon sent an unknown frame: " + tag);
+        for (int left = in.readInt(); left > 0; ) {
+          int n = in.read(buf, 0, Math.min(left, buf.length));
+          if (n < 0) throw new IOException("gitlet daemon closed the connection mid-frame");
+          dst.write(buf, 0, n);
+          left -= n;
+        }
+      }
+    }
+  }
+}
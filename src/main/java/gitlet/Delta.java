@@ -0,0 +1,198 @@
+package gitlet;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+// Copy/insert deltas in the style of Git's pack deltas:
+//   varint baseSize, varint targetSize, then ops.
+//   1xxxxxxx copy: low 4 bits select offset bytes, next 3 bits select size bytes (little-endian).
+//   0nnnnnnn insert the next n (1..127) literal bytes.
+final class Delta {
+  private static final int BLOCK = 16;
+  private static final int PRIME = 0x01000193;
+  private static final int MAX_COPY = 0xffffff;
+  private static final int MAX_INSERT = 0x7f;
+
+  private Delta() {}
+
+  // Returns null when the delta would not fit in maxSize bytes.
+  static byte[] create(byte[] base, byte[] target, int maxSize) {
+    Out out = new Out(Math.min(maxSize, target.length / 4 + 64), maxSize);
+    out.varint(base.length);
+    out.varint(target.length);
+    if (base.length < BLOCK || target.length < BLOCK) {
+      out.insert(target, 0, target.length);
+      return out.overflow ? null : out.toByteArray();
+    }
+
+    int blocks = base.length / BLOCK;
+    int mask = Integer.highestOneBit(Math.max(blocks * 2 - 1, 1)) * 2 - 1;
+    int[] table = new int[mask + 1];
+    Arrays.fill(table, -1);
+    // Walk backwards so the earliest block wins each slot.
+    for (int b = blocks - 1; b >= 0; b--) table[hash(base, b * BLOCK) & mask] = b * BLOCK;
+
+    int pow = 1;
+    for (int k = 1; k < BLOCK; k++) pow *= PRIME;
+
+    int insStart = 0;
+    int i = 0;
+    int h = hash(target, 0);
+    while (i + BLOCK <= target.length) {
+      int c = table[h & mask];
+      if (c >= 0 && regionEquals(base, c, target, i, BLOCK)) {
+        int len = BLOCK;
+        while (c + len < base.length && i + len < target.length && base[c + len] == target[i + len]) len++;
+        while (i > insStart && c > 0 && base[c - 1] == target[i - 1]) {
+          i--;
+          c--;
+          len++;
+        }
+        out.insert(target, insStart, i - insStart);
+        out.copy(c, len);
+        if (out.overflow) return null;
+        i += len;
+        insStart = i;
+        if (i + BLOCK <= target.length) h = hash(target, i);
+        continue;
+      }
+      if (i + BLOCK < target.length) h = (h - target[i] * pow) * PRIME + target[i + BLOCK];
+      i++;
+    }
+    out.insert(target, insStart, target.length - insStart);
+    return out.overflow ? null : out.toByteArray();
+  }
+
+  static byte[] apply(byte[] base, byte[] delta) throws IOException {
+    int[] pos = {0};
+    long baseSize = varint(delta, pos);
+    long targetSize = varint(delta, pos);
+    if (baseSize != base.length) throw new IOException("Delta base size mismatch");
+    if (targetSize > Integer.MAX_VALUE - 8) throw new IOException("Delta target too large");
+    byte[] out = new byte[(int) targetSize];
+    int o = 0;
+    int p = pos[0];
+    while (p < delta.length) {
+      int cmd = delta[p++] & 0xff;
+      if ((cmd & 0x80) != 0) {
+        long off = 0;
+        int size = 0;
+        for (int k = 0; k < 4; k++) if ((cmd & (1 << k)) != 0) off |= (long) (delta[p++] & 0xff) << (8 * k);
+        for (int k = 0; k < 3; k++) if ((cmd & (0x10 << k)) != 0) size |= (delta[p++] & 0xff) << (8 * k);
+        if (size == 0) size = 0x10000;
+        if (off + size > base.length || o + size > out.length) throw new IOException("Corrupt delta copy");
+        System.arraycopy(base, (int) off, out, o, size);
+        o += size;
+      } else if (cmd != 0) {
+        if (p + cmd > delta.length || o + cmd > out.length) throw new IOException("Corrupt delta insert");
+        System.arraycopy(delta, p, out, o, cmd);
+        p += cmd;
+        o += cmd;
+      } else {
+        throw new IOException("Corrupt delta opcode");
+      }
+    }
+    if (o != out.length) throw new IOException("Delta produced " + o + " bytes, expected " + out.length);
+    return out;
+  }
+
+  private static long varint(byte[] b, int[] pos) throws IOException {
+    long v = 0;
+    int shift = 0;
+    int x;
+    do {
+      if (pos[0] >= b.length || shift > 63) throw new IOException("Corrupt delta header");
+      x = b[pos[0]++] & 0xff;
+      v |= (long) (x & 0x7f) << shift;
+      shift += 7;
+    } while ((x & 0x80) != 0);
+    return v;
+  }
+
+  private static int hash(byte[] b, int off) {
+    int h = 0;
+    for (int k = 0; k < BLOCK; k++) h = h * PRIME + b[off + k];
+    return h;
+  }
+
+  private static boolean regionEquals(byte[] a, int ai, byte[] b, int bi, int len) {
+    return Arrays.equals(a, ai, ai + len, b, bi, bi + len);
+  }
+
+  private static final class Out {
+    private final int limit;
+    private byte[] buf;
+    private int len;
+    boolean overflow;
+
+    Out(int initial, int limit) {
+      this.buf = new byte[Math.max(initial, 16)];
+      this.limit = limit;
+    }
+
+    void varint(long v) {
+      while ((v & ~0x7fL) != 0) {
+        put((int) ((v & 0x7f) | 0x80));
+        v >>>= 7;
+      }
+      put((int) v);
+    }
+
+    void insert(byte[] src, int off, int n) {
+      while (n > 0 && !overflow) {
+        int chunk = Math.min(n, MAX_INSERT);
+        put(chunk);
+        ensure(chunk);
+        if (overflow) return;
+        System.arraycopy(src, off, buf, len, chunk);
+        len += chunk;
+        off += chunk;
+        n -= chunk;
+      }
+    }
+
+    void copy(long off, int n) {
+      while (n > 0 && !overflow) {
+        int chunk = Math.min(n, MAX_COPY);
+        int cmd = 0x80;
+        int start = len;
+        put(0);
+        for (int k = 0; k < 4; k++) {
+          int b = (int) (off >>> (8 * k)) & 0xff;
+          if (b != 0) {
+            cmd |= 1 << k;
+            put(b);
+          }
+        }
+        for (int k = 0; k < 3; k++) {
+          int b = (chunk >>> (8 * k)) & 0xff;
+          if (b != 0) {
+            cmd |= 0x10 << k;
+            put(b);
+          }
+        }
+        if (overflow) return;
+        buf[start] = (byte) cmd;
+        off += chunk;
+        n -= chunk;
+      }
+    }
+
+    private void put(int b) {
+      ensure(1);
+      if (!overflow) buf[len++] = (byte) b;
+    }
+
+    private void ensure(int n) {
+      if (len + n > limit) {
+        overflow = true;
+        return;
+      }
+      if (len + n > buf.length) buf = Arrays.copyOf(buf, Math.min(limit, Math.max(buf.length * 2, len + n)));
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(buf, len);
+    }
+  }
+}
@@ -1,37 +1,404 @@
 package gitlet;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
+// Loose objects live at objects/xx/yyyy... and are named by the SHA-1 of their content.
+// Format v1 is MAGIC, an uncompressed "type size\0" header, then the Deflate-compressed
+// content. Files without MAGIC are raw objects written before the format existed.
+// Packs under objects/pack are consulted before loose objects.
 public final class FileObjectStore {
+      private static final int CHUNK_SIZE = 64 * 1024;
+      private static final int MAX_HEADER = 32;
+      // 0xC7 cannot be followed by 'g' in UTF-8, so text content never starts with MAGIC.
+      static final byte[] MAGIC = {(byte) 0xC7, 'g', 'l', 1};
+
       private final Path objectsDir;
+      private final Path packDir;
+      private volatile List<PackFile> packs;
+      private FileTime packsScannedAt;
+      private final LooseIdTable looseIds;
+
+    public record ObjectHeader(ObjectType type, long size) {}
+
+    // id is null for an abandoned temp file left behind by an interrupted write.
+    public record LooseObject(String id, Path path, long size, FileTime modified) {}
+
+    // Decides which prefix matches to keep, e.g. only commits; may read the object.
+    @FunctionalInterface
+    public interface IdFilter {
+        boolean test(ObjectId id) throws IOException;
+    }
 
     public FileObjectStore(Path repoDir){
         this.objectsDir = repoDir.resolve("objects");
+        this.packDir = objectsDir.resolve("pack");
+        this.looseIds = new LooseIdTable(objectsDir);
     }
 
     public String writeBlob(byte[] content) throws IOException{
-        String id = Hashing.sha1(content);
-        String fanOutDir = id.substring(0, 2);
-        String fileName = id.substring(2);
-        Path dirPath = objectsDir.resolve(fanOutDir);
-        Path filePath = dirPath.resolve(fileName);
-        Files.createDirectories(dirPath);
-        if (!Files.exists(filePath)){
-            Files.write(filePath, content, StandardOpenOption.CREATE_NEW);
+        return writeObject(ObjectType.BLOB, content);
+    }
+
+    public String writeBlob(InputStream in) throws IOException{
+        return writeStream(ObjectType.BLOB, Channels.newChannel(in), -1);
+    }
+
+    public String writeBlob(Path file) throws IOException{
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+            return writeStream(ObjectType.BLOB, ch, ch.size());
         }
+    }
 
+    public String writeObject(ObjectType type, byte[] content) throws IOException{
+        String id = Hashing.sha1(content);
+        writeLoose(type, id, content);
         return id;
     }
 
+    // Stores the file as content-defined chunks (see Chunker), each a blob of its own, plus a
+    // manifest listing them. The manifest is filed under the id of the whole content, so trees,
+    // the index and status see the same id as for a plain blob and only reads need to know.
+    public String writeChunked(Path file) throws IOException{
+        MessageDigest md = Hashing.newSha1();
+        List<Chunker.Chunk> chunks = new ArrayList<>();
+        try (InputStream in = Files.newInputStream(file)){
+            Chunker.split(in, (buf, off, len) -> {
+                md.update(buf, off, len);
+                String chunkId = writeObject(ObjectType.BLOB, Arrays.copyOfRange(buf, off, off + len));
+                chunks.add(new Chunker.Chunk(chunkId, len));
+            });
+        }
+        String id = ObjectId.fromRaw(md.digest()).name();
+        writeLoose(ObjectType.MANIFEST, id, Chunker.manifest(chunks));
+        return id;
+    }
+
+    private void writeLoose(ObjectType type, String id, byte[] content) throws IOException{
+        Path filePath = pathForId(id);
+        if (freshen(filePath)){
+            return;
+        }
+        Path tmp = newTempFile();
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING), CHUNK_SIZE)){
+                writeHeader(out, type, content.length);
+                Deflater deflater = new Deflater();
+                try {
+                    DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, CHUNK_SIZE);
+                    dos.write(content);
+                    dos.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+            publish(tmp, filePath);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // Hashes and compresses the content to a temp file in one pass, then renames it to its id.
+    // When the size is unknown the compressed body is spooled first so the header can lead.
+    private String writeStream(ObjectType type, ReadableByteChannel src, long size) throws IOException{
+        MessageDigest md = Hashing.newSha1();
+        Path tmp = newTempFile();
+        Path body = null;
+        try {
+            if (size >= 0){
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING), CHUNK_SIZE)){
+                    writeHeader(out, type, size);
+                    long n = deflateBody(src, out, md);
+                    if (n != size) throw new IOException("Content changed while being stored: expected " + size + " bytes, read " + n);
+                }
+            } else {
+                body = newTempFile();
+                long n;
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(body, StandardOpenOption.TRUNCATE_EXISTING), CHUNK_SIZE)){
+                    n = deflateBody(src, out, md);
+                }
+                try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmp, StandardOpenOption.TRUNCATE_EXISTING), CHUNK_SIZE)){
+                    writeHeader(out, type, n);
+                    Files.copy(body, out);
+                }
+            }
+            String id = ObjectId.fromRaw(md.digest()).name();
+            Path filePath = pathForId(id);
+            if (!freshen(filePath)){
+                publish(tmp, filePath);
+            }
+            return id;
+        } finally {
+            Files.deleteIfExists(tmp);
+            if (body != null) Files.deleteIfExists(body);
+        }
+    }
+
+    private static long deflateBody(ReadableByteChannel src, OutputStream out, MessageDigest md) throws IOException{
+        Deflater deflater = new Deflater();
+        try {
+            DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, CHUNK_SIZE);
+            ByteBuffer buf = ByteBuffer.allocate(CHUNK_SIZE);
+            long total = 0;
+            int n;
+            while ((n = src.read(buf)) >= 0){
+                if (n == 0) continue;
+                md.update(buf.array(), 0, n);
+                dos.write(buf.array(), 0, n);
+                total += n;
+                buf.clear();
+            }
+            dos.finish();
+            return total;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeHeader(OutputStream out, ObjectType type, long size) throws IOException{
+        out.write(MAGIC);
+        out.write((type.tag() + " " + size).getBytes(StandardCharsets.US_ASCII));
+        out.write(0);
+    }
+
+    // The stored bytes of the object; for a chunked blob, its manifest.
     public byte[] readBlob(String id) throws IOException{
+        return read(id, false);
+    }
+
+    // The content of the object, with a chunked blob's chunks read back in order.
+    public byte[] readContent(String id) throws IOException{
+        return read(id, true);
+    }
+
+    private byte[] read(String id, boolean expand) throws IOException{
+        PackFile pack = packFor(id);
+        if (pack == null && !Files.exists(pathForId(id))){
+            pack = packForAfterRescan(id);
+            if (pack == null) throw new IOException("Object " + id + " not found");
+        }
+        if (pack != null){
+            ObjectId oid = ObjectId.fromHex(id);
+            byte[] data = pack.read(oid);
+            return expand && pack.header(oid).type() == ObjectType.MANIFEST ? readChunks(id, data) : data;
+        }
+        byte[] data = Files.readAllBytes(pathForId(id));
+        if (!hasMagic(data, data.length)){
+            return data;
+        }
+        int nul = headerEnd(data, data.length, id);
+        ObjectHeader header = parseHeader(data, nul, id);
+        if (header.size() > Integer.MAX_VALUE - 8){
+            throw new IOException("Object " + id + " is too large to read into memory");
+        }
+        byte[] out = new byte[(int) header.size()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data, nul + 1, data.length - nul - 1);
+            int off = 0;
+            while (off < out.length && !inflater.finished()){
+                int n = inflater.inflate(out, off, out.length - off);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                off += n;
+            }
+            if (off != out.length) throw new IOException("Object " + id + " is truncated");
+        } catch (DataFormatException e){
+            throw new IOException("Object " + id + " is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        return expand && header.type() == ObjectType.MANIFEST ? readChunks(id, out) : out;
+    }
+
+    private byte[] readChunks(String id, byte[] manifest) throws IOException{
+        List<Chunker.Chunk> chunks = Chunker.parseManifest(id, manifest);
+        long total = 0;
+        for (Chunker.Chunk c : chunks) total += c.size();
+        if (total > Integer.MAX_VALUE - 8){
+            throw new IOException("Object " + id + " is too large to read into memory");
+        }
+        byte[] out = new byte[(int) total];
+        int off = 0;
+        for (Chunker.Chunk c : chunks){
+            byte[] data = readBlob(c.id());
+            if (data.length != c.size()) throw new IOException("Chunk " + c.id() + " of " + id + " has the wrong size");
+            System.arraycopy(data, 0, out, off, data.length);
+            off += data.length;
+        }
+        return out;
+    }
+
+    public byte[] readBlob(ObjectId id) throws IOException{
+        return readBlob(id.name());
+    }
+
+    // Streams the object's stored bytes, inflating as it is read. The caller closes the stream.
+    public InputStream openObject(String id) throws IOException{
+        return open(id, false);
+    }
+
+    // Streams the object's content. A chunked blob is read one chunk at a time, so memory stays
+    // bounded by the largest chunk however big the file is.
+    public InputStream openContent(String id) throws IOException{
+        return open(id, true);
+    }
+
+    private InputStream open(String id, boolean expand) throws IOException{
+        PackFile pack = packFor(id);
+        if (pack == null && !Files.exists(pathForId(id))){
+            pack = packForAfterRescan(id);
+            if (pack == null) throw new IOException("Object " + id + " not found");
+        }
+        if (pack != null){
+            ObjectId oid = ObjectId.fromHex(id);
+            if (expand && pack.header(oid).type() == ObjectType.MANIFEST) return openChunks(id, pack.read(oid));
+            return pack.open(oid);
+        }
+        Path blobPath = pathForId(id);
+        PushbackInputStream in = new PushbackInputStream(new BufferedInputStream(Files.newInputStream(blobPath), CHUNK_SIZE), MAGIC.length);
+        try {
+            byte[] head = in.readNBytes(MAGIC.length);
+            if (!hasMagic(head, head.length)){
+                in.unread(head);
+                return in;
+            }
+            byte[] header = new byte[MAGIC.length + MAX_HEADER + 1];
+            System.arraycopy(head, 0, header, 0, MAGIC.length);
+            int b;
+            int len = MAGIC.length;
+            while ((b = in.read()) > 0){
+                if (len == MAGIC.length + MAX_HEADER) throw new IOException("Object " + id + " has a corrupt header");
+                header[len++] = (byte) b;
+            }
+            if (b < 0) throw new IOException("Object " + id + " has a corrupt header");
+            Inflater inflater = new Inflater();
+            InputStream body = new InflaterInputStream(in, inflater, CHUNK_SIZE){
+                @Override
+                public void close() throws IOException{
+                    try {
+                        super.close();
+                    } finally {
+                        inflater.end();
+                    }
+                }
+            };
+            if (!expand || parseHeader(header, len, id).type() != ObjectType.MANIFEST) return body;
+            byte[] manifest;
+            try (body){
+                manifest = body.readAllBytes();
+            }
+            return openChunks(id, manifest);
+        } catch (IOException | RuntimeException e){
+            in.close();
+            throw e;
+        }
+    }
+
+    // Concatenates the chunks, opening each only when the previous one is used up.
+    private InputStream openChunks(String id, byte[] manifest) throws IOException{
+        Iterator<Chunker.Chunk> chunks = Chunker.parseManifest(id, manifest).iterator();
+        return new SequenceInputStream(new Enumeration<InputStream>(){
+            @Override
+            public boolean hasMoreElements(){
+                return chunks.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement(){
+                try {
+                    return openObject(chunks.next().id());
+                } catch (IOException e){
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    // Reads only the header. Legacy raw objects are typed by sniffing their first line.
+    public ObjectHeader peek(String id) throws IOException{
+        PackFile pack = packFor(id);
+        if (pack != null){
+            return pack.header(ObjectId.fromHex(id));
+        }
         Path blobPath = pathForId(id);
-        if (Files.exists(blobPath)){
-            return Files.readAllBytes(blobPath);
-        } else {
-            throw new IOException("Object " + id + " not found");  
+        if (!Files.exists(blobPath)){
+            pack = packForAfterRescan(id);
+            if (pack != null) return pack.header(ObjectId.fromHex(id));
+            throw new IOException("Object " + id + " not found");
+        }
+        byte[] head;
+        try (InputStream in = Files.newInputStream(blobPath)){
+            head = in.readNBytes(MAGIC.length + MAX_HEADER);
+        }
+        if (!hasMagic(head, head.length)){
+            boolean commit = startsWith(head, "commit\n".getBytes(StandardCharsets.US_ASCII));
+            return new ObjectHeader(commit ? ObjectType.COMMIT : ObjectType.BLOB, Files.size(blobPath));
+        }
+        return parseHeader(head, headerEnd(head, head.length, id), id);
+    }
+
+    private static boolean hasMagic(byte[] data, int len){
+        return len >= MAGIC.length && startsWith(data, MAGIC);
+    }
+
+    private static boolean startsWith(byte[] data, byte[] prefix){
+        if (data.length < prefix.length) return false;
+        for (int i = 0; i < prefix.length; i++){
+            if (data[i] != prefix[i]) return false;
+        }
+        return true;
+    }
+
+    private static int headerEnd(byte[] data, int len, String id) throws IOException{
+        int limit = Math.min(len, MAGIC.length + MAX_HEADER);
+        for (int i = MAGIC.length; i < limit; i++){
+            if (data[i] == 0) return i;
+        }
+        throw new IOException("Object " + id + " has a corrupt header");
+    }
+
+    private static ObjectHeader parseHeader(byte[] data, int nul, String id) throws IOException{
+        String header = new String(data, MAGIC.length, nul - MAGIC.length, StandardCharsets.US_ASCII);
+        int sp = header.indexOf(' ');
+        try {
+            return new ObjectHeader(ObjectType.fromTag(header.substring(0, sp)), Long.parseLong(header.substring(sp + 1)));
+        } catch (RuntimeException e){
+            throw new IOException("Object " + id + " has a corrupt header: " + header, e);
         }
     }
 
@@ -41,27 +408,240 @@ public final class FileObjectStore {
         return objectsDir.resolve(fanOutDir).resolve(fileName);
     }
 
+    private Path newTempFile() throws IOException{
+        Files.createDirectories(objectsDir);
+        return Files.createTempFile(objectsDir, "tmp_obj_", "");
+    }
+
+    private void publish(Path tmp, Path filePath) throws IOException{
+        Files.createDirectories(filePath.getParent());
+        try {
+            Files.move(tmp, filePath, StandardCopyOption.ATOMIC_MOVE);
+        } catch (FileAlreadyExistsException e){
+            // Another writer published the same content first.
+        }
+        looseIds.invalidate(filePath.getParent().getFileName().toString());
+    }
+
     public boolean exists(String id){
-        return Files.exists(pathForId(id));
+        try {
+            return packFor(id) != null || Files.exists(pathForId(id)) || packForAfterRescan(id) != null;
+        } catch (IOException e){
+            return Files.exists(pathForId(id));
+        }
+    }
+
+    public boolean exists(ObjectId id){
+        return exists(id.name());
     }
 
+    // The one id starting with prefix, or null if none or several do.
     public String resolvePrefix(String prefix) throws IOException{
-        if (prefix.length() < 2){
-            return null;
+        List<ObjectId> matches = findPrefix(prefix, 2, null);
+        return matches.size() == 1 ? matches.get(0).name() : null;
+    }
+
+    // Up to limit ids, loose or packed, that start with hexPrefix (any case) and pass filter (null
+    // keeps all), in id order. Pack indexes and the loose id table are both binary-searched.
+    public List<ObjectId> findPrefix(String hexPrefix, int limit, IdFilter filter) throws IOException{
+        if (hexPrefix.isEmpty() || hexPrefix.length() > ObjectId.HEX_LENGTH || limit <= 0) return List.of();
+        String prefix = hexPrefix.toLowerCase();
+        if (!ObjectId.isValid(prefix + "0".repeat(ObjectId.HEX_LENGTH - prefix.length()))) return List.of();
+        // Each source is sorted, so the first limit matches overall are among each source's first limit.
+        List<ObjectId> found = new ArrayList<>();
+        collectPacked(packs(), prefix, limit, filter, found);
+        looseIds.find(prefix, limit, filter, found);
+        if (found.isEmpty() && packDirChanged()){
+            collectPacked(rescanPacks(), prefix, limit, filter, found);
+        }
+        TreeSet<ObjectId> sorted = new TreeSet<>(found);
+        List<ObjectId> out = new ArrayList<>(Math.min(limit, sorted.size()));
+        for (ObjectId id : sorted){
+            if (out.size() == limit) break;
+            out.add(id);
+        }
+        return out;
+    }
+
+    private static void collectPacked(List<PackFile> packs, String prefix, int limit, IdFilter filter, List<ObjectId> out) throws IOException{
+        for (PackFile pack : packs){
+            out.addAll(pack.index().findPrefix(prefix, limit, filter));
+        }
+    }
+
+    // Packs the given objects (loose or already packed) into one new pack and returns its path.
+    public Path writePack(Collection<String> ids) throws IOException{
+        return writePack(ids, Map.of());
+    }
+
+    // pathHints maps blob ids to a path they were tracked at; it steers delta base selection.
+    public Path writePack(Collection<String> ids, Map<String, String> pathHints) throws IOException{
+        List<ObjectId> oids = new ArrayList<>(ids.size());
+        for (String id : ids) oids.add(ObjectId.fromHex(id));
+        Map<ObjectId, String> hints = new HashMap<>();
+        pathHints.forEach((id, path) -> hints.put(ObjectId.fromHex(id), path));
+        Path pack = PackWriter.write(this, packDir, oids, hints);
+        rescanPacks();
+        return pack;
+    }
+
+    public List<LooseObject> listLoose() throws IOException{
+        List<LooseObject> out = new ArrayList<>();
+        if (!Files.isDirectory(objectsDir)) return out;
+        try (var dirs = Files.newDirectoryStream(objectsDir)){
+            for (Path dir : dirs){
+                String fan = dir.getFileName().toString();
+                if (fan.startsWith("tmp_obj_")){
+                    out.add(new LooseObject(null, dir, Files.size(dir), Files.getLastModifiedTime(dir)));
+                    continue;
+                }
+                if (fan.length() != 2 || !Files.isDirectory(dir)) continue;
+                try (var files = Files.newDirectoryStream(dir)){
+                    for (Path f : files){
+                        String id = fan + f.getFileName();
+                        if (!ObjectId.isValid(id)) continue;
+                        out.add(new LooseObject(id, f, Files.size(f), Files.getLastModifiedTime(f)));
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // Every object id, loose or packed, in hex order.
+    public SortedSet<String> listObjectIds() throws IOException{
+        SortedSet<String> out = new TreeSet<>();
+        for (LooseObject obj : listLoose()){
+            if (obj.id() != null) out.add(obj.id());
+        }
+        for (PackFile pack : rescanPacks()){
+            PackIndex idx = pack.index();
+            for (int i = 0; i < idx.count(); i++) out.add(idx.idAt(i).name());
+        }
+        return out;
+    }
+
+    public void deleteLoose(LooseObject obj) throws IOException{
+        Files.deleteIfExists(obj.path());
+        if (obj.id() != null) looseIds.invalidate(obj.id());
+        Path dir = obj.path().getParent();
+        if (obj.id() != null){
+            try (var rest = Files.list(dir)){
+                if (rest.findAny().isEmpty()) Files.deleteIfExists(dir);
+            } catch (IOException e){
+                // Another writer may be populating the fan-out directory; leave it.
+            }
+        }
+    }
+
+    public List<Path> listPacks() throws IOException{
+        List<Path> out = new ArrayList<>();
+        for (PackFile p : rescanPacks()) out.add(p.path());
+        return out;
+    }
+
+    public int packObjectCount(Path pack) throws IOException{
+        for (PackFile p : packs()){
+            if (p.path().equals(pack)) return p.index().count();
+        }
+        return 0;
+    }
+
+    // Writes every object in pack that is not in keep as a loose object with a fresh mtime, so it
+    // outlives the pack by the loose grace period. Returns how many objects were written.
+    public int explodePack(Path pack, Set<String> keep) throws IOException{
+        PackFile p = null;
+        for (PackFile candidate : packs()){
+            if (candidate.path().equals(pack)) p = candidate;
+        }
+        if (p == null) return 0;
+        int written = 0;
+        for (int i = 0; i < p.index().count(); i++){
+            ObjectId oid = p.index().idAt(i);
+            if (keep.contains(oid.name())) continue;
+            ObjectHeader header = p.header(oid);
+            try (InputStream in = p.open(oid)){
+                writeStream(header.type(), Channels.newChannel(in), header.size());
+            }
+            written++;
+        }
+        return written;
+    }
+
+    // Removes a pack and its index. Callers must have copied anything still reachable elsewhere.
+    public void deletePack(Path pack) throws IOException{
+        String name = pack.getFileName().toString();
+        Path idx = pack.resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".idx");
+        Files.deleteIfExists(idx);
+        Files.deleteIfExists(pack);
+        rescanPacks();
+    }
+
+    List<PackFile> packs() throws IOException{
+        List<PackFile> current = packs;
+        return current != null ? current : rescanPacks();
+    }
+
+    public synchronized List<PackFile> rescanPacks() throws IOException{
+        List<PackFile> old = packs;
+        List<PackFile> fresh = new ArrayList<>();
+        FileTime scannedAt = Files.isDirectory(packDir) ? Files.getLastModifiedTime(packDir) : null;
+        if (scannedAt != null){
+            try (var stream = Files.newDirectoryStream(packDir, "pack-*.pack")){
+                for (Path p : stream){
+                    PackFile existing = null;
+                    if (old != null){
+                        for (PackFile o : old) if (o.path().equals(p)) existing = o;
+                    }
+                    fresh.add(existing != null ? existing : PackFile.open(p));
+                }
+            }
+        }
+        if (old != null){
+            for (PackFile o : old) if (!fresh.contains(o)) o.close();
+        }
+        packsScannedAt = scannedAt;
+        packs = List.copyOf(fresh);
+        return packs;
+    }
+
+    private PackFile packFor(String id) throws IOException{
+        if (!ObjectId.isValid(id)) return null;
+        List<PackFile> current = packs();
+        if (current.isEmpty()) return null;
+        ObjectId oid = ObjectId.fromHex(id);
+        for (PackFile pack : current){
+            if (pack.contains(oid)) return pack;
         }
-        Path dir = objectsDir.resolve(prefix.substring(0,2));
-        if (!Files.isDirectory(dir)){
-            return null;
+        return null;
+    }
+
+    // A concurrent repack may have moved a loose object into a new pack since the last scan.
+    private PackFile packForAfterRescan(String id) throws IOException{
+        if (!packDirChanged()) return null;
+        rescanPacks();
+        return packFor(id);
+    }
+
+    private boolean packDirChanged() throws IOException{
+        FileTime now = Files.isDirectory(packDir) ? Files.getLastModifiedTime(packDir) : null;
+        synchronized (this){
+            return now != null && !now.equals(packsScannedAt);
         }
-        try (var stream = Files.list(dir)){
-            var matches = stream
-            .map(p -> prefix.substring(0, 2) + dir.relativize(p).toString())
-            .filter(id -> id.startsWith(prefix))
-            .toList();
-            return matches.size() == 1 ? matches.get(0): null;
+    }
+
+    // A write finding its object already loose bumps the file's mtime instead, so a gc running
+    // alongside sees it as young and keeps it. An object that is only packed is written loose
+    // again: gc may be about to delete the pack it is in.
+    private static boolean freshen(Path looseFile) throws IOException{
+        try {
+            Files.setLastModifiedTime(looseFile, FileTime.fromMillis(System.currentTimeMillis()));
+            return true;
+        } catch (NoSuchFileException e){
+            return false;
         }
     }
 
 
-    
+
 }
@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Marks everything reachable from the given roots, packs it into a single new pack, then drops
+// older packs and loose objects that are either now packed or unreachable and past the grace period.
+// Unreachable objects in the older packs are written loose first, so they wait out the grace period too.
+final class GarbageCollector {
+  private final ObjectStore objects;
+  private final Path commitGraph;
+  private final Set<String> reachable = ConcurrentHashMap.newKeySet();
+  private final Map<String, String> pathHints = new ConcurrentHashMap<>();
+  private final Queue<CommitGraph.Node> commits = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<Exception> failure = new AtomicReference<>();
+  private final AtomicLong pending = new AtomicLong();
+  private final CountDownLatch done = new CountDownLatch(1);
+
+  GarbageCollector(ObjectStore objects, Path commitGraph) {
+    this.objects = objects;
+    this.commitGraph = commitGraph;
+  }
+
+  void run(Collection<String> commitRoots, Map<String, String> stagedBlobs, Duration grace, PrintStream out) throws IOException {
+    long start = System.nanoTime();
+    long bytesBefore = storageBytes();
+
+    long t0 = System.nanoTime();
+    mark(commitRoots, stagedBlobs);
+    out.println("Marked " + reachable.size() + " reachable objects from " + commits.size() + " commits in " + millis(t0) + " ms");
+
+    t0 = System.nanoTime();
+    Path pack = null;
+    if (!reachable.isEmpty()) {
+      pack = objects.writePack(reachable, pathHints);
+      out.println("Packed " + reachable.size() + " objects into " + pack.getFileName() + " (" + Files.size(pack) + " bytes) in " + millis(t0) + " ms");
+    }
+
+    // Marking already parsed every reachable commit, so the graph is rebuilt for free and
+    // no longer lists pruned commits. The graph is only an index, so a writer that keeps it locked
+    // must not stop the pack swap below; the next gc rewrites it.
+    try {
+      CommitGraph.write(commitGraph, commits);
+    } catch (IOException e) {
+      out.println("Skipped rewriting the commit-graph: " + e.getMessage());
+    }
+
+    t0 = System.nanoTime();
+    int oldPacks = 0;
+    int exploded = 0;
+    for (Path p : objects.listPacks()) {
+      if (p.equals(pack)) continue;
+      // Unreachable packed objects get the same grace period as loose ones: a commit racing this
+      // gc may have found one in this pack and skipped writing it. With no grace there is no race
+      // to cover, so they go straight away.
+      if (!grace.isZero()) exploded += objects.explodePack(p, reachable);
+      objects.deletePack(p);
+      oldPacks++;
+    }
+    int packedCopies = 0;
+    int pruned = 0;
+    long prunedBytes = 0;
+    FileTime cutoff = FileTime.from(Instant.now().minus(grace));
+    for (FileObjectStore.LooseObject obj : objects.listLoose()) {
+      if (obj.id() != null && reachable.contains(obj.id())) {
+        objects.deleteLoose(obj);
+        packedCopies++;
+      } else if (obj.modified().compareTo(cutoff) <= 0) {
+        objects.deleteLoose(obj);
+        if (obj.id() != null) pruned++;
+        prunedBytes += obj.size();
+      }
+    }
+    out.println("Pruned " + pruned + " unreachable objects (" + prunedBytes + " bytes), " + packedCopies
+        + " packed loose copies and " + oldPacks + " old packs in " + millis(t0) + " ms");
+    if (exploded > 0) out.println("Kept " + exploded + " unreachable packed objects loose until the grace period ends");
+
+    out.println("Reclaimed " + Math.max(0, bytesBefore - storageBytes()) + " bytes in " + millis(start) + " ms total");
+  }
+
+  private void mark(Collection<String> commitRoots, Map<String, String> stagedBlobs) throws IOException {
+    for (Map.Entry<String, String> e : stagedBlobs.entrySet()) markBlob(e.getValue(), e.getKey());
+    ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    try {
+      // Tasks submit their parents without joining, so deep histories never grow the stack;
+      // the pending count reaches zero only once every submitted task has finished.
+      pending.incrementAndGet();
+      for (String id : commitRoots) submit(pool, id);
+      if (pending.decrementAndGet() == 0) done.countDown();
+      done.await();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("gc interrupted while marking", e);
+    } finally {
+      pool.shutdown();
+    }
+    Exception e = failure.get();
+    if (e instanceof IOException) throw new IOException("gc aborted while marking: " + e.getMessage(), e);
+    if (e != null) throw new IllegalStateException("gc aborted while marking: " + e.getMessage(), e);
+  }
+
+  private void submit(ForkJoinPool pool, String id) {
+    pending.incrementAndGet();
+    pool.execute(new MarkCommit(pool, id));
+  }
+
+  @SuppressWarnings("serial") // Fork/join tasks are never serialized.
+  private final class MarkCommit extends RecursiveAction {
+    private final ForkJoinPool pool;
+    private final String id;
+
+    MarkCommit(ForkJoinPool pool, String id) {
+      this.pool = pool;
+      this.id = id;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        if (failure.get() != null || !reachable.add(id)) return;
+        Commit c = objects.readCommit(id);
+        List<ObjectId> parents = new ArrayList<>();
+        for (String p : c.getParents()) parents.add(ObjectId.fromHex(p));
+        commits.add(new CommitGraph.Node(ObjectId.fromHex(id), parents, c.getTimestamp()));
+        if (c.getTreeId() != null) {
+          markTree(c.getTreeId(), "");
+        } else {
+          for (Map.Entry<String, String> e : c.getTrackedFiles().entrySet()) markBlob(e.getValue(), e.getKey());
+        }
+        for (String parent : c.getParents()) submit(pool, parent);
+      } catch (Exception e) {
+        failure.compareAndSet(null, e);
+      } finally {
+        if (pending.decrementAndGet() == 0) done.countDown();
+      }
+    }
+  }
+
+  // Trees shared with an already-marked commit are skipped along with everything under them.
+  private void markTree(String treeId, String prefix) throws IOException {
+    if (!reachable.add(treeId)) return;
+    for (Tree.Entry e : objects.readTree(treeId).entries()) {
+      String path = prefix + e.name();
+      if (e.kind() == Tree.Kind.TREE) {
+        markTree(e.id(), path + "/");
+      } else {
+        markBlob(e.id(), path);
+      }
+    }
+  }
+
+  // A chunked blob keeps its chunks alive; each is peeked only the first time it is reached.
+  private void markBlob(String blobId, String path) throws IOException {
+    pathHints.putIfAbsent(blobId, path);
+    if (!reachable.add(blobId)) return;
+    for (String chunk : objects.chunksOf(blobId)) {
+      reachable.add(chunk);
+      pathHints.putIfAbsent(chunk, path);
+    }
+  }
+
+  private long storageBytes() throws IOException {
+    long total = 0;
+    for (FileObjectStore.LooseObject obj : objects.listLoose()) total += obj.size();
+    List<Path> packs = objects.listPacks();
+    for (Path p : packs) {
+      String name = p.getFileName().toString();
+      total += Files.size(p) + Files.size(p.resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".idx"));
+    }
+    return total;
+  }
+
+  private static long millis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
@@ -1,28 +1,58 @@
 package gitlet;
 
-import java.math.BigInteger;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 
 public class Hashing {
+    private static final ThreadLocal<MessageDigest> SHA1 = ThreadLocal.withInitial(Hashing::newSha1);
+
     private Hashing() {
     }
     public static String sha1(byte[] data){
-        try{
-            MessageDigest messageDigest = MessageDigest.getInstance("SHA-1");
-            byte[] messageDigestAsByte = messageDigest.digest(data);
-            BigInteger signum = new BigInteger(1, messageDigestAsByte);
-            String hashtext = signum.toString(16);
-            while (hashtext.length() < 40){
-                hashtext = "0" + hashtext;
+        return toHex(digest(data));
+    }
+
+    public static ObjectId sha1Id(byte[] data){
+        return ObjectId.fromRaw(digest(data));
+    }
+
+    // Blob id of a file's current content, streamed so large files are never held in memory.
+    public static String sha1(Path file) throws IOException{
+        MessageDigest messageDigest = SHA1.get();
+        messageDigest.reset();
+        ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)){
+            while (ch.read(buf) >= 0){
+                buf.flip();
+                messageDigest.update(buf);
+                buf.clear();
             }
-            return hashtext;
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static byte[] digest(byte[] data){
+        MessageDigest messageDigest = SHA1.get();
+        messageDigest.reset();
+        return messageDigest.digest(data);
+    }
+
+    public static MessageDigest newSha1(){
+        try{
+            return MessageDigest.getInstance("SHA-1");
         }
 
         catch (NoSuchAlgorithmException e){
             throw new RuntimeException(e);
         }
+    }
 
-
+    public static String toHex(byte[] digest){
+        return ObjectId.toHex(digest);
     }
 }
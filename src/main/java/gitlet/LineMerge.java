@@ -0,0 +1,244 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Line-based three-way merge. Each side is diffed against the base with Myers' algorithm in its
+// linear-space form (bisect on the middle snake, then recurse on both halves), so memory stays
+// proportional to the input size however many lines differ. Changes from the two sides that
+// overlap or touch are a conflict unless they are identical.
+final class LineMerge {
+  static final String OURS_MARKER = "<<<<<<< HEAD\n";
+  static final String SEPARATOR = "=======\n";
+  static final String THEIRS_MARKER = ">>>>>>> ";
+
+  // Base lines [a0, a1) were replaced by side lines [b0, b1).
+  record Hunk(int a0, int a1, int b0, int b1) {}
+
+  private LineMerge() {}
+
+  // Writes the merge of ours and theirs into out and returns true if any region conflicted.
+  static boolean merge(byte[] base, byte[] ours, byte[] theirs, String theirsLabel, OutputStream out) throws IOException {
+    Map<String, Integer> ids = new HashMap<>();
+    String[] b = lines(base);
+    String[] o = lines(ours);
+    String[] t = lines(theirs);
+    int[] bi = intern(b, ids);
+    int[] oi = intern(o, ids);
+    int[] ti = intern(t, ids);
+    List<Hunk> ho = diff(bi, oi);
+    List<Hunk> ht = diff(bi, ti);
+
+    boolean conflict = false;
+    int pos = 0;
+    int io = 0;
+    int it = 0;
+    int deltaO = 0;
+    int deltaT = 0;
+    while (io < ho.size() || it < ht.size()) {
+      boolean fromOurs = it == ht.size() || (io < ho.size() && ho.get(io).a0 <= ht.get(it).a0);
+      int start = fromOurs ? ho.get(io).a0 : ht.get(it).a0;
+      int end = start;
+      int firstO = io;
+      int firstT = it;
+      for (boolean grew = true; grew; ) {
+        grew = false;
+        while (io < ho.size() && ho.get(io).a0 <= end) {
+          end = Math.max(end, ho.get(io++).a1);
+          grew = true;
+        }
+        while (it < ht.size() && ht.get(it).a0 <= end) {
+          end = Math.max(end, ht.get(it++).a1);
+          grew = true;
+        }
+      }
+      write(out, b, pos, start);
+      int oStart = start + deltaO;
+      int tStart = start + deltaT;
+      if (io > firstO) deltaO = ho.get(io - 1).b1 - ho.get(io - 1).a1;
+      if (it > firstT) deltaT = ht.get(it - 1).b1 - ht.get(it - 1).a1;
+      int oEnd = end + deltaO;
+      int tEnd = end + deltaT;
+      if (it == firstT || (io > firstO && Arrays.equals(oi, oStart, oEnd, ti, tStart, tEnd))) {
+        write(out, o, oStart, oEnd);
+      } else if (io == firstO) {
+        write(out, t, tStart, tEnd);
+      } else {
+        conflict = true;
+        out.write(OURS_MARKER.getBytes(StandardCharsets.UTF_8));
+        writeTerminated(out, o, oStart, oEnd);
+        out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+        writeTerminated(out, t, tStart, tEnd);
+        out.write((THEIRS_MARKER + theirsLabel + "\n").getBytes(StandardCharsets.UTF_8));
+      }
+      pos = end;
+    }
+    write(out, b, pos, b.length);
+    return conflict;
+  }
+
+  // The whole of ours against the whole of theirs, for when there is no common base to merge from.
+  static void conflict(byte[] ours, byte[] theirs, String theirsLabel, OutputStream out) throws IOException {
+    String[] o = lines(ours);
+    String[] t = lines(theirs);
+    out.write(OURS_MARKER.getBytes(StandardCharsets.UTF_8));
+    writeTerminated(out, o, 0, o.length);
+    out.write(SEPARATOR.getBytes(StandardCharsets.UTF_8));
+    writeTerminated(out, t, 0, t.length);
+    out.write((THEIRS_MARKER + theirsLabel + "\n").getBytes(StandardCharsets.UTF_8));
+  }
+
+  // Hunks turning a into b, in order.
+  static List<Hunk> diff(int[] a, int[] b) {
+    boolean[] deleted = new boolean[a.length];
+    boolean[] inserted = new boolean[b.length];
+    compare(a, 0, a.length, b, 0, b.length, deleted, inserted);
+    List<Hunk> out = new ArrayList<>();
+    int i = 0;
+    int j = 0;
+    while (i < a.length || j < b.length) {
+      if (i < a.length && j < b.length && !deleted[i] && !inserted[j]) {
+        i++;
+        j++;
+        continue;
+      }
+      int a0 = i;
+      int b0 = j;
+      while (i < a.length && deleted[i]) i++;
+      while (j < b.length && inserted[j]) j++;
+      out.add(new Hunk(a0, i, b0, j));
+    }
+    return out;
+  }
+
+  private static void compare(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi, boolean[] deleted, boolean[] inserted) {
+    while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+      aLo++;
+      bLo++;
+    }
+    while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+      aHi--;
+      bHi--;
+    }
+    if (aLo == aHi || bLo == bHi) {
+      Arrays.fill(deleted, aLo, aHi, true);
+      Arrays.fill(inserted, bLo, bHi, true);
+      return;
+    }
+    int[] split = bisect(a, aLo, aHi, b, bLo, bHi);
+    if (split == null) {
+      Arrays.fill(deleted, aLo, aHi, true);
+      Arrays.fill(inserted, bLo, bHi, true);
+      return;
+    }
+    // The bisect arrays are garbage by now, so the recursion holds only O(depth) of them.
+    compare(a, aLo, split[0], b, bLo, split[1], deleted, inserted);
+    compare(a, split[0], aHi, b, split[1], bHi, deleted, inserted);
+  }
+
+  // Runs the forward and reverse searches until their paths overlap and returns the overlap point
+  // as absolute {x, y}, or null if the ranges have nothing in common.
+  private static int[] bisect(int[] a, int aLo, int aHi, int[] b, int bLo, int bHi) {
+    int n = aHi - aLo;
+    int m = bHi - bLo;
+    int maxD = (n + m + 1) / 2;
+    int offset = maxD;
+    int len = 2 * maxD + 2;
+    int[] v1 = new int[len];
+    int[] v2 = new int[len];
+    Arrays.fill(v1, -1);
+    Arrays.fill(v2, -1);
+    v1[offset + 1] = 0;
+    v2[offset + 1] = 0;
+    int delta = n - m;
+    boolean front = (delta & 1) != 0;
+    int k1start = 0;
+    int k1end = 0;
+    int k2start = 0;
+    int k2end = 0;
+    for (int d = 0; d < maxD; d++) {
+      for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+        int k1off = offset + k1;
+        int x1 = k1 == -d || (k1 != d && v1[k1off - 1] < v1[k1off + 1]) ? v1[k1off + 1] : v1[k1off - 1] + 1;
+        int y1 = x1 - k1;
+        while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+          x1++;
+          y1++;
+        }
+        v1[k1off] = x1;
+        if (x1 > n) {
+          k1end += 2;
+        } else if (y1 > m) {
+          k1start += 2;
+        } else if (front) {
+          int k2off = offset + delta - k1;
+          if (k2off >= 0 && k2off < len && v2[k2off] != -1 && x1 >= n - v2[k2off]) {
+            return new int[] {aLo + x1, bLo + y1};
+          }
+        }
+      }
+      for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+        int k2off = offset + k2;
+        int x2 = k2 == -d || (k2 != d && v2[k2off - 1] < v2[k2off + 1]) ? v2[k2off + 1] : v2[k2off - 1] + 1;
+        int y2 = x2 - k2;
+        while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+          x2++;
+          y2++;
+        }
+        v2[k2off] = x2;
+        if (x2 > n) {
+          k2end += 2;
+        } else if (y2 > m) {
+          k2start += 2;
+        } else if (!front) {
+          int k1off = offset + delta - k2;
+          if (k1off >= 0 && k1off < len && v1[k1off] != -1) {
+            int x1 = v1[k1off];
+            int y1 = offset + x1 - k1off;
+            if (x1 >= n - x2) return new int[] {aLo + x1, bLo + y1};
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  // Lines with their terminators, decoded byte-for-byte so any content survives the round trip.
+  static String[] lines(byte[] data) {
+    List<String> out = new ArrayList<>();
+    int start = 0;
+    for (int i = 0; i < data.length; i++) {
+      if (data[i] == '\n') {
+        out.add(new String(data, start, i + 1 - start, StandardCharsets.ISO_8859_1));
+        start = i + 1;
+      }
+    }
+    if (start < data.length) out.add(new String(data, start, data.length - start, StandardCharsets.ISO_8859_1));
+    return out.toArray(new String[0]);
+  }
+
+  private static int[] intern(String[] lines, Map<String, Integer> ids) {
+    int[] out = new int[lines.length];
+    for (int i = 0; i < lines.length; i++) {
+      Integer id = ids.putIfAbsent(lines[i], ids.size());
+      out[i] = id == null ? ids.size() - 1 : id;
+    }
+    return out;
+  }
+
+  private static void write(OutputStream out, String[] lines, int from, int to) throws IOException {
+    for (int i = from; i < to; i++) out.write(lines[i].getBytes(StandardCharsets.ISO_8859_1));
+  }
+
+  // Like write, but ends with a newline so a following marker starts on its own line.
+  private static void writeTerminated(OutputStream out, String[] lines, int from, int to) throws IOException {
+    write(out, lines, from, to);
+    if (to > from && !lines[to - 1].endsWith("\n")) out.write('\n');
+  }
+}
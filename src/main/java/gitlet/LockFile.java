@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+
+// "<target>.lock", created exclusively. Holding it is the right to replace target: the new content
+// is written into the lock file, which commit() renames over target. close() without commit()
+// just releases the lock, leaving target untouched.
+final class LockFile implements Closeable {
+  static final String SUFFIX = ".lock";
+  private static final long RETRY_MILLIS = 5;
+
+  private final Path target;
+  private final Path lock;
+  private final FileChannel channel;
+  private boolean done;
+
+  private LockFile(Path target, Path lock, FileChannel channel) {
+    this.target = target;
+    this.lock = lock;
+    this.channel = channel;
+  }
+
+  // Fails immediately if another process holds the lock.
+  static LockFile acquire(Path target) throws IOException {
+    return acquire(target, 0);
+  }
+
+  // Retries for up to waitMillis while another process holds the lock, for holders that only
+  // keep it briefly.
+  static LockFile acquire(Path target, long waitMillis) throws IOException {
+    Path lock = target.resolveSibling(target.getFileName() + SUFFIX);
+    Path parent = target.getParent();
+    if (parent != null) Files.createDirectories(parent);
+    long deadline = System.nanoTime() + waitMillis * 1_000_000L;
+    while (true) {
+      try {
+        FileChannel ch = FileChannel.open(lock, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        return new LockFile(target, lock, ch);
+      } catch (FileAlreadyExistsException e) {
+        if (System.nanoTime() - deadline >= 0) {
+          throw new IOException("Unable to lock " + target + ": " + lock.getFileName()
+              + " exists. Another gitlet process may be running; if not, remove the lock file.", e);
+        }
+      }
+      try {
+        Thread.sleep(RETRY_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting to lock " + target, e);
+      }
+    }
+  }
+
+  Path target() { return target; }
+
+  // When the lock was taken, by the file system's clock: the lock file's mtime.
+  FileTime acquiredAt() throws IOException {
+    return Files.getLastModifiedTime(lock);
+  }
+
+  void write(String content) throws IOException {
+    write(content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  void write(byte[] content) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(content);
+    while (buf.hasRemaining()) channel.write(buf);
+  }
+
+  // Flushes the new content and atomically replaces target with it.
+  void commit() throws IOException {
+    if (done) throw new IllegalStateException("lock on " + target + " already released");
+    channel.force(false);
+    channel.close();
+    Files.move(lock, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    done = true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (done) return;
+    done = true;
+    try {
+      channel.close();
+    } finally {
+      Files.deleteIfExists(lock);
+    }
+  }
+}
@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Sorted ids of the loose objects, one bucket per fan-out directory. A bucket is listed the first
+// time a lookup touches it and then binary-searched; it is listed again only after this process
+// writes or deletes an object in it, or when a lookup misses and the directory's mtime has moved.
+final class LooseIdTable {
+  private record Bucket(ObjectId[] ids, FileTime mtime) {}
+
+  private static final Bucket EMPTY = new Bucket(new ObjectId[0], null);
+
+  private final Path objectsDir;
+  private final AtomicReferenceArray<Bucket> buckets = new AtomicReferenceArray<>(256);
+
+  LooseIdTable(Path objectsDir) {
+    this.objectsDir = objectsDir;
+  }
+
+  void invalidate(String id) {
+    buckets.set(Integer.parseInt(id.substring(0, 2), 16), null);
+  }
+
+  // Adds to out, in id order, up to limit ids that start with prefix (lowercase hex) and pass filter.
+  void find(String prefix, int limit, FileObjectStore.IdFilter filter, List<ObjectId> out) throws IOException {
+    int first = Integer.parseInt(prefix.length() == 1 ? prefix + "0" : prefix.substring(0, 2), 16);
+    int last = prefix.length() == 1 ? first + 15 : first;
+    int before = out.size();
+    collect(prefix, first, last, limit, filter, out, false);
+    if (out.size() == before) collect(prefix, first, last, limit, filter, out, true);
+  }
+
+  private void collect(String prefix, int first, int last, int limit, FileObjectStore.IdFilter filter,
+                       List<ObjectId> out, boolean recheck) throws IOException {
+    ObjectId low = ObjectId.fromHex(prefix + "0".repeat(ObjectId.HEX_LENGTH - prefix.length()));
+    int found = 0;
+    for (int b = first; b <= last && found < limit; b++) {
+      Bucket bucket = recheck ? refresh(b) : bucket(b);
+      ObjectId[] ids = bucket.ids;
+      int i = Arrays.binarySearch(ids, low);
+      for (i = i < 0 ? -i - 1 : i; i < ids.length && found < limit; i++) {
+        if (!ids[i].name().startsWith(prefix)) break;
+        if (filter == null || filter.test(ids[i])) {
+          out.add(ids[i]);
+          found++;
+        }
+      }
+    }
+  }
+
+  private Bucket bucket(int b) throws IOException {
+    Bucket bucket = buckets.get(b);
+    if (bucket == null) {
+      bucket = list(b);
+      buckets.set(b, bucket);
+    }
+    return bucket;
+  }
+
+  private Bucket refresh(int b) throws IOException {
+    Bucket bucket = buckets.get(b);
+    Path dir = objectsDir.resolve(fanOut(b));
+    if (bucket != null && bucket.mtime != null && Files.isDirectory(dir) && bucket.mtime.equals(Files.getLastModifiedTime(dir))) {
+      return bucket;
+    }
+    bucket = list(b);
+    buckets.set(b, bucket);
+    return bucket;
+  }
+
+  private Bucket list(int b) throws IOException {
+    Path dir = objectsDir.resolve(fanOut(b));
+    try {
+      FileTime mtime = Files.getLastModifiedTime(dir);
+      List<ObjectId> ids = new ArrayList<>();
+      try (var files = Files.newDirectoryStream(dir)) {
+        for (Path f : files) {
+          String id = fanOut(b) + f.getFileName();
+          if (ObjectId.isValid(id)) ids.add(ObjectId.fromHex(id));
+        }
+      }
+      ObjectId[] sorted = ids.toArray(new ObjectId[0]);
+      Arrays.sort(sorted);
+      return new Bucket(sorted, mtime);
+    } catch (NoSuchFileException e) {
+      return EMPTY;
+    }
+  }
+
+  private static String fanOut(int b) {
+    return String.format("%02x", b);
+  }
+}
@@ -1,10 +1,22 @@
 package gitlet;
 
 import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+import java.util.List;
 
 public class Main {
   public static void main(String[] args) {
     try {
+      if (args.length == 1 && args[0].equals("daemon")) { Daemon.serve(); return; }
+      if (DaemonClient.enabled()) {
+        int code = DaemonClient.forward(DaemonClient.socketPath(), Path.of(System.getProperty("user.dir")), args, System.out, System.err);
+        if (code > 0) System.exit(code);
+        if (code == 0) return;
+      }
       if (args.length == 0) { printUsage(); return; }
       dispatch(args);
     } catch (Exception e) {
@@ -14,15 +26,18 @@ public class Main {
   }
 
   static void dispatch(String[] args) throws Exception {
-    String cmd = args[0];
     Path repoRoot = Path.of(System.getProperty("user.dir"));
-    Repository repo = new Repository(repoRoot);
+    dispatch(new Repository(repoRoot), args);
+  }
 
+  static void dispatch(Repository repo, String[] args) throws Exception {
+    String cmd = args[0];
     switch (cmd) {
       case "init" -> repo.init();
       case "add" -> {
-        if (args.length != 2) { printUsage(); return; }
-        repo.add(args[1]);
+        if (args.length < 2) { printUsage(); return; }
+        if (args.length == 2) repo.add(args[1]);
+        else repo.add(List.of(args).subList(1, args.length));
       }
       case "rm" -> {
         if (args.length != 2) { printUsage(); return; }
@@ -34,18 +49,103 @@ public class Main {
         repo.commit(msg);
       }
       case "status" -> repo.status();
+      case "global-log" -> repo.globalLog();
+      case "find" -> {
+        if (args.length != 2) { printUsage(); return; }
+        repo.find(args[1]);
+      }
+      case "branch" -> {
+        if (args.length != 2) { printUsage(); return; }
+        repo.branch(args[1]);
+      }
+      case "rm-branch" -> {
+        if (args.length != 2) { printUsage(); return; }
+        repo.rmBranch(args[1]);
+      }
+      case "pack-refs" -> repo.packRefs();
+      case "checkout" -> {
+        if (args.length == 3 && args[1].equals("--")) repo.checkoutFile(args[2]);
+        else if (args.length == 4 && args[2].equals("--")) repo.checkoutCommitFile(args[1], args[3]);
+        else if (args.length == 2) repo.checkoutBranch(args[1]);
+        else printUsage();
+      }
+      case "reset" -> {
+        if (args.length != 2) { printUsage(); return; }
+        repo.reset(args[1]);
+      }
+      case "merge" -> {
+        if (args.length != 2) { printUsage(); return; }
+        repo.merge(args[1]);
+      }
+      case "log" -> {
+        int limit = -1;
+        Long since = null;
+        for (int i = 1; i < args.length; i++) {
+          if (args[i].equals("-n") && i + 1 < args.length) limit = parseLimit(args[++i]);
+          else if (args[i].startsWith("--since=")) since = parseSince(args[i].substring("--since=".length()));
+          else { printUsage(); return; }
+        }
+        repo.log(limit, since);
+      }
+      case "gc" -> {
+        if (args.length > 2 || (args.length == 2 && !args[1].startsWith("--prune="))) { printUsage(); return; }
+        repo.gc(args.length == 2 ? parseGrace(args[1].substring("--prune=".length())) : Repository.DEFAULT_GC_GRACE);
+      }
       default -> printUsage();
     }
   }
 
+  static Duration parseGrace(String value) {
+    if ("now".equals(value)) return Duration.ZERO;
+    try {
+      return Duration.ofDays(Long.parseLong(value));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("gc: --prune expects 'now' or a number of days");
+    }
+  }
+
+  static int parseLimit(String value) {
+    try {
+      int n = Integer.parseInt(value);
+      if (n < 0) throw new NumberFormatException();
+      return n;
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("log: -n expects a non-negative number");
+    }
+  }
+
+  // Accepts a date (2024-01-31, local midnight) or an ISO instant (2024-01-31T10:00:00Z).
+  static long parseSince(String value) {
+    try {
+      return LocalDate.parse(value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    } catch (DateTimeParseException e) {
+      try {
+        return Instant.parse(value).toEpochMilli();
+      } catch (DateTimeParseException e2) {
+        throw new IllegalArgumentException("log: --since expects yyyy-MM-dd or an ISO-8601 instant");
+      }
+    }
+  }
+
   static void printUsage() {
     System.out.println(
         "usage: gitlet <command> [args]\n" +
         "  init\n" +
-        "  add <path>\n" +
+        "  add <path>... | -A\n" +
         "  rm <path>\n" +
         "  commit <message>\n" +
-        "  status"
+        "  status\n" +
+        "  log [-n <limit>] [--since=<date>]\n" +
+        "  global-log\n" +
+        "  find <message>\n" +
+        "  branch <name>\n" +
+        "  rm-branch <name>\n" +
+        "  pack-refs\n" +
+        "  checkout -- <file> | <commit> -- <file> | <branch>\n" +
+        "  reset <commit>\n" +
+        "  merge <branch>\n" +
+        "  gc [--prune=now|<days>]\n" +
+        "  daemon"
     );
   }
 }
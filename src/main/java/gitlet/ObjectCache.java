@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Byte-weighted LRU of parsed objects keyed by id. Objects are immutable and content-addressed,
+// so entries never need invalidation; they only leave when evicted for space.
+public final class ObjectCache {
+  public record Stats(long hits, long misses, long evictions, long bytes, long maxBytes, int entries) {}
+
+  private record Entry(Object value, long weight) {}
+
+  private final long maxBytes;
+  private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(256, 0.75f, true);
+  private long bytes;
+  private long hits;
+  private long misses;
+  private long evictions;
+
+  public ObjectCache(long maxBytes) {
+    if (maxBytes < 0) throw new IllegalArgumentException("maxBytes must be >= 0");
+    this.maxBytes = maxBytes;
+  }
+
+  public synchronized <T> T get(String id, Class<T> type) {
+    Entry e = map.get(id);
+    if (e == null || !type.isInstance(e.value)) {
+      misses++;
+      return null;
+    }
+    hits++;
+    return type.cast(e.value);
+  }
+
+  public synchronized void put(String id, Object value, long weight) {
+    if (weight > maxBytes) return;
+    Entry prev = map.put(id, new Entry(value, weight));
+    if (prev != null) bytes -= prev.weight;
+    bytes += weight;
+    Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+    while (bytes > maxBytes && it.hasNext()) {
+      Map.Entry<String, Entry> eldest = it.next();
+      bytes -= eldest.getValue().weight;
+      it.remove();
+      evictions++;
+    }
+  }
+
+  public synchronized Stats stats() {
+    return new Stats(hits, misses, evictions, bytes, maxBytes, map.size());
+  }
+}
@@ -0,0 +1,169 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+public final class ObjectId implements Comparable<ObjectId> {
+  public static final int RAW_LENGTH = 20;
+  public static final int HEX_LENGTH = 40;
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final byte[] NIBBLE = new byte[128];
+  static {
+    Arrays.fill(NIBBLE, (byte) -1);
+    for (int i = 0; i < 10; i++) NIBBLE['0' + i] = (byte) i;
+    for (int i = 0; i < 6; i++) {
+      NIBBLE['a' + i] = (byte) (10 + i);
+      NIBBLE['A' + i] = (byte) (10 + i);
+    }
+  }
+
+  // Five big-endian words; no backing array so an id costs one small object.
+  private final int w1, w2, w3, w4, w5;
+
+  private ObjectId(int w1, int w2, int w3, int w4, int w5) {
+    this.w1 = w1;
+    this.w2 = w2;
+    this.w3 = w3;
+    this.w4 = w4;
+    this.w5 = w5;
+  }
+
+  public static ObjectId fromRaw(byte[] raw) {
+    return fromRaw(raw, 0);
+  }
+
+  public static ObjectId fromRaw(byte[] raw, int off) {
+    if (raw.length - off < RAW_LENGTH) throw new IllegalArgumentException("need 20 bytes for an object id");
+    return new ObjectId(word(raw, off), word(raw, off + 4), word(raw, off + 8), word(raw, off + 12), word(raw, off + 16));
+  }
+
+  public static ObjectId fromHex(String hex) {
+    if (hex == null || hex.length() != HEX_LENGTH) throw new IllegalArgumentException("bad object id: " + hex);
+    return new ObjectId(hexWord(hex, 0), hexWord(hex, 8), hexWord(hex, 16), hexWord(hex, 24), hexWord(hex, 32));
+  }
+
+  public static boolean isValid(String hex) {
+    if (hex == null || hex.length() != HEX_LENGTH) return false;
+    for (int i = 0; i < HEX_LENGTH; i++) if (nibble(hex.charAt(i)) < 0) return false;
+    return true;
+  }
+
+  public static String toHex(byte[] raw) {
+    char[] out = new char[raw.length * 2];
+    for (int i = 0, j = 0; i < raw.length; i++) {
+      out[j++] = HEX[(raw[i] >> 4) & 0xf];
+      out[j++] = HEX[raw[i] & 0xf];
+    }
+    return new String(out);
+  }
+
+  public String name() {
+    char[] out = new char[HEX_LENGTH];
+    hexWord(out, 0, w1);
+    hexWord(out, 8, w2);
+    hexWord(out, 16, w3);
+    hexWord(out, 24, w4);
+    hexWord(out, 32, w5);
+    return new String(out);
+  }
+
+  public byte[] toRaw() {
+    byte[] out = new byte[RAW_LENGTH];
+    copyRawTo(out, 0);
+    return out;
+  }
+
+  public void copyRawTo(byte[] dst, int off) {
+    putWord(dst, off, w1);
+    putWord(dst, off + 4, w2);
+    putWord(dst, off + 8, w3);
+    putWord(dst, off + 12, w4);
+    putWord(dst, off + 16, w5);
+  }
+
+  public int firstByte() {
+    return w1 >>> 24;
+  }
+
+  @Override
+  public int compareTo(ObjectId o) {
+    int c = Integer.compareUnsigned(w1, o.w1);
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w2, o.w2);
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w3, o.w3);
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w4, o.w4);
+    if (c != 0) return c;
+    return Integer.compareUnsigned(w5, o.w5);
+  }
+
+  // Compares against a raw id stored at an absolute position, without materializing it.
+  int compareTo(ByteBuffer buf, int pos) {
+    int c = Integer.compareUnsigned(w1, buf.getInt(pos));
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w2, buf.getInt(pos + 4));
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w3, buf.getInt(pos + 8));
+    if (c != 0) return c;
+    c = Integer.compareUnsigned(w4, buf.getInt(pos + 12));
+    if (c != 0) return c;
+    return Integer.compareUnsigned(w5, buf.getInt(pos + 16));
+  }
+
+  static ObjectId fromBuffer(ByteBuffer buf, int pos) {
+    return new ObjectId(buf.getInt(pos), buf.getInt(pos + 4), buf.getInt(pos + 8), buf.getInt(pos + 12), buf.getInt(pos + 16));
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof ObjectId)) return false;
+    ObjectId other = (ObjectId) o;
+    return w1 == other.w1 && w2 == other.w2 && w3 == other.w3 && w4 == other.w4 && w5 == other.w5;
+  }
+
+  // SHA-1 output is uniformly distributed, so one word is already a good hash.
+  @Override
+  public int hashCode() {
+    return w2;
+  }
+
+  @Override
+  public String toString() {
+    return name();
+  }
+
+  static int nibble(char c) {
+    return c < 128 ? NIBBLE[c] : -1;
+  }
+
+  private static int word(byte[] b, int off) {
+    return (b[off] & 0xff) << 24 | (b[off + 1] & 0xff) << 16 | (b[off + 2] & 0xff) << 8 | (b[off + 3] & 0xff);
+  }
+
+  private static void putWord(byte[] b, int off, int w) {
+    b[off] = (byte) (w >>> 24);
+    b[off + 1] = (byte) (w >>> 16);
+    b[off + 2] = (byte) (w >>> 8);
+    b[off + 3] = (byte) w;
+  }
+
+  private static int hexWord(String s, int off) {
+    int w = 0;
+    for (int i = off; i < off + 8; i++) {
+      int n = nibble(s.charAt(i));
+      if (n < 0) throw new IllegalArgumentException("bad object id: " + s);
+      w = (w << 4) | n;
+    }
+    return w;
+  }
+
+  private static void hexWord(char[] out, int off, int w) {
+    for (int i = 7; i >= 0; i--) {
+      out[off + i] = HEX[w & 0xf];
+      w >>>= 4;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+
+public class ObjectStore {
+  public static final String CACHE_BYTES_PROPERTY = "gitlet.cache.bytes";
+  public static final String CACHE_MAX_BLOB_PROPERTY = "gitlet.cache.maxBlobBytes";
+  // When true, commits and trees are re-hashed on read and rejected if the hash differs from their id.
+  public static final String VERIFY_PROPERTY = "gitlet.verifyObjects";
+  // Files at least this many bytes are stored chunked (see Chunker); unset or negative disables chunking.
+  public static final String CHUNK_THRESHOLD_PROPERTY = "gitlet.chunk.minFileBytes";
+  static final long DEFAULT_CACHE_BYTES = 32L << 20;
+  static final long DEFAULT_CACHE_MAX_BLOB = 64L << 10;
+  // How many candidates an ambiguous-prefix error lists.
+  static final int AMBIGUOUS_CANDIDATES = 10;
+
+  private final FileObjectStore store;
+  private final ObjectCache cache;
+  private final long maxCachedBlob;
+  private final boolean verify = Boolean.getBoolean(VERIFY_PROPERTY);
+  private final long chunkThreshold = Long.getLong(CHUNK_THRESHOLD_PROPERTY, -1);
+
+  public ObjectStore(Path repoRoot) throws IOException {
+    this(repoRoot, Long.getLong(CACHE_BYTES_PROPERTY, DEFAULT_CACHE_BYTES),
+        Long.getLong(CACHE_MAX_BLOB_PROPERTY, DEFAULT_CACHE_MAX_BLOB));
+  }
+
+  public ObjectStore(Path repoRoot, long cacheBytes, long maxCachedBlob) throws IOException {
+    Path objDir = Constants.objects(repoRoot);
+    // No filesystem writes here; init() creates layout.
+    this.store = new FileObjectStore(objDir);
+    this.cache = new ObjectCache(cacheBytes);
+    this.maxCachedBlob = maxCachedBlob;
+  }
+
+  public String writeBlob(byte[] content) throws IOException {
+    return store.writeBlob(content);
+  }
+
+  public String writeBlob(InputStream in) throws IOException {
+    return store.writeBlob(in);
+  }
+
+  public String writeBlob(Path file) throws IOException {
+    if (chunkThreshold >= 0 && Files.size(file) >= chunkThreshold) return store.writeChunked(file);
+    return store.writeBlob(file);
+  }
+
+  public byte[] readBlob(String blobId) throws IOException {
+    byte[] cached = cache.get(blobId, byte[].class);
+    if (cached != null) return cached.clone();
+    byte[] data = store.readContent(blobId);
+    if (data.length <= maxCachedBlob) cache.put(blobId, data.clone(), data.length);
+    return data;
+  }
+
+  public InputStream openBlob(String blobId) throws IOException {
+    return store.openContent(blobId);
+  }
+
+  // The chunks of a chunked blob, or nothing for a plain one.
+  public List<String> chunksOf(String blobId) throws IOException {
+    if (store.peek(blobId).type() != ObjectType.MANIFEST) return List.of();
+    List<String> out = new ArrayList<>();
+    for (Chunker.Chunk c : Chunker.parseManifest(blobId, store.readBlob(blobId))) out.add(c.id());
+    return out;
+  }
+
+  public FileObjectStore.ObjectHeader peek(String id) throws IOException {
+    return store.peek(id);
+  }
+
+  public Path writePack(Collection<String> ids) throws IOException {
+    return store.writePack(ids);
+  }
+
+  public Path writePack(Collection<String> ids, Map<String, String> pathHints) throws IOException {
+    return store.writePack(ids, pathHints);
+  }
+
+  public List<FileObjectStore.LooseObject> listLoose() throws IOException {
+    return store.listLoose();
+  }
+
+  public SortedSet<String> listObjectIds() throws IOException {
+    return store.listObjectIds();
+  }
+
+  public void deleteLoose(FileObjectStore.LooseObject obj) throws IOException {
+    store.deleteLoose(obj);
+  }
+
+  public List<Path> listPacks() throws IOException {
+    return store.listPacks();
+  }
+
+  public int packObjectCount(Path pack) throws IOException {
+    return store.packObjectCount(pack);
+  }
+
+  public int explodePack(Path pack, Set<String> keep) throws IOException {
+    return store.explodePack(pack, keep);
+  }
+
+  public void deletePack(Path pack) throws IOException {
+    store.deletePack(pack);
+  }
+
+  // Full id for an abbreviated one of any length, or null if nothing matches. With commitsOnly,
+  // other objects sharing the prefix are ignored. Throws IllegalArgumentException listing the
+  // candidates if more than one matches.
+  public String resolvePrefix(String prefix, boolean commitsOnly) throws IOException {
+    FileObjectStore.IdFilter filter = commitsOnly ? this::isCommit : null;
+    return unique(prefix, store.findPrefix(prefix, AMBIGUOUS_CANDIDATES + 1, filter), commitsOnly ? "commit" : "object");
+  }
+
+  // Like resolvePrefix with commitsOnly, but commits in the graph are found from its sorted ids
+  // without opening them. A commit can be missing from the graph (an append skipped under lock
+  // contention, a tail dropped by gc), so unless the graph alone already makes the prefix
+  // ambiguous, the other objects sharing it are still peeked for commits.
+  public String resolveCommitPrefix(String prefix, CommitGraph graph) throws IOException {
+    List<ObjectId> known = graph.findPrefix(prefix, AMBIGUOUS_CANDIDATES + 1);
+    if (known.size() > 1) return unique(prefix, known, "commit");
+    List<ObjectId> matches = store.findPrefix(prefix, AMBIGUOUS_CANDIDATES + 1, id -> graph.find(id) >= 0 || isCommit(id));
+    for (ObjectId id : known) if (!matches.contains(id)) matches.add(id);
+    return unique(prefix, matches, "commit");
+  }
+
+  private static String unique(String prefix, List<ObjectId> matches, String kind) {
+    if (matches.isEmpty()) return null;
+    if (matches.size() == 1) return matches.get(0).name();
+    StringBuilder sb = new StringBuilder("Ambiguous ").append(kind).append(" id ").append(prefix).append(':');
+    for (int i = 0; i < Math.min(matches.size(), AMBIGUOUS_CANDIDATES); i++) sb.append("\n  ").append(matches.get(i).name());
+    if (matches.size() > AMBIGUOUS_CANDIDATES) sb.append("\n  ...");
+    throw new IllegalArgumentException(sb.toString());
+  }
+
+  private boolean isCommit(ObjectId id) throws IOException {
+    String name = id.name();
+    return cache.get(name, Commit.class) != null || store.peek(name).type() == ObjectType.COMMIT;
+  }
+
+  public boolean exists(String id) {
+    return store.exists(id);
+  }
+
+  public String writeCommit(Commit commit) throws IOException {
+    byte[] data = commit.serialize();
+    String id = store.writeObject(ObjectType.COMMIT, data);
+    if (!id.equals(commit.getId())) throw new IllegalStateException("Commit id mismatch");
+    // Cache the store-backed form so tree commits can flatten their files later.
+    cache.put(id, commit.getTreeId() == null ? commit : Commit.parse(id, data, this::flattenTree), commitWeight(data.length));
+    return id;
+  }
+
+  public Commit readCommit(String id) throws IOException {
+    Commit cached = cache.get(id, Commit.class);
+    if (cached != null) return cached;
+    byte[] data = store.readBlob(id);
+    verify(id, data);
+    Commit c = Commit.parse(id, data, this::flattenTree);
+    cache.put(id, c, commitWeight(data.length));
+    return c;
+  }
+
+  // Message, timestamp and parents only; uses a cached commit if there is one, otherwise streams
+  // the object and stops before its file list.
+  public Commit.Header readCommitHeader(String id) throws IOException {
+    Commit cached = cache.get(id, Commit.class);
+    if (cached != null) return cached.header();
+    try (InputStream in = store.openObject(id)) {
+      return Commit.readHeader(id, in);
+    }
+  }
+
+  public String writeTree(Tree tree) throws IOException {
+    byte[] data = tree.serialize();
+    String id = store.writeObject(ObjectType.TREE, data);
+    if (!id.equals(tree.getId())) throw new IllegalStateException("Tree id mismatch");
+    cache.put(id, tree, commitWeight(data.length));
+    return id;
+  }
+
+  public Tree readTree(String id) throws IOException {
+    Tree cached = cache.get(id, Tree.class);
+    if (cached != null) return cached;
+    byte[] data = store.readBlob(id);
+    verify(id, data);
+    Tree t = Tree.parse(id, data);
+    cache.put(id, t, commitWeight(data.length));
+    return t;
+  }
+
+  public Map<String, String> flattenTree(String treeId) throws IOException {
+    return Tree.flatten(this, treeId);
+  }
+
+  private void verify(String id, byte[] data) throws IOException {
+    if (verify && !Hashing.sha1(data).equals(id)) throw new IOException("Object " + id + " is corrupt: content hash does not match");
+  }
+
+  public ObjectCache.Stats cacheStats() {
+    return cache.stats();
+  }
+
+  // Parsed commits and trees cost roughly twice their payload (UTF-16 strings plus map nodes).
+  private static long commitWeight(int payloadBytes) {
+    return 2L * payloadBytes + 256;
+  }
+}
@@ -0,0 +1,31 @@
+package gitlet;
+
+public enum ObjectType {
+  BLOB("blob", 1),
+  COMMIT("commit", 2),
+  TREE("tree", 3),
+  // A chunked blob: the list of its chunks, stored under the id of the whole content.
+  MANIFEST("manifest", 4);
+
+  private final String tag;
+  private final int packCode;
+
+  ObjectType(String tag, int packCode) {
+    this.tag = tag;
+    this.packCode = packCode;
+  }
+
+  public String tag() { return tag; }
+
+  public int packCode() { return packCode; }
+
+  public static ObjectType fromTag(String tag) {
+    for (ObjectType t : values()) if (t.tag.equals(tag)) return t;
+    throw new IllegalArgumentException("unknown object type: " + tag);
+  }
+
+  public static ObjectType fromPackCode(int code) {
+    for (ObjectType t : values()) if (t.packCode == code) return t;
+    throw new IllegalArgumentException("unknown pack object type: " + code);
+  }
+}
@@ -0,0 +1,284 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+// A .pack is MAGIC, version, object count, then entries of
+// (type byte, varint inflated size, zlib data), then the SHA-1 of everything before it.
+// A type byte with DELTA_FLAG set is followed by two more varints, the delta length and the
+// distance back to its base entry, and its zlib data is a Delta against that base.
+final class PackFile implements Closeable {
+  static final byte[] MAGIC = {'G', 'P', 'A', 'K'};
+  static final int VERSION = 1;
+  static final int HEADER_LENGTH = 12;
+  static final int DELTA_FLAG = 0x40;
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final int MAX_CHAIN = 10_000;
+  private static final long BASE_CACHE_BYTES = 16L << 20;
+
+  private final Path packPath;
+  private final PackIndex index;
+  private final FileChannel channel;
+  private final DeltaBaseCache baseCache = new DeltaBaseCache(BASE_CACHE_BYTES);
+  private final boolean verify = Boolean.getBoolean(ObjectStore.VERIFY_PROPERTY);
+  private long[] entryStarts;
+
+  private PackFile(Path packPath, PackIndex index, FileChannel channel) {
+    this.packPath = packPath;
+    this.index = index;
+    this.channel = channel;
+  }
+
+  static PackFile open(Path packPath) throws IOException {
+    String name = packPath.getFileName().toString();
+    Path idxPath = packPath.resolveSibling(name.substring(0, name.length() - ".pack".length()) + ".idx");
+    PackIndex index = PackIndex.open(idxPath);
+    FileChannel ch = FileChannel.open(packPath, StandardOpenOption.READ);
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      while (header.hasRemaining() && ch.read(header, header.position()) > 0) { }
+      for (int i = 0; i < MAGIC.length; i++) {
+        if (header.get(i) != MAGIC[i]) throw new IOException("Not a pack file: " + packPath);
+      }
+      if (header.getInt(4) != VERSION) throw new IOException("Unsupported pack version in " + packPath);
+      if (header.getInt(8) != index.count()) throw new IOException("Pack and index disagree on object count: " + packPath);
+      return new PackFile(packPath, index, ch);
+    } catch (IOException | RuntimeException e) {
+      ch.close();
+      throw e;
+    }
+  }
+
+  Path path() { return packPath; }
+
+  PackIndex index() { return index; }
+
+  boolean contains(ObjectId id) {
+    return index.find(id) >= 0;
+  }
+
+  FileObjectStore.ObjectHeader header(ObjectId id) throws IOException {
+    int pos = index.find(id);
+    if (pos < 0) return null;
+    Entry e = readEntryHeader(index.offsetAt(pos));
+    return new FileObjectStore.ObjectHeader(e.type, e.size);
+  }
+
+  byte[] read(ObjectId id) throws IOException {
+    int pos = index.find(id);
+    if (pos < 0) return null;
+    if (verify) checkCrc(pos);
+    return load(index.offsetAt(pos));
+  }
+
+  InputStream open(ObjectId id) throws IOException {
+    int pos = index.find(id);
+    if (pos < 0) return null;
+    if (verify) checkCrc(pos);
+    Entry e = readEntryHeader(index.offsetAt(pos));
+    if (e.delta) return new ByteArrayInputStream(load(e.offset));
+    Inflater inflater = new Inflater();
+    return new InflaterInputStream(new ChannelInputStream(channel, e.dataOffset), inflater, BUFFER_SIZE) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
+  }
+
+  // Resolves a delta chain iteratively: walk back to a full entry or a cached base, then apply
+  // the deltas forward, caching each intermediate result since siblings often share bases.
+  private byte[] load(long offset) throws IOException {
+    Deque<Entry> chain = new ArrayDeque<>();
+    byte[] data;
+    long off = offset;
+    while (true) {
+      if (off != offset) {
+        byte[] cached = baseCache.get(off);
+        if (cached != null) {
+          data = cached;
+          break;
+        }
+      }
+      Entry e = readEntryHeader(off);
+      if (!e.delta) {
+        data = inflate(e.dataOffset, e.size, off);
+        if (off != offset) baseCache.put(off, data);
+        break;
+      }
+      if (chain.size() >= MAX_CHAIN) throw new IOException("Delta chain too long at " + offset + " in " + packPath);
+      chain.push(e);
+      off = e.baseOffset;
+    }
+    while (!chain.isEmpty()) {
+      Entry e = chain.pop();
+      data = Delta.apply(data, inflate(e.dataOffset, e.deltaSize, e.offset));
+      if (data.length != e.size) throw new IOException("Delta at " + e.offset + " produced the wrong size in " + packPath);
+      if (e.offset != offset) baseCache.put(e.offset, data);
+    }
+    return data;
+  }
+
+  private byte[] inflate(long dataOffset, long size, long entryOffset) throws IOException {
+    if (size > Integer.MAX_VALUE - 8) throw new IOException("Pack entry at " + entryOffset + " is too large to read into memory");
+    byte[] out = new byte[(int) size];
+    Inflater inflater = new Inflater();
+    try (InputStream in = new BufferedInputStream(new ChannelInputStream(channel, dataOffset), BUFFER_SIZE)) {
+      byte[] buf = new byte[BUFFER_SIZE];
+      int off = 0;
+      while (off < out.length && !inflater.finished()) {
+        if (inflater.needsInput()) {
+          int n = in.read(buf);
+          if (n < 0) break;
+          inflater.setInput(buf, 0, n);
+        }
+        int n = inflater.inflate(out, off, out.length - off);
+        if (n == 0 && !inflater.needsInput()) break;
+        off += n;
+      }
+      if (off != out.length) throw new IOException("Pack entry at " + entryOffset + " is truncated in " + packPath);
+    } catch (DataFormatException ex) {
+      throw new IOException("Pack entry at " + entryOffset + " is corrupt in " + packPath, ex);
+    } finally {
+      inflater.end();
+    }
+    return out;
+  }
+
+  // Compares the CRC32 the index recorded for entry pos against the entry's raw bytes, which run
+  // up to the next entry in pack order (or the trailing checksum after the last one).
+  private void checkCrc(int pos) throws IOException {
+    long start = index.offsetAt(pos);
+    long[] starts = entryStarts();
+    int next = Arrays.binarySearch(starts, start) + 1;
+    long end = next < starts.length ? starts[next] : channel.size() - ObjectId.RAW_LENGTH;
+    CRC32 crc = new CRC32();
+    ByteBuffer buf = ByteBuffer.allocate(BUFFER_SIZE);
+    for (long off = start; off < end; ) {
+      buf.clear().limit((int) Math.min(buf.capacity(), end - off));
+      int n = channel.read(buf, off);
+      if (n <= 0) throw new IOException("Pack entry at " + start + " is truncated in " + packPath);
+      buf.flip();
+      crc.update(buf);
+      off += n;
+    }
+    if ((int) crc.getValue() != index.crcAt(pos)) throw new IOException("Pack entry at " + start + " fails its CRC check in " + packPath);
+  }
+
+  private synchronized long[] entryStarts() {
+    if (entryStarts == null) {
+      long[] starts = new long[index.count()];
+      for (int i = 0; i < starts.length; i++) starts[i] = index.offsetAt(i);
+      Arrays.sort(starts);
+      entryStarts = starts;
+    }
+    return entryStarts;
+  }
+
+  private Entry readEntryHeader(long offset) throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(32);
+    while (buf.hasRemaining() && channel.read(buf, offset + buf.position()) > 0) { }
+    buf.flip();
+    if (buf.remaining() < 2) throw new IOException("Truncated pack entry at " + offset + " in " + packPath);
+    int code = buf.get() & 0xff;
+    boolean delta = (code & DELTA_FLAG) != 0;
+    ObjectType type = ObjectType.fromPackCode(code & ~DELTA_FLAG);
+    long size = readVarint(buf, offset);
+    long deltaSize = delta ? readVarint(buf, offset) : 0;
+    long baseOffset = delta ? offset - readVarint(buf, offset) : -1;
+    if (delta && (baseOffset < HEADER_LENGTH || baseOffset >= offset)) throw new IOException("Bad delta base at " + offset + " in " + packPath);
+    return new Entry(offset, type, size, delta, deltaSize, baseOffset, offset + buf.position());
+  }
+
+  private long readVarint(ByteBuffer buf, long offset) throws IOException {
+    long v = 0;
+    int shift = 0;
+    int b;
+    do {
+      if (!buf.hasRemaining() || shift > 63) throw new IOException("Corrupt pack entry at " + offset + " in " + packPath);
+      b = buf.get() & 0xff;
+      v |= (long) (b & 0x7f) << shift;
+      shift += 7;
+    } while ((b & 0x80) != 0);
+    return v;
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+  private record Entry(long offset, ObjectType type, long size, boolean delta, long deltaSize, long baseOffset, long dataOffset) {}
+
+  // Byte-bounded LRU of resolved delta bases, keyed by entry offset.
+  private static final class DeltaBaseCache {
+    private final long maxBytes;
+    private long bytes;
+    private final LinkedHashMap<Long, byte[]> map = new LinkedHashMap<>(64, 0.75f, true);
+
+    DeltaBaseCache(long maxBytes) { this.maxBytes = maxBytes; }
+
+    synchronized byte[] get(long offset) {
+      return map.get(offset);
+    }
+
+    synchronized void put(long offset, byte[] data) {
+      if (data.length > maxBytes / 4) return;
+      byte[] prev = map.put(offset, data);
+      if (prev != null) bytes -= prev.length;
+      bytes += data.length;
+      var it = map.entrySet().iterator();
+      while (bytes > maxBytes && it.hasNext()) {
+        Map.Entry<Long, byte[]> eldest = it.next();
+        bytes -= eldest.getValue().length;
+        it.remove();
+      }
+    }
+  }
+
+  // Positional reads so several streams can share one channel without seeking it.
+  private static final class ChannelInputStream extends InputStream {
+    private final FileChannel channel;
+    private long position;
+
+    ChannelInputStream(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) return 0;
+      int n = channel.read(ByteBuffer.wrap(b, off, len), position);
+      if (n > 0) position += n;
+      return n;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+// Layout: MAGIC, version, 256-entry cumulative fan-out by first id byte, sorted raw ids,
+// CRC32 per entry, 8-byte pack offset per entry, the pack's checksum, then this file's checksum.
+final class PackIndex {
+  static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+  static final int VERSION = 1;
+
+  private static final int FANOUT_OFF = 8;
+  private static final int IDS_OFF = FANOUT_OFF + 256 * 4;
+
+  private final MappedByteBuffer buf;
+  private final int count;
+  private final int crcOff;
+  private final int offsetsOff;
+
+  private PackIndex(MappedByteBuffer buf, int count) {
+    this.buf = buf;
+    this.count = count;
+    this.crcOff = IDS_OFF + count * ObjectId.RAW_LENGTH;
+    this.offsetsOff = crcOff + count * 4;
+  }
+
+  static PackIndex open(Path idxFile) throws IOException {
+    MappedByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(idxFile, StandardOpenOption.READ)) {
+      if (ch.size() < IDS_OFF + 40) throw new IOException("Pack index too small: " + idxFile);
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (buf.get(i) != MAGIC[i]) throw new IOException("Not a pack index: " + idxFile);
+    }
+    if (buf.getInt(4) != VERSION) throw new IOException("Unsupported pack index version in " + idxFile);
+    int count = buf.getInt(FANOUT_OFF + 255 * 4);
+    long expected = (long) IDS_OFF + (long) count * (ObjectId.RAW_LENGTH + 4 + 8) + 40;
+    if (count < 0 || expected != buf.capacity()) throw new IOException("Corrupt pack index: " + idxFile);
+    return new PackIndex(buf, count);
+  }
+
+  int count() { return count; }
+
+  int find(ObjectId id) {
+    int first = id.firstByte();
+    int lo = first == 0 ? 0 : buf.getInt(FANOUT_OFF + (first - 1) * 4);
+    int hi = buf.getInt(FANOUT_OFF + first * 4) - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int c = id.compareTo(buf, IDS_OFF + mid * ObjectId.RAW_LENGTH);
+      if (c == 0) return mid;
+      if (c < 0) hi = mid - 1;
+      else lo = mid + 1;
+    }
+    return -1;
+  }
+
+  // First position whose id is >= the given id.
+  int lowerBound(ObjectId id) {
+    int lo = 0;
+    int hi = count;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (id.compareTo(buf, IDS_OFF + mid * ObjectId.RAW_LENGTH) > 0) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  // Up to limit ids starting with hexPrefix (any case) that pass filter (null keeps all), in id order.
+  List<ObjectId> findPrefix(String hexPrefix, int limit, FileObjectStore.IdFilter filter) throws IOException {
+    List<ObjectId> out = new ArrayList<>();
+    if (hexPrefix.isEmpty() || hexPrefix.length() > ObjectId.HEX_LENGTH) return out;
+    String pad = "0".repeat(ObjectId.HEX_LENGTH - hexPrefix.length());
+    if (!ObjectId.isValid(hexPrefix + pad)) return out;
+    String prefix = hexPrefix.toLowerCase();
+    for (int i = lowerBound(ObjectId.fromHex(prefix + pad)); i < count && out.size() < limit; i++) {
+      ObjectId id = idAt(i);
+      if (!id.name().startsWith(prefix)) break;
+      if (filter == null || filter.test(id)) out.add(id);
+    }
+    return out;
+  }
+
+  ObjectId idAt(int i) {
+    return ObjectId.fromBuffer(buf, IDS_OFF + i * ObjectId.RAW_LENGTH);
+  }
+
+  int crcAt(int i) {
+    return buf.getInt(crcOff + i * 4);
+  }
+
+  long offsetAt(int i) {
+    return buf.getLong(offsetsOff + i * 8);
+  }
+
+  static void write(Path idxFile, ObjectId[] sortedIds, long[] offsets, int[] crcs, byte[] packChecksum) throws IOException {
+    MessageDigest md = Hashing.newSha1();
+    try (OutputStream fos = Files.newOutputStream(idxFile, StandardOpenOption.CREATE_NEW)) {
+      DigestOutputStream digestOut = new DigestOutputStream(new BufferedOutputStream(fos, 64 * 1024), md);
+      DataOutputStream out = new DataOutputStream(digestOut);
+      out.write(MAGIC);
+      out.writeInt(VERSION);
+      int[] fanout = new int[256];
+      for (ObjectId id : sortedIds) fanout[id.firstByte()]++;
+      int running = 0;
+      for (int i = 0; i < 256; i++) {
+        running += fanout[i];
+        out.writeInt(running);
+      }
+      byte[] raw = new byte[ObjectId.RAW_LENGTH];
+      for (ObjectId id : sortedIds) {
+        id.copyRawTo(raw, 0);
+        out.write(raw);
+      }
+      for (int crc : crcs) out.writeInt(crc);
+      for (long off : offsets) out.writeLong(off);
+      out.write(packChecksum);
+      digestOut.on(false);
+      out.write(md.digest());
+      out.flush();
+    }
+  }
+}
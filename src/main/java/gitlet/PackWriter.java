@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+final class PackWriter {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  // Delta search: each blob is tried against the previous WINDOW blobs in (name, path, size) order.
+  static final int WINDOW = 10;
+  static final int MAX_DEPTH = 20;
+  static final long MAX_DELTA_OBJECT = 16L << 20;
+  private static final long MAX_WINDOW_BYTES = 64L << 20;
+  private static final int MIN_DELTA_OBJECT = 64;
+
+  private PackWriter() {}
+
+  static Path write(FileObjectStore source, Path packDir, Collection<ObjectId> ids) throws IOException {
+    return write(source, packDir, ids, Map.of());
+  }
+
+  // Writes every id into a new pack under packDir and returns the .pack path. pathHints maps
+  // blob ids to a path they were seen at, so versions of the same file sit together in the
+  // delta window. The .idx is renamed into place last, so readers never see a pack without
+  // a complete index.
+  static Path write(FileObjectStore source, Path packDir, Collection<ObjectId> ids, Map<ObjectId, String> pathHints) throws IOException {
+    List<Planned> plan = plan(source, new TreeSet<>(ids), pathHints);
+    Map<ObjectId, Long> offsetById = new HashMap<>();
+    Map<ObjectId, Integer> crcById = new HashMap<>();
+    Files.createDirectories(packDir);
+    Path tmpPack = Files.createTempFile(packDir, "tmp_pack_", "");
+    Path tmpIdx = packDir.resolve(tmpPack.getFileName() + ".idx");
+    try {
+      byte[] checksum;
+      try (CountingOutputStream out = new CountingOutputStream(
+          new BufferedOutputStream(Files.newOutputStream(tmpPack, StandardOpenOption.TRUNCATE_EXISTING), BUFFER_SIZE))) {
+        out.write(PackFile.MAGIC);
+        writeInt(out, PackFile.VERSION);
+        writeInt(out, plan.size());
+        Deque<WindowEntry> window = new ArrayDeque<>();
+        long windowBytes = 0;
+        for (Planned p : plan) {
+          String name = p.id.name();
+          long offset = out.count();
+          offsetById.put(p.id, offset);
+          out.crc.reset();
+          byte[] content = deltaCandidate(p) ? source.readBlob(name) : null;
+          WindowEntry base = null;
+          byte[] delta = null;
+          if (content != null) {
+            int limit = content.length / 2;
+            for (WindowEntry w : window) {
+              if (w.depth >= MAX_DEPTH) continue;
+              byte[] d = Delta.create(w.content, content, delta == null ? limit : delta.length - 1);
+              if (d != null) {
+                delta = d;
+                base = w;
+              }
+            }
+          }
+          if (delta != null) {
+            out.write(p.header.type().packCode() | PackFile.DELTA_FLAG);
+            writeVarint(out, p.header.size());
+            writeVarint(out, delta.length);
+            writeVarint(out, offset - base.offset);
+            deflate(out, delta);
+          } else {
+            out.write(p.header.type().packCode());
+            writeVarint(out, p.header.size());
+            if (content != null) deflate(out, content);
+            else deflateStream(out, source, name, p.header.size());
+          }
+          crcById.put(p.id, (int) out.crc.getValue());
+          if (content != null) {
+            window.addLast(new WindowEntry(content, offset, base == null ? 0 : base.depth + 1));
+            windowBytes += content.length;
+            while (window.size() > WINDOW || windowBytes > MAX_WINDOW_BYTES) windowBytes -= window.removeFirst().content.length;
+          }
+        }
+        checksum = out.digest.digest();
+        out.write(checksum);
+      }
+      ObjectId[] sorted = new TreeSet<>(offsetById.keySet()).toArray(new ObjectId[0]);
+      long[] offsets = new long[sorted.length];
+      int[] crcs = new int[sorted.length];
+      for (int i = 0; i < sorted.length; i++) {
+        offsets[i] = offsetById.get(sorted[i]);
+        crcs[i] = crcById.get(sorted[i]);
+      }
+      String packName = "pack-" + ObjectId.toHex(checksum);
+      PackIndex.write(tmpIdx, sorted, offsets, crcs, checksum);
+      Path pack = packDir.resolve(packName + ".pack");
+      Files.move(tmpPack, pack, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      Files.move(tmpIdx, packDir.resolve(packName + ".idx"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      return pack;
+    } finally {
+      Files.deleteIfExists(tmpPack);
+      Files.deleteIfExists(tmpIdx);
+    }
+  }
+
+  // Non-blobs first, then blobs grouped by file name and path with larger versions first,
+  // so the newer (usually larger) version is the base and older ones become deltas.
+  private static List<Planned> plan(FileObjectStore source, Collection<ObjectId> ids, Map<ObjectId, String> pathHints) throws IOException {
+    List<Planned> plan = new ArrayList<>(ids.size());
+    for (ObjectId id : ids) {
+      String path = pathHints.getOrDefault(id, "");
+      plan.add(new Planned(id, source.peek(id.name()), path.substring(path.lastIndexOf('/') + 1), path));
+    }
+    plan.sort(Comparator
+        .comparing((Planned p) -> p.header.type() == ObjectType.BLOB)
+        .thenComparing(p -> p.baseName)
+        .thenComparing(p -> p.path)
+        .thenComparing(p -> -p.header.size())
+        .thenComparing(p -> p.id));
+    return plan;
+  }
+
+  private static boolean deltaCandidate(Planned p) {
+    return p.header.type() == ObjectType.BLOB
+        && p.header.size() >= MIN_DELTA_OBJECT
+        && p.header.size() <= MAX_DELTA_OBJECT;
+  }
+
+  private static void deflate(OutputStream out, byte[] data) throws IOException {
+    Deflater deflater = new Deflater();
+    try {
+      DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+      dos.write(data);
+      dos.finish();
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static void deflateStream(OutputStream out, FileObjectStore source, String name, long size) throws IOException {
+    Deflater deflater = new Deflater();
+    try (InputStream in = source.openObject(name)) {
+      DeflaterOutputStream dos = new DeflaterOutputStream(out, deflater, BUFFER_SIZE);
+      byte[] buf = new byte[BUFFER_SIZE];
+      long copied = 0;
+      int n;
+      while ((n = in.read(buf)) > 0) {
+        dos.write(buf, 0, n);
+        copied += n;
+      }
+      dos.finish();
+      if (copied != size) throw new IOException("Object " + name + " changed size while packing");
+    } finally {
+      deflater.end();
+    }
+  }
+
+  static void writeVarint(OutputStream out, long v) throws IOException {
+    while ((v & ~0x7fL) != 0) {
+      out.write((int) ((v & 0x7f) | 0x80));
+      v >>>= 7;
+    }
+    out.write((int) v);
+  }
+
+  private static void writeInt(OutputStream out, int v) throws IOException {
+    out.write(v >>> 24);
+    out.write(v >>> 16);
+    out.write(v >>> 8);
+    out.write(v);
+  }
+
+  private record Planned(ObjectId id, FileObjectStore.ObjectHeader header, String baseName, String path) {}
+
+  private record WindowEntry(byte[] content, long offset, int depth) {}
+
+  private static final class CountingOutputStream extends OutputStream {
+    private final OutputStream out;
+    private final CRC32 crc = new CRC32();
+    private final MessageDigest digest = Hashing.newSha1();
+    private long count;
+
+    CountingOutputStream(OutputStream out) { this.out = out; }
+
+    long count() { return count; }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      crc.update(b);
+      digest.update((byte) b);
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      crc.update(b, off, len);
+      digest.update(b, off, len);
+      count += len;
+    }
+
+    @Override
+    public void flush() throws IOException { out.flush(); }
+
+    @Override
+    public void close() throws IOException { out.close(); }
+  }
+}
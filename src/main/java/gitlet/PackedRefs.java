@@ -0,0 +1,111 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+// The packed-refs file: a header line, then "<40-hex id> <refname>\n" lines sorted by refname.
+// Lookups binary-search the mapped bytes, backing up to the start of whichever line they land in.
+final class PackedRefs {
+  static final String HEADER = "# gitlet packed-refs sorted\n";
+  private static final int ID_LEN = ObjectId.HEX_LENGTH;
+
+  private static final PackedRefs EMPTY = new PackedRefs(ByteBuffer.allocate(0), 0);
+
+  private final ByteBuffer buf;
+  private final int start;
+
+  private PackedRefs(ByteBuffer buf, int start) {
+    this.buf = buf;
+    this.start = start;
+  }
+
+  static PackedRefs load(Path file) throws IOException {
+    if (!Files.exists(file)) return EMPTY;
+    MappedByteBuffer buf;
+    try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (ch.size() > Integer.MAX_VALUE) throw new IOException("packed-refs too large: " + file);
+      buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+    }
+    byte[] header = HEADER.getBytes(StandardCharsets.UTF_8);
+    if (buf.capacity() < header.length) throw new IOException("Corrupt packed-refs: " + file);
+    for (int i = 0; i < header.length; i++) {
+      if (buf.get(i) != header[i]) throw new IOException("Corrupt packed-refs header: " + file);
+    }
+    return new PackedRefs(buf, header.length);
+  }
+
+  // Id stored for refName, or null.
+  String find(String refName) {
+    int pos = lowerBound(refName);
+    if (pos >= buf.capacity()) return null;
+    return refName.equals(nameAt(pos)) ? idAt(pos) : null;
+  }
+
+  // Every ref whose name starts with prefix, in name order.
+  SortedMap<String, String> list(String prefix) {
+    SortedMap<String, String> out = new TreeMap<>();
+    for (int pos = lowerBound(prefix); pos < buf.capacity(); pos = nextLine(pos)) {
+      String name = nameAt(pos);
+      if (!name.startsWith(prefix)) break;
+      out.put(name, idAt(pos));
+    }
+    return out;
+  }
+
+  // Offset of the first line whose refname is >= key (buf.capacity() if none).
+  private int lowerBound(String key) {
+    int lo = start;
+    int hi = buf.capacity();
+    while (lo < hi) {
+      int mid = lineStart(lo + (hi - lo) / 2);
+      if (nameAt(mid).compareTo(key) < 0) lo = nextLine(mid);
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  private int lineStart(int pos) {
+    while (pos > start && buf.get(pos - 1) != '\n') pos--;
+    return pos;
+  }
+
+  private int nextLine(int pos) {
+    int cap = buf.capacity();
+    while (pos < cap && buf.get(pos) != '\n') pos++;
+    return Math.min(cap, pos + 1);
+  }
+
+  private String idAt(int pos) {
+    byte[] b = new byte[ID_LEN];
+    buf.get(pos, b);
+    return new String(b, StandardCharsets.US_ASCII);
+  }
+
+  private String nameAt(int pos) {
+    int from = pos + ID_LEN + 1;
+    int end = nextLine(pos) - 1;
+    if (end < from) return "";
+    byte[] b = new byte[end - from];
+    buf.get(from, b);
+    return new String(b, StandardCharsets.UTF_8);
+  }
+
+  static String serialize(SortedMap<String, String> refs) {
+    StringBuilder sb = new StringBuilder(HEADER.length() + refs.size() * 64);
+    sb.append(HEADER);
+    for (Map.Entry<String, String> e : refs.entrySet()) {
+      if (e.getValue().length() != ID_LEN) throw new IllegalArgumentException("bad id for " + e.getKey() + ": " + e.getValue());
+      sb.append(e.getValue()).append(' ').append(e.getKey()).append('\n');
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Stats and stores files on a fixed pool. submit() blocks once `threads * 4` files are in flight,
+// so a fast directory walk cannot queue unbounded work. The index is only read here (for cached
+// blob ids); callers apply the returned results to it in one batch.
+final class ParallelBlobWriter implements Closeable {
+  record Stored(String path, StagingArea.Stat stat) {}
+
+  private final ObjectStore objects;
+  private final StagingArea index;
+  private final ExecutorService pool;
+  private final Semaphore inFlight;
+  private final int permits;
+  private final Queue<Stored> results = new ConcurrentLinkedQueue<>();
+  private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+  ParallelBlobWriter(ObjectStore objects, StagingArea index) {
+    this(objects, index, Runtime.getRuntime().availableProcessors());
+  }
+
+  ParallelBlobWriter(ObjectStore objects, StagingArea index, int threads) {
+    this.objects = objects;
+    this.index = index;
+    this.pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "gitlet-add");
+      t.setDaemon(true);
+      return t;
+    });
+    this.permits = threads * 4;
+    this.inFlight = new Semaphore(permits);
+  }
+
+  void submit(Path file, String path) throws IOException {
+    rethrow();
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("add interrupted", e);
+    }
+    pool.execute(() -> {
+      try {
+        if (failure.get() != null) return;
+        // Stat before reading, so a write racing with the hash leaves a stale mtime and is rehashed next time.
+        StagingArea.Stat stat = StagingArea.Stat.of(file);
+        String blobId = index.cachedBlob(path, stat);
+        if (blobId == null) blobId = objects.writeBlob(file);
+        results.add(new Stored(path, stat.withBlob(blobId)));
+      } catch (IOException e) {
+        failure.compareAndSet(null, e);
+      } catch (RuntimeException e) {
+        failure.compareAndSet(null, new IOException(path + ": " + e.getMessage(), e));
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  // Waits for every submitted file and returns the results in no particular order.
+  List<Stored> finish() throws IOException {
+    try {
+      inFlight.acquire(permits);
+      inFlight.release(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("add interrupted", e);
+    }
+    rethrow();
+    return new ArrayList<>(results);
+  }
+
+  private void rethrow() throws IOException {
+    IOException e = failure.get();
+    if (e != null) throw e;
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+    try {
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package gitlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Writes blobs into the working tree on a fixed pool. Each blob is inflated from the object store
+// straight into the file's channel with transferFrom, so no file is ever held in memory whole.
+// Like ParallelBlobWriter, submit() blocks once `threads * 4` files are in flight, and the index
+// is left to the caller, which records the returned stats in one batch.
+final class ParallelCheckout implements Closeable {
+  record Written(String path, StagingArea.Stat stat) {}
+
+  private static final long TRANSFER_CHUNK = 1L << 20;
+
+  private final ObjectStore objects;
+  private final Path repoRoot;
+  private final ExecutorService pool;
+  private final Semaphore inFlight;
+  private final int permits;
+  private final Queue<Written> results = new ConcurrentLinkedQueue<>();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicReference<IOException> failure = new AtomicReference<>();
+
+  ParallelCheckout(ObjectStore objects, Path repoRoot) {
+    this(objects, repoRoot, Runtime.getRuntime().availableProcessors());
+  }
+
+  ParallelCheckout(ObjectStore objects, Path repoRoot, int threads) {
+    this.objects = objects;
+    this.repoRoot = repoRoot;
+    this.pool = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "gitlet-checkout");
+      t.setDaemon(true);
+      return t;
+    });
+    this.permits = threads * 4;
+    this.inFlight = new Semaphore(permits);
+  }
+
+  void submit(String path, String blobId) throws IOException {
+    rethrow();
+    try {
+      inFlight.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("checkout interrupted", e);
+    }
+    pool.execute(() -> {
+      try {
+        if (failure.get() != null) return;
+        Path file = repoRoot.resolve(path);
+        bytes.addAndGet(write(file, blobId));
+        results.add(new Written(path, StagingArea.Stat.of(file).withBlob(blobId)));
+      } catch (IOException | RuntimeException e) {
+        failure.compareAndSet(null, new IOException(path + ": " + e.getMessage(), e));
+      } finally {
+        inFlight.release();
+      }
+    });
+  }
+
+  private long write(Path file, String blobId) throws IOException {
+    Files.createDirectories(file.getParent());
+    try (InputStream in = objects.openBlob(blobId);
+         ReadableByteChannel src = Channels.newChannel(in);
+         FileChannel dst = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+             StandardOpenOption.TRUNCATE_EXISTING)) {
+      long pos = 0;
+      long n;
+      while ((n = dst.transferFrom(src, pos, TRANSFER_CHUNK)) > 0) pos += n;
+      return pos;
+    }
+  }
+
+  // Waits for every submitted file and returns the results in no particular order.
+  List<Written> finish() throws IOException {
+    try {
+      inFlight.acquire(permits);
+      inFlight.release(permits);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("checkout interrupted", e);
+    }
+    rethrow();
+    return new ArrayList<>(results);
+  }
+
+  long bytesWritten() {
+    return bytes.get();
+  }
+
+  private void rethrow() throws IOException {
+    IOException e = failure.get();
+    if (e != null) throw e;
+  }
+
+  @Override
+  public void close() {
+    pool.shutdownNow();
+    try {
+      pool.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
@@ -4,13 +4,89 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
 
+// Refs live as loose files under refs/ or as lines in packed-refs; a loose ref overrides a packed
+// one. Reads go through a Snapshot that reads HEAD and packed-refs once and memoizes loose refs;
+// every write through this object drops it, and refresh() drops it for writes made elsewhere.
+// Writes take "<file>.lock" and rename it into place; a ref held by another writer, or whose
+// value no longer matches the caller's expectation, fails fast with ConflictException.
 public class Refs {
   private final Path repoRoot;
+  private Snapshot snapshot;
 
   public Refs(Path repoRoot) { this.repoRoot = repoRoot.toAbsolutePath().normalize(); }
 
+  public static final class ConflictException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final String refName;
+
+    ConflictException(String refName, String message, Throwable cause) {
+      super(refName + ": " + message, cause);
+      this.refName = refName;
+    }
+
+    public String refName() { return refName; }
+  }
+
+  public static final class Snapshot {
+    private final Path dot;
+    private final String head;
+    private final PackedRefs packed;
+    private final Map<String, String> loose = new HashMap<>();
+    private List<String> branches;
+
+    private Snapshot(Path repoRoot) throws IOException {
+      this.dot = Constants.dot(repoRoot);
+      Path headFile = Constants.headFile(repoRoot);
+      this.head = Files.exists(headFile) ? readString(headFile).trim() : "";
+      this.packed = PackedRefs.load(Constants.packedRefs(repoRoot));
+    }
+
+    public String head() { return head; }
+
+    // Trimmed loose content ("" for an unborn branch), else the packed id, else null.
+    public synchronized String resolve(String refName) throws IOException {
+      if (loose.containsKey(refName)) return loose.get(refName);
+      Path p = dot.resolve(refName);
+      String v = Files.isRegularFile(p) ? readString(p).trim() : packed.find(refName);
+      loose.put(refName, v);
+      return v;
+    }
+
+    public synchronized List<String> branches() throws IOException {
+      if (branches != null) return branches;
+      String prefix = Constants.refsDirName + "/" + Constants.headsDirName + "/";
+      TreeSet<String> names = new TreeSet<>();
+      for (String ref : packed.list(prefix).keySet()) names.add(ref.substring(prefix.length()));
+      Path heads = dot.resolve(prefix);
+      if (Files.isDirectory(heads)) {
+        try (Stream<Path> s = Files.walk(heads)) {
+          s.filter(p -> Files.isRegularFile(p) && !p.getFileName().toString().endsWith(LockFile.SUFFIX))
+              .forEach(p -> names.add(heads.relativize(p).toString().replace('\\', '/')));
+        }
+      }
+      branches = Collections.unmodifiableList(new ArrayList<>(names));
+      return branches;
+    }
+  }
+
+  public synchronized Snapshot snapshot() throws IOException {
+    if (snapshot == null) snapshot = new Snapshot(repoRoot);
+    return snapshot;
+  }
+
+  public synchronized void refresh() { snapshot = null; }
+
   public boolean isHeadDetached() throws IOException {
     String s = readHeadRaw();
     return !s.startsWith("ref: ");
@@ -29,69 +105,217 @@ public String currentBranchName() throws IOException {
 public String resolveHeadCommitId() throws IOException {
   String s = readHeadRaw();
   if (s.startsWith("ref: ")) {
-    String ref = s.substring("ref: ".length()).trim();
-    Path refPath = Constants.dot(repoRoot).resolve(ref);
-    if (!Files.exists(refPath)) return null;
-    String v = readString(refPath).trim();
-    return v.isEmpty() ? null : v;
+    String v = readRef(s.substring("ref: ".length()).trim());
+    return v == null || v.isEmpty() ? null : v;
   } else {
-    s = s.trim();
     return s.isEmpty() ? null : s;
   }
 }
 
 public void pointHeadToBranch(String branch) throws IOException {
-  Path head = Constants.headFile(repoRoot);
-  String line = "ref: " + Constants.refsDirName + "/" + Constants.headsDirName + "/" + branch;
-  Files.writeString(head, line, StandardCharsets.UTF_8,
-      StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-
-  Path refPath = Constants.branchRef(repoRoot, branch);
-  Files.createDirectories(refPath.getParent());
-  if (!Files.exists(refPath)) {
-    Files.writeString(refPath, "", StandardCharsets.UTF_8,
-        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  refresh();
+  writeLocked(Constants.headFile(repoRoot), "ref: " + branchRefName(branch));
+  if (readRef(branchRefName(branch)) == null) {
+    // Placeholder for an unborn branch; only created if nobody wrote the ref meanwhile.
+    try {
+      transaction().update(branchRefName(branch), null, "").commit();
+    } catch (ConflictException ignored) {
+      // Another writer created it first, which is just as good.
+    }
   }
+  refresh();
 }
   public void detachHeadToCommit(String commitId) throws IOException {
-    writeString(Constants.headFile(repoRoot), commitId);
+    refresh();
+    writeLocked(Constants.headFile(repoRoot), commitId);
   }
 
 public String readRef(String refName) throws IOException {
-  Path p = Constants.dot(repoRoot).resolve(refName);
-  if (!Files.exists(p)) return null;
-  return readString(p).trim();
+  return snapshot().resolve(refName);
 }
 
+  // Unconditional update; see transaction() for compare-and-swap.
   public void updateRef(String refName, String commitId) throws IOException {
-    Path p = Constants.dot(repoRoot).resolve(refName);
-    Files.createDirectories(p.getParent());
-    writeString(p, commitId); // <- no newline
+    refresh();
+    writeLocked(Constants.dot(repoRoot).resolve(refName), commitId); // <- no newline
+  }
+
+  // Removes a ref from both the loose files and packed-refs. Returns false if it did not exist.
+  public boolean deleteRef(String refName) throws IOException {
+    String current = currentValue(refName);
+    if (current == null && !Files.exists(Constants.dot(repoRoot).resolve(refName))) return false;
+    transaction().delete(refName, current).commit();
+    return true;
   }
 
 public void updateCurrentBranch(String commitId) throws IOException {
-  String s = readHeadRaw();
-  if (!s.startsWith("ref: ")) throw new IllegalStateException("HEAD is detached");
-  String ref = s.substring("ref: ".length()).trim(); // "refs/heads/<name>"
-  Path refPath = Constants.dot(repoRoot).resolve(ref);
-  Files.createDirectories(refPath.getParent());
-  writeString(refPath, commitId); // no trailing newline
+  updateRef(currentBranchRef(), commitId);
 }
+
+  // Moves the current branch from expectedOld (null for an unborn branch) to commitId, failing
+  // with ConflictException if another writer moved it first.
+  public void updateCurrentBranch(String commitId, String expectedOld) throws IOException {
+    transaction().update(currentBranchRef(), expectedOld, commitId).commit();
+  }
+
   public List<String> listBranches() throws IOException {
-    Path heads = Constants.heads(repoRoot);
-    List<String> out = new ArrayList<>();
-    if (!Files.exists(heads)) return out;
-    try (DirectoryStream<Path> ds = Files.newDirectoryStream(heads)) {
-      for (Path p : ds) if (Files.isRegularFile(p)) out.add(p.getFileName().toString());
+    return snapshot().branches();
+  }
+
+  public Transaction transaction() { return new Transaction(); }
+
+  // A set of ref updates and deletes, each guarded by the value the caller expects (null means
+  // absent or unborn). commit() locks the refs in name order, checks every expectation against
+  // the files on disk, and only then renames the new values into place. Transactions touching
+  // different refs never wait on each other; one touching a locked or changed ref fails fast.
+  public final class Transaction {
+    private record Change(String expected, String value, boolean delete) {}
+
+    private final TreeMap<String, Change> changes = new TreeMap<>();
+
+    private Transaction() {}
+
+    public Transaction update(String refName, String expectedOld, String newId) {
+      add(refName, new Change(expectedOld, Objects.requireNonNull(newId, "newId"), false));
+      return this;
+    }
+
+    public Transaction delete(String refName, String expectedOld) {
+      add(refName, new Change(expectedOld, null, true));
+      return this;
+    }
+
+    private void add(String refName, Change c) {
+      if (changes.put(refName, c) != null) throw new IllegalArgumentException("ref changed twice in one transaction: " + refName);
+    }
+
+    public void commit() throws IOException {
+      Path dot = Constants.dot(repoRoot);
+      List<LockFile> locks = new ArrayList<>();
+      try {
+        Map<String, LockFile> byRef = new TreeMap<>();
+        for (String ref : changes.keySet()) {
+          LockFile lock = lock(ref, dot.resolve(ref));
+          locks.add(lock);
+          byRef.put(ref, lock);
+        }
+        boolean deletes = changes.values().stream().anyMatch(Change::delete);
+        LockFile packedLock = deletes ? lock(Constants.packedRefsFileName, Constants.packedRefs(repoRoot)) : null;
+        if (packedLock != null) locks.add(packedLock);
+        PackedRefs packed = PackedRefs.load(Constants.packedRefs(repoRoot));
+
+        for (Map.Entry<String, Change> e : changes.entrySet()) {
+          String actual = valueOnDisk(dot.resolve(e.getKey()), packed, e.getKey());
+          String expected = emptyToNull(e.getValue().expected());
+          if (!Objects.equals(expected, actual)) {
+            throw new ConflictException(e.getKey(), "expected " + (expected == null ? "no commit" : expected)
+                + " but found " + (actual == null ? "no commit" : actual), null);
+          }
+        }
+
+        boolean packedChanged = false;
+        SortedMap<String, String> packedRefs = deletes ? packed.list("") : null;
+        for (Map.Entry<String, Change> e : changes.entrySet()) {
+          LockFile lock = byRef.get(e.getKey());
+          if (e.getValue().delete()) {
+            Files.deleteIfExists(lock.target());
+            packedChanged |= packedRefs.remove(e.getKey()) != null;
+          } else {
+            lock.write(e.getValue().value());
+            lock.commit();
+          }
+        }
+        if (packedChanged) {
+          packedLock.write(PackedRefs.serialize(packedRefs));
+          packedLock.commit();
+        }
+      } finally {
+        for (LockFile l : locks) l.close();
+        refresh();
+      }
+    }
+
+    private LockFile lock(String name, Path file) throws IOException {
+      try {
+        return LockFile.acquire(file);
+      } catch (IOException e) {
+        throw new ConflictException(name, "locked by another writer", e);
+      }
+    }
+  }
+
+  // Folds every loose ref with a commit id into packed-refs and deletes the loose files.
+  // Unborn (empty) loose refs stay loose. Returns the number of refs moved.
+  public int packRefs() throws IOException {
+    refresh();
+    Path dot = Constants.dot(repoRoot);
+    Path refsDir = Constants.refs(repoRoot);
+    Path packedFile = Constants.packedRefs(repoRoot);
+    Map<String, Path> moved = new TreeMap<>();
+    TreeMap<String, String> all;
+    try (LockFile packedLock = LockFile.acquire(packedFile)) {
+      all = new TreeMap<>(PackedRefs.load(packedFile).list(""));
+      if (Files.isDirectory(refsDir)) {
+        try (Stream<Path> s = Files.walk(refsDir)) {
+          for (Path p : (Iterable<Path>) s.filter(Files::isRegularFile)::iterator) {
+            if (p.getFileName().toString().endsWith(LockFile.SUFFIX)) continue;
+            String id = readString(p).trim();
+            if (!ObjectId.isValid(id)) continue;
+            String name = dot.relativize(p).toString().replace('\\', '/');
+            all.put(name, id);
+            moved.put(name, p);
+          }
+        }
+      }
+      if (moved.isEmpty()) return 0;
+      packedLock.write(PackedRefs.serialize(all));
+      packedLock.commit();
+    }
+    for (Map.Entry<String, Path> e : moved.entrySet()) {
+      // A ref being written right now, or updated since it was read, keeps its newer loose value.
+      try (LockFile lock = LockFile.acquire(e.getValue())) {
+        Path loose = lock.target();
+        if (Files.exists(loose) && all.get(e.getKey()).equals(readString(loose).trim())) Files.delete(loose);
+      } catch (IOException ignored) {
+        // Locked: leave the loose ref, it still overrides the packed one.
+      }
+    }
+    refresh();
+    return moved.size();
+  }
+
+  private String currentBranchRef() throws IOException {
+    String s = readHeadRaw();
+    if (!s.startsWith("ref: ")) throw new IllegalStateException("HEAD is detached");
+    return s.substring("ref: ".length()).trim(); // "refs/heads/<name>"
+  }
+
+  private String currentValue(String refName) throws IOException {
+    return valueOnDisk(Constants.dot(repoRoot).resolve(refName), PackedRefs.load(Constants.packedRefs(repoRoot)), refName);
+  }
+
+  private static String valueOnDisk(Path loose, PackedRefs packed, String refName) throws IOException {
+    String v = Files.isRegularFile(loose) ? readString(loose).trim() : packed.find(refName);
+    return emptyToNull(v);
+  }
+
+  private static String emptyToNull(String v) {
+    return v == null || v.isEmpty() ? null : v;
+  }
+
+  private static String branchRefName(String branch) {
+    return Constants.refsDirName + "/" + Constants.headsDirName + "/" + branch;
+  }
+
+  private static void writeLocked(Path file, String content) throws IOException {
+    try (LockFile lock = LockFile.acquire(file)) {
+      lock.write(content);
+      lock.commit();
     }
-    out.sort(String::compareTo);
-    return out;
   }
 
 private String readHeadRaw() throws IOException {
-  Path head = Constants.headFile(repoRoot);
-  if (!Files.exists(head)) return "";
-  return readString(head).trim();
+  return snapshot().head();
 }
 
 
@@ -99,8 +323,4 @@ private String readHeadRaw() throws IOException {
     return Files.readString(p, StandardCharsets.UTF_8);
   }
 
-  private static void writeString(Path p, String s) throws IOException {
-    Files.writeString(p, s, StandardCharsets.UTF_8,
-        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-  }
 }
@@ -1,23 +1,76 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
 
 public class Repository {
+  public static final Duration DEFAULT_GC_GRACE = Duration.ofDays(14);
+
   private final Path repoRoot;
-  private final ObjectStore objects;
-  private final StagingArea index;
-  private final Refs refs;
+  // Subsystems are created on first use through the accessors below, so a command pays only for
+  // what it touches. In particular the index file is read only by commands that look at the index.
+  private ObjectStore objects;
+  private StagingArea index;
+  private Refs refs;
+  private Catalog catalog;
+  // Stat of the index file when it was last loaded, or null if there was none.
+  private StagingArea.Stat indexStamp;
+  // Tree built for each flat (pre-tree) commit this instance has converted, by commit id.
+  private final Map<String, String> legacyTrees = new HashMap<>();
 
   public Repository(Path repoRoot) throws IOException {
     this.repoRoot = repoRoot.toAbsolutePath().normalize();
-    this.objects = new ObjectStore(this.repoRoot);
-    this.index = new StagingArea(this.repoRoot);
-    this.refs = new Refs(this.repoRoot);
+  }
+
+  private ObjectStore objects() throws IOException {
+    if (objects == null) objects = new ObjectStore(repoRoot);
+    return objects;
+  }
+
+  private StagingArea index() throws IOException {
+    if (index == null) {
+      StagingArea loaded = new StagingArea(repoRoot);
+      Path indexFile = Constants.indexFile(repoRoot);
+      if (Files.exists(indexFile)) {
+        indexStamp = StagingArea.Stat.of(indexFile);
+        loaded.load(indexFile);
+      }
+      index = loaded;
+    }
+    return index;
+  }
+
+  private Refs refs() {
+    if (refs == null) refs = new Refs(repoRoot);
+    return refs;
+  }
+
+  private Catalog catalog() {
+    if (catalog == null) catalog = new Catalog(Constants.catalog(repoRoot), Constants.catalogIndex(repoRoot));
+    return catalog;
+  }
+
+  // Brings a long-lived instance (see Daemon) up to date with index and ref writes made by other
+  // processes. Every save renames a new file over the index, so the index's stat tells whether
+  // someone else wrote it; our own saves update the stamp. Subsystems not created yet have
+  // nothing to refresh.
+  public void refresh() throws IOException {
+    if (refs != null) refs.refresh();
+    if (index == null) return;
     Path indexFile = Constants.indexFile(repoRoot);
-    if (Files.exists(indexFile)) this.index.load(indexFile);
+    StagingArea.Stat now = Files.exists(indexFile) ? StagingArea.Stat.of(indexFile) : null;
+    if (Objects.equals(now, indexStamp)) return;
+    index.load(indexFile);
+    indexStamp = now;
   }
 
 public void init() throws IOException {
@@ -41,7 +94,8 @@ public void init() throws IOException {
         StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
   }
 
-  refs.pointHeadToBranch(Constants.defaultBranch);
+  refs().pointHeadToBranch(Constants.defaultBranch);
+  catalog().create();
 
   Files.writeString(Constants.indexFile(repoRoot), "", StandardCharsets.UTF_8,
       StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
@@ -53,32 +107,107 @@ public void init() throws IOException {
 
   public void add(String path) throws IOException {
     Path abs = repoRoot.resolve(path).normalize();
+    if ("-A".equals(path) || (abs.startsWith(repoRoot) && Files.isDirectory(abs))) {
+      add(List.of(path));
+      return;
+    }
     if (!abs.startsWith(repoRoot) || !Files.isRegularFile(abs)) throw new IOException("File not found: " + path);
-    Blob blob = Blob.fromFile(abs);
-    String blobId = objects.writeBlob(blob.getContent());
-    Map<String,String> headTracked = loadHeadTracked();
     String normPath = repoRoot.relativize(abs).toString().replace('\\', '/');
+    // Stat before reading, so a write racing with the hash leaves a stale mtime and is rehashed next time.
+    StagingArea.Stat stat = StagingArea.Stat.of(abs);
+    String blobId = index().cachedBlob(normPath, stat);
+    if (blobId == null) blobId = objects().writeBlob(abs);
+    applyAdd(normPath, stat.withBlob(blobId), headBlob(normPath));
+    saveIndex();
+  }
 
-    if (blobId.equals(headTracked.get(normPath))) {
-      index.unstageRemoval(normPath);
-      index.unstageAddition(normPath);
-    } else {
-      index.stageForAddition(normPath, blobId);
+  // Stages files, every file under directories, or the whole working tree for "-A". Tracked files
+  // missing under an added directory are staged as removed. Files are stored on a bounded pool
+  // and the index is written once at the end; if any file fails nothing is staged.
+  public void add(List<String> paths) throws IOException {
+    Set<String> scopes = new TreeSet<>();
+    Set<String> seen = new HashSet<>();
+    List<ParallelBlobWriter.Stored> stored;
+    try (ParallelBlobWriter writer = new ParallelBlobWriter(objects(), index())) {
+      for (String p : paths) {
+        Path abs = "-A".equals(p) ? repoRoot : repoRoot.resolve(p).normalize();
+        if (!abs.startsWith(repoRoot)) throw new IOException("File not found: " + p);
+        String rel = repoRoot.relativize(abs).toString().replace('\\', '/');
+        if (Files.isDirectory(abs)) {
+          scopes.add(rel.isEmpty() ? "" : rel + "/");
+          submitTree(abs, writer, seen);
+        } else if (Files.isRegularFile(abs)) {
+          if (seen.add(rel)) writer.submit(abs, rel);
+        } else {
+          throw new IOException("File not found: " + p);
+        }
+      }
+      stored = writer.finish();
+    }
+
+    Map<String,String> headTracked = headTracked();
+    for (ParallelBlobWriter.Stored s : stored) applyAdd(s.path(), s.stat(), headTracked.get(s.path()));
+    if (!scopes.isEmpty()) {
+      Set<String> known = new TreeSet<>(headTracked.keySet());
+      known.addAll(index().getAdditions().keySet());
+      for (String path : known) {
+        if (seen.contains(path) || !inScope(path, scopes) || Files.exists(repoRoot.resolve(path), LinkOption.NOFOLLOW_LINKS)) continue;
+        if (headTracked.containsKey(path)) index().stageForRemoval(path);
+        else index().unstageAddition(path);
+        index().forgetStat(path);
+      }
     }
     saveIndex();
   }
 
+  private void applyAdd(String normPath, StagingArea.Stat stat, String headBlobId) throws IOException {
+    index().recordStat(normPath, stat);
+    if (stat.blobId().equals(headBlobId)) {
+      index().unstageRemoval(normPath);
+      index().unstageAddition(normPath);
+    } else {
+      index().stageForAddition(normPath, stat.blobId());
+    }
+  }
+
+  private void submitTree(Path start, ParallelBlobWriter writer, Set<String> seen) throws IOException {
+    Path dot = Constants.dot(repoRoot);
+    Files.walkFileTree(start, new SimpleFileVisitor<>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+        return dir.equals(dot) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+        if (attrs.isRegularFile()) {
+          String rel = repoRoot.relativize(file).toString().replace('\\', '/');
+          if (seen.add(rel)) writer.submit(file, rel);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private static boolean inScope(String path, Set<String> scopes) {
+    for (String scope : scopes) if (path.startsWith(scope)) return true;
+    return false;
+  }
+
   public void remove(String path) throws IOException {
     String normPath = indexPathNormalize(path);
-    Map<String,String> headTracked = loadHeadTracked();
 
-    if (index.isStagedForAddition(normPath)) {
-      index.unstageAddition(normPath);
+    String tracked = headBlob(normPath);
+
+    if (index().isStagedForAddition(normPath)) {
+      index().unstageAddition(normPath);
+      if (tracked == null) index().forgetStat(normPath);
       saveIndex();
       return;
     }
-    if (headTracked.containsKey(normPath)) {
-      index.stageForRemoval(normPath);
+    if (tracked != null) {
+      index().stageForRemoval(normPath);
+      index().forgetStat(normPath);
       saveIndex();
       return;
     }
@@ -87,53 +216,442 @@ public void init() throws IOException {
 
  public void commit(String message) throws IOException {
   if (message == null || message.isBlank()) throw new IllegalArgumentException("Please enter a commit message.");
-  if (index.isEmpty()) { System.out.println("No changes added to commit."); return; }
+  if (index().isEmpty()) { System.out.println("No changes added to commit."); return; }
 
-  String parentId = refs.resolveHeadCommitId();
-  Map<String,String> headTracked = loadHeadTracked();
+  String parentId = refs().resolveHeadCommitId();
+  String headTree = headTreeId();
 
-  index.pruneAgainst(headTracked);
-  if (index.isEmpty()) { 
+  // Only the staged paths are looked up, so an unchanged subtree is never read.
+  Map<String,String> headStaged = new HashMap<>();
+  for (String p : index().getAdditions().keySet()) putIfTracked(headStaged, headTree, p);
+  for (String p : index().getRemovals()) putIfTracked(headStaged, headTree, p);
+  index().pruneAgainst(headStaged);
+  if (index().isEmpty()) { 
     System.out.println("No changes added to commit."); 
     return; 
   }
 
-  Map<String,String> newTracked = index.applyTo(headTracked);
+  SortedMap<String,String> changes = new TreeMap<>(index().getAdditions());
+  for (String p : index().getRemovals()) changes.put(p, null);
+  String treeId = Tree.update(objects(), headTree, changes);
   List<String> parents = parentId == null ? List.of() : List.of(parentId);
 
-  Commit c = Commit.create(message, parents, newTracked, System.currentTimeMillis());
-  String id = objects.writeCommit(c);
-  if (!id.equals(c.getId())) throw new IllegalStateException("commit id mismatch");
-
-  refs.updateCurrentBranch(id);
-  index.clear();
+  String id = recordCommit(message, parents, treeId);
+  index().clear();
   saveIndex();
   System.out.println(id);
 }
 
+  // Writes a commit, adds it to the commit-graph and catalog, and moves the current branch from
+  // parents[0] to it.
+  private String recordCommit(String message, List<String> parents, String treeId) throws IOException {
+    Commit c = Commit.create(message, parents, treeId, System.currentTimeMillis());
+    String id = objects().writeCommit(c);
+    if (!id.equals(c.getId())) throw new IllegalStateException("commit id mismatch");
+    CommitGraph.append(Constants.commitGraph(repoRoot), objects(), c);
+    // Repositories from before the catalog get one built from their objects on first use instead.
+    if (catalog().exists()) catalog().append(c.header());
+
+    // Compare-and-swap against the parent: a concurrent commit on this branch makes one of them fail.
+    refs().updateCurrentBranch(id, parents.isEmpty() ? null : parents.get(0));
+    return id;
+  }
+
   public void status() throws IOException {
     System.out.println("=== Branches ===");
-    String cur = refs.currentBranchName();
-    for (String b : refs.listBranches()) {
+    String cur = refs().currentBranchName();
+    for (String b : refs().listBranches()) {
       System.out.println(b.equals(cur) ? "*" + b : b);
     }
     System.out.println();
 
     System.out.println("=== Staged Files ===");
-    index.getAdditions().keySet().forEach(System.out::println);
+    index().getAdditions().keySet().forEach(System.out::println);
     System.out.println();
 
     System.out.println("=== Removed Files ===");
-    index.getRemovals().forEach(System.out::println);
+    index().getRemovals().forEach(System.out::println);
     System.out.println();
+
+    Map<String,String> expected = new HashMap<>(headTracked());
+    expected.putAll(index().getAdditions());
+    index().getRemovals().forEach(expected::remove);
+    WorkingTreeScanner.Result scan = new WorkingTreeScanner(repoRoot, expected, index()).scan();
+
+    System.out.println("=== Modifications Not Staged For Commit ===");
+    scan.notStaged().forEach((path, kind) -> System.out.println(path + " (" + kind + ")"));
+    System.out.println();
+
+    System.out.println("=== Untracked Files ===");
+    scan.untracked().forEach(System.out::println);
+    System.out.println();
+
+    // Files that had to be hashed but turned out clean get a fresh stat, so the next status skips them.
+    if (!scan.refreshed().isEmpty()) {
+      scan.refreshed().forEach(index()::recordStat);
+      saveIndex();
+    }
+  }
+
+
+  public void log() throws IOException {
+    log(-1, null);
+  }
+
+  // First-parent history from HEAD, printed as it is walked. limit < 0 means no limit; commits
+  // older than since (epoch ms, nullable) are skipped, and the walk stops after LOG_SINCE_SLOP
+  // older commits in a row, since clock skew can make timestamps out of order.
+  public void log(int limit, Long since) throws IOException {
+    String head = refs().resolveHeadCommitId();
+    if (head == null) return;
+    int shown = 0;
+    int older = 0;
+    StringBuilder sb = new StringBuilder(256);
+    for (Iterator<Commit.Header> it = new CommitWalker(objects(), head); it.hasNext() && shown != limit; ) {
+      Commit.Header h = it.next();
+      if (since != null && h.timestamp() < since) {
+        if (++older >= LOG_SINCE_SLOP) break;
+        continue;
+      }
+      older = 0;
+      sb.setLength(0);
+      appendLogEntry(sb, h);
+      System.out.print(sb);
+      shown++;
+    }
+    System.out.flush();
+  }
+
+  private static final int LOG_SINCE_SLOP = 5;
+  private static final DateTimeFormatter LOG_DATE = DateTimeFormatter.ofPattern("EEE MMM d HH:mm:ss yyyy Z", Locale.US);
+
+  static void appendLogEntry(StringBuilder sb, Commit.Header h) {
+    sb.append("===\n");
+    sb.append("commit ").append(h.id()).append('\n');
+    if (h.parents().size() > 1) {
+      sb.append("Merge:");
+      for (String p : h.parents()) sb.append(' ').append(p, 0, Math.min(7, p.length()));
+      sb.append('\n');
+    }
+    sb.append("Date: ").append(LOG_DATE.format(Instant.ofEpochMilli(h.timestamp()).atZone(ZoneId.systemDefault()))).append('\n');
+    sb.append(h.message()).append("\n\n");
   }
 
+  public void branch(String name) throws IOException {
+    validateBranchName(name);
+    String ref = branchRefName(name);
+    if (refs().readRef(ref) != null) { System.out.println("A branch with that name already exists."); return; }
+    String head = refs().resolveHeadCommitId();
+    if (head == null) throw new IllegalStateException("Cannot create a branch before the first commit.");
+    refs().updateRef(ref, head);
+  }
+
+  public void rmBranch(String name) throws IOException {
+    if (name.equals(refs().currentBranchName())) { System.out.println("Cannot remove the current branch."); return; }
+    if (!refs().deleteRef(branchRefName(name))) System.out.println("A branch with that name does not exist.");
+  }
+
+  public void packRefs() throws IOException {
+    System.out.println("Packed " + refs().packRefs() + " refs");
+  }
+
+  private static String branchRefName(String name) {
+    return Constants.refsDirName + "/" + Constants.headsDirName + "/" + name;
+  }
+
+  private static void validateBranchName(String name) {
+    if (name == null || name.isEmpty() || name.startsWith("/") || name.endsWith("/") || name.startsWith(".")
+        || name.contains("..") || name.contains("//") || name.chars().anyMatch(c -> c <= ' ' || c == '\\'))
+      throw new IllegalArgumentException("Invalid branch name: " + name);
+  }
+
+  public void gc(Duration grace) throws IOException {
+    Set<String> roots = new LinkedHashSet<>();
+    for (String b : refs().listBranches()) {
+      String id = refs().readRef(branchRefName(b));
+      if (id != null && !id.isEmpty()) roots.add(id);
+    }
+    String head = refs().resolveHeadCommitId();
+    if (head != null) roots.add(head);
+    Map<String,String> indexBlobs = new HashMap<>();
+    index().getStats().forEach((path, st) -> indexBlobs.put(path, st.blobId()));
+    indexBlobs.putAll(index().getAdditions());
+    new GarbageCollector(objects(), Constants.commitGraph(repoRoot)).run(roots, indexBlobs, grace, System.out);
+    if (catalog().exists()) catalog().retain(objects()::exists);
+  }
+
+  // Answers from the commit-graph; commits it does not know yet are added by walking their history once.
+  public boolean isAncestor(String ancestorId, String descendantId) throws IOException {
+    CommitGraph graph = graphCovering(ancestorId, descendantId);
+    return graph.isAncestor(graph.find(ancestorId), graph.find(descendantId));
+  }
+
+  // The latest common ancestor of two commits, or null if their histories are disjoint.
+  String mergeBase(String a, String b) throws IOException {
+    CommitGraph graph = graphCovering(a, b);
+    int base = graph.mergeBase(graph.find(a), graph.find(b));
+    return base < 0 ? null : graph.id(base).name();
+  }
 
-  private Map<String,String> loadHeadTracked() throws IOException {
-    String headId = refs.resolveHeadCommitId();
-    if (headId == null) return Collections.emptyMap();
-    Commit head = objects.readCommit(headId);
-    return head.getTrackedFiles();
+  private CommitGraph graphCovering(String a, String b) throws IOException {
+    return CommitGraph.extend(Constants.commitGraph(repoRoot), objects(), List.of(a, b));
+  }
+
+  // Merges branch into the current branch. Only paths that changed on the given branch since
+  // the split point are visited; of those, paths the current branch left alone take the given
+  // branch's blob, and paths both changed differently are merged line by line.
+  public void merge(String branch) throws IOException {
+    if (!index().isEmpty()) { System.out.println("You have uncommitted changes."); return; }
+    String current = refs().currentBranchName();
+    String otherId = refs().readRef(branchRefName(branch));
+    if (otherId == null || otherId.isEmpty()) { System.out.println("A branch with that name does not exist."); return; }
+    if (branch.equals(current)) { System.out.println("Cannot merge a branch with itself."); return; }
+    String headId = refs().resolveHeadCommitId();
+    if (current == null || headId == null) throw new IllegalStateException("Cannot merge without a current branch commit.");
+    String baseId = mergeBase(headId, otherId);
+    if (otherId.equals(baseId)) { System.out.println("Given branch is an ancestor of the current branch."); return; }
+
+    String headTree = treeOf(headId);
+    String otherTree = treeOf(otherId);
+    if (headId.equals(baseId)) {
+      if (switchTrees(headTree, otherTree) == null) return;
+      refs().updateCurrentBranch(otherId, headId);
+      saveIndex();
+      System.out.println("Current branch fast-forwarded.");
+      return;
+    }
+
+    String baseTree = baseId == null ? null : treeOf(baseId);
+    Map<String,String> ours = new HashMap<>();
+    for (Tree.Change c : Tree.diff(objects(), baseTree, headTree)) ours.put(c.path(), c.newId());
+    SortedMap<String,String> taken = new TreeMap<>();
+    List<Tree.Change> both = new ArrayList<>();
+    for (Tree.Change c : Tree.diff(objects(), baseTree, otherTree)) {
+      if (!ours.containsKey(c.path())) taken.put(c.path(), c.newId());
+      else if (!Objects.equals(ours.get(c.path()), c.newId())) both.add(new Tree.Change(c.path(), ours.get(c.path()), c.newId()));
+    }
+    Set<String> touched = new TreeSet<>(taken.keySet());
+    for (Tree.Change c : both) touched.add(c.path());
+    if (!checkWorkingTree(touched, headTree)) return;
+
+    updateWorkingTree(taken);
+    SortedMap<String,String> changes = new TreeMap<>(taken);
+    boolean conflict = false;
+    for (Tree.Change c : both) {
+      String baseBlob = baseTree == null ? null : Tree.lookup(objects(), baseTree, c.path());
+      Path file = repoRoot.resolve(c.path());
+      Files.createDirectories(file.getParent());
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file), 64 << 10)) {
+        byte[] mine = c.oldId() == null ? new byte[0] : objects().readBlob(c.oldId());
+        byte[] theirs = c.newId() == null ? new byte[0] : objects().readBlob(c.newId());
+        // Modified on one side and deleted on the other: nothing to merge line by line.
+        if (c.oldId() == null || c.newId() == null) {
+          LineMerge.conflict(mine, theirs, branch, out);
+          conflict = true;
+        } else {
+          byte[] base = baseBlob == null ? new byte[0] : objects().readBlob(baseBlob);
+          conflict |= LineMerge.merge(base, mine, theirs, branch, out);
+        }
+      }
+      StagingArea.Stat stat = StagingArea.Stat.of(file);
+      String blobId = objects().writeBlob(file);
+      index().recordStat(c.path(), stat.withBlob(blobId));
+      changes.put(c.path(), blobId);
+    }
+
+    String treeId = Tree.update(objects(), headTree, changes);
+    recordCommit("Merged " + branch + " into " + current + ".", List.of(headId, otherId), treeId);
+    index().clear();
+    saveIndex();
+    if (conflict) System.out.println("Encountered a merge conflict.");
+  }
+
+  // False (after saying why) if writing paths would destroy an untracked file or a change
+  // that was never staged.
+  private boolean checkWorkingTree(Collection<String> paths, String headTree) throws IOException {
+    for (String path : paths) {
+      Path file = repoRoot.resolve(path);
+      if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) continue;
+      String tracked = headTree == null ? null : Tree.lookup(objects(), headTree, path);
+      if (tracked == null) {
+        System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
+        return false;
+      }
+      StagingArea.Stat stat = StagingArea.Stat.of(file);
+      String blob = index().cachedBlob(path, stat);
+      if (!tracked.equals(blob != null ? blob : Hashing.sha1(file))) {
+        System.out.println("You have uncommitted changes.");
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private record CheckoutStats(int written, int deleted, long bytes, long nanos) {
+    @Override
+    public String toString() {
+      double seconds = Math.max(nanos, 1) / 1e9;
+      return String.format(Locale.ROOT, "Updated %d files, deleted %d (%d bytes in %d ms, %.1f MB/s)",
+          written, deleted, bytes, nanos / 1_000_000, bytes / seconds / (1 << 20));
+    }
+  }
+
+  // Moves the working tree from one root tree to another, touching only the paths whose blobs
+  // differ. Returns null, after saying why, if that would clobber an untracked file or an
+  // unstaged edit; nothing is written in that case. If a write fails part way, the paths are put
+  // back as fromTree has them (the check above proved that is what they held) before rethrowing.
+  private CheckoutStats switchTrees(String fromTree, String toTree) throws IOException {
+    SortedMap<String,String> changes = new TreeMap<>();
+    SortedMap<String,String> undo = new TreeMap<>();
+    for (Tree.Change c : Tree.diff(objects(), fromTree, toTree)) {
+      changes.put(c.path(), c.newId());
+      undo.put(c.path(), c.oldId());
+    }
+    if (!checkWorkingTree(changes.keySet(), fromTree)) return null;
+    try {
+      return updateWorkingTree(changes);
+    } catch (IOException e) {
+      try {
+        updateWorkingTree(undo);
+      } catch (IOException | RuntimeException rollback) {
+        e.addSuppressed(rollback);
+        throw new IOException("Checkout failed (" + e.getMessage() + ") and the working tree could not be restored;"
+            + " it is partly switched. Use reset to the current commit to repair it.", e);
+      }
+      throw new IOException("Checkout failed, working tree left unchanged: " + e.getMessage(), e);
+    }
+  }
+
+  // Applies path -> blob (null deletes the path) to the working tree. Deletions run first, so a
+  // path can turn from a file into a directory; blobs are then written in parallel, and every
+  // written file's stat goes into the index so the next status does not rehash it.
+  private CheckoutStats updateWorkingTree(SortedMap<String,String> changes) throws IOException {
+    long start = System.nanoTime();
+    int deleted = 0;
+    for (Map.Entry<String,String> e : changes.entrySet()) {
+      if (e.getValue() != null) continue;
+      Path file = repoRoot.resolve(e.getKey());
+      if (Files.deleteIfExists(file)) deleted++;
+      index().forgetStat(e.getKey());
+      for (Path dir = file.getParent(); !dir.equals(repoRoot) && isEmptyDir(dir); dir = dir.getParent()) Files.delete(dir);
+    }
+    List<ParallelCheckout.Written> written;
+    long bytes;
+    try (ParallelCheckout checkout = new ParallelCheckout(objects(), repoRoot)) {
+      for (Map.Entry<String,String> e : changes.entrySet()) {
+        if (e.getValue() != null) checkout.submit(e.getKey(), e.getValue());
+      }
+      written = checkout.finish();
+      bytes = checkout.bytesWritten();
+    }
+    for (ParallelCheckout.Written w : written) index().recordStat(w.path(), w.stat());
+    return new CheckoutStats(written.size(), deleted, bytes, System.nanoTime() - start);
+  }
+
+  private static boolean isEmptyDir(Path dir) throws IOException {
+    if (!Files.isDirectory(dir)) return false;
+    try (var entries = Files.list(dir)) {
+      return entries.findAny().isEmpty();
+    }
+  }
+
+  // A flat commit is converted once per instance. Nothing references the converted tree, so gc
+  // may prune it; a cached id whose tree has gone is rebuilt.
+  private String treeOf(String commitId) throws IOException {
+    Commit c = objects().readCommit(commitId);
+    if (c.getTreeId() != null) return c.getTreeId();
+    String tree = legacyTrees.get(commitId);
+    if (tree == null || !objects().exists(tree)) {
+      tree = Tree.build(objects(), c.getTrackedFiles());
+      legacyTrees.put(commitId, tree);
+    }
+    return tree;
+  }
+
+  // Every commit ever made, in the order they were made, read from the catalog alone.
+  public void globalLog() throws IOException {
+    StringBuilder sb = new StringBuilder(256);
+    openCatalog().scan(0, (off, h) -> {
+      sb.setLength(0);
+      appendLogEntry(sb, h);
+      System.out.print(sb);
+    });
+    System.out.flush();
+  }
+
+  public void find(String message) throws IOException {
+    List<String> ids = openCatalog().find(message);
+    if (ids.isEmpty()) System.out.println("Found no commit with that message.");
+    else ids.forEach(System.out::println);
+  }
+
+  // A repository from before the catalog existed has it built once, from every commit object.
+  private Catalog openCatalog() throws IOException {
+    if (catalog().exists()) return catalog();
+    List<Commit.Header> headers = new ArrayList<>();
+    for (String id : objects().listObjectIds()) {
+      if (objects().peek(id).type() == ObjectType.COMMIT) headers.add(objects().readCommitHeader(id));
+    }
+    headers.sort(Comparator.comparingLong(Commit.Header::timestamp).thenComparing(Commit.Header::id));
+    catalog().rewrite(parentsFirst(headers));
+    return catalog();
+  }
+
+  // Reorders headers so each comes after its parents, keeping the given order otherwise;
+  // timestamps alone cannot order commits made within the same millisecond.
+  private static List<Commit.Header> parentsFirst(List<Commit.Header> headers) {
+    Map<String, Commit.Header> byId = new HashMap<>();
+    for (Commit.Header h : headers) byId.put(h.id(), h);
+    List<Commit.Header> out = new ArrayList<>(headers.size());
+    Set<String> emitted = new HashSet<>();
+    Deque<Commit.Header> stack = new ArrayDeque<>();
+    for (Commit.Header start : headers) {
+      stack.push(start);
+      while (!stack.isEmpty()) {
+        Commit.Header h = stack.peek();
+        if (emitted.contains(h.id())) { stack.pop(); continue; }
+        boolean ready = true;
+        for (String p : h.parents()) {
+          Commit.Header parent = byId.get(p);
+          if (parent != null && !emitted.contains(p)) { stack.push(parent); ready = false; }
+        }
+        if (ready) {
+          stack.pop();
+          emitted.add(h.id());
+          out.add(h);
+        }
+      }
+    }
+    return out;
+  }
+
+  // The commit an abbreviated id names, or null if none does; ambiguous prefixes throw
+  // IllegalArgumentException listing the candidates. Objects that are not commits never match.
+  public String resolveAbbrev(String prefix) throws IOException {
+    return objects().resolveCommitPrefix(prefix, CommitGraph.load(Constants.commitGraph(repoRoot)));
+  }
+
+  // Root tree of HEAD, or null before the first commit. Commits from before trees existed are
+  // converted once here; their tree is then shared by every later commit.
+  private String headTreeId() throws IOException {
+    String headId = refs().resolveHeadCommitId();
+    if (headId == null) return null;
+    return treeOf(headId);
+  }
+
+  private Map<String,String> headTracked() throws IOException {
+    String headId = refs().resolveHeadCommitId();
+    return headId == null ? Collections.emptyMap() : objects().readCommit(headId).getTrackedFiles();
+  }
+
+  private String headBlob(String path) throws IOException {
+    String headTree = headTreeId();
+    return headTree == null ? null : Tree.lookup(objects(), headTree, path);
+  }
+
+  private void putIfTracked(Map<String,String> out, String treeId, String path) throws IOException {
+    String blob = treeId == null ? null : Tree.lookup(objects(), treeId, path);
+    if (blob != null) out.put(path, blob);
   }
 
   private String indexPathNormalize(String path) {
@@ -142,19 +660,54 @@ public void init() throws IOException {
     return repoRoot.relativize(abs).toString().replace('\\', '/');
   }
 
+  // Fails if another process saved the index since this instance loaded it.
   private void saveIndex() throws IOException {
-    index.save(Constants.indexFile(repoRoot));
-  }
-
-  public void checkoutFile(String path) throws IOException { throw new UnsupportedOperationException(); }
-  public void checkoutCommitFile(String commitId, String path) throws IOException { throw new UnsupportedOperationException(); }
-  public void checkoutBranch(String branch) throws IOException { throw new UnsupportedOperationException(); }
-  public void branch(String name) throws IOException { throw new UnsupportedOperationException(); }
-  public void rmBranch(String name) throws IOException { throw new UnsupportedOperationException(); }
-  public void reset(String commitId) throws IOException { throw new UnsupportedOperationException(); }
-  public void merge(String branch) throws IOException { throw new UnsupportedOperationException(); }
-  public void log() throws IOException { throw new UnsupportedOperationException(); }
-  public void globalLog() throws IOException { throw new UnsupportedOperationException(); }
-  public void find(String message) throws IOException { throw new UnsupportedOperationException(); }
-  public String resolveAbbrev(String prefix) throws IOException { throw new UnsupportedOperationException(); }
+    Path indexFile = Constants.indexFile(repoRoot);
+    index().save(indexFile, indexStamp);
+    indexStamp = StagingArea.Stat.of(indexFile);
+  }
+
+  // Restores path to its content at HEAD. The file is not staged.
+  public void checkoutFile(String path) throws IOException {
+    String head = refs().resolveHeadCommitId();
+    if (head == null) { System.out.println("File does not exist in that commit."); return; }
+    checkoutCommitFile(head, path);
+  }
+
+  public void checkoutCommitFile(String commitId, String path) throws IOException {
+    String id = resolveAbbrev(commitId);
+    if (id == null) { System.out.println("No commit with that id exists."); return; }
+    String normPath = indexPathNormalize(path);
+    String blob = Tree.lookup(objects(), treeOf(id), normPath);
+    if (blob == null) { System.out.println("File does not exist in that commit."); return; }
+    updateWorkingTree(new TreeMap<>(Map.of(normPath, blob)));
+    saveIndex();
+  }
+
+  // Switches to branch, rewriting only the files that differ between the two commits.
+  public void checkoutBranch(String branch) throws IOException {
+    String target = refs().readRef(branchRefName(branch));
+    if (target == null) { System.out.println("No such branch exists."); return; }
+    if (branch.equals(refs().currentBranchName())) { System.out.println("No need to checkout the current branch."); return; }
+    String head = refs().resolveHeadCommitId();
+    CheckoutStats stats = switchTrees(head == null ? null : treeOf(head), target.isEmpty() ? null : treeOf(target));
+    if (stats == null) return;
+    refs().pointHeadToBranch(branch);
+    index().clear();
+    saveIndex();
+    System.out.println(stats);
+  }
+
+  // Moves the current branch to commitId and the working tree with it.
+  public void reset(String commitId) throws IOException {
+    String id = resolveAbbrev(commitId);
+    if (id == null) { System.out.println("No commit with that id exists."); return; }
+    String head = refs().resolveHeadCommitId();
+    CheckoutStats stats = switchTrees(head == null ? null : treeOf(head), treeOf(id));
+    if (stats == null) return;
+    refs().updateCurrentBranch(id, head);
+    index().clear();
+    saveIndex();
+    System.out.println(stats);
+  }
 }
@@ -4,18 +4,56 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 
 public final class StagingArea {
+  // What a tracked file looked like when its blob id was last computed. A file whose size, mtime,
+  // inode and mode all still match is assumed unchanged without reading it.
+  public record Stat(String blobId, long size, long mtimeNs, long inode, int mode) {
+    // Stat of file as it is now, with no blob id yet.
+    public static Stat of(Path file) throws IOException {
+      try {
+        Map<String, Object> a = Files.readAttributes(file, "unix:size,lastModifiedTime,ino,mode", LinkOption.NOFOLLOW_LINKS);
+        return new Stat(null, (Long) a.get("size"), ((FileTime) a.get("lastModifiedTime")).to(TimeUnit.NANOSECONDS),
+            (Long) a.get("ino"), (Integer) a.get("mode"));
+      } catch (UnsupportedOperationException | IllegalArgumentException e) {
+        BasicFileAttributes a = Files.readAttributes(file, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        return new Stat(null, a.size(), a.lastModifiedTime().to(TimeUnit.NANOSECONDS), 0, 0);
+      }
+    }
+
+    public Stat withBlob(String id) {
+      return new Stat(id, size, mtimeNs, inode, mode);
+    }
+
+    // Same blob, with a size no file has, so the entry is never trusted and the file is rehashed.
+    Stat smudged() {
+      return new Stat(blobId, SMUDGED_SIZE, mtimeNs, inode, mode);
+    }
+
+    boolean matches(Stat other) {
+      return size == other.size && mtimeNs == other.mtimeNs && inode == other.inode && mode == other.mode;
+    }
+  }
+
+  static final long SMUDGED_SIZE = -1;
+
   private final TreeMap<String, String> additions = new TreeMap<>();
   private final TreeSet<String> removals = new TreeSet<>();
+  private final TreeMap<String, Stat> stats = new TreeMap<>();
   private final Path repoRoot;
+  // mtime of the index file when it was loaded. Files modified at or after it may have changed
+  // again within the same timestamp tick after being recorded, so their stat cannot be trusted.
+  private long racyCutoffNs = Long.MIN_VALUE;
 
   public StagingArea() {
     this.repoRoot = null;
@@ -77,11 +115,40 @@ public final class StagingArea {
     return additions.isEmpty() && removals.isEmpty();
   }
 
+  // Clears staged changes; recorded stats of tracked files are kept.
   public void clear() {
     additions.clear();
     removals.clear();
   }
 
+  public void recordStat(String path, Stat stat) {
+    if (path == null || stat == null) throw new IllegalArgumentException("path/stat required");
+    validateField(stat.blobId(), "blobId");
+    stats.put(normalizeAndValidate(path), stat);
+  }
+
+  public void forgetStat(String path) {
+    if (path == null) return;
+    stats.remove(normalizeAndValidate(path));
+  }
+
+  public Stat getStat(String path) {
+    if (path == null) return null;
+    return stats.get(normalizeAndValidate(path));
+  }
+
+  public Map<String, Stat> getStats() {
+    return Collections.unmodifiableMap(stats);
+  }
+
+  // Blob id recorded for path if the file on disk still matches its stat and the entry is not
+  // racy; null means the caller has to hash the file.
+  public String cachedBlob(String path, Stat current) {
+    Stat s = getStat(path);
+    if (s == null || !s.matches(current) || s.mtimeNs() >= racyCutoffNs) return null;
+    return s.blobId();
+  }
+
   public Map<String, String> applyTo(Map<String, String> baseTracked) {
     TreeMap<String, String> out = new TreeMap<>(baseTracked);
     for (var e : additions.entrySet()) out.put(e.getKey(), e.getValue());
@@ -94,31 +161,61 @@ public final class StagingArea {
     removals.removeIf(p -> !headTracked.containsKey(p));
   }
 
+  // Written to index.lock and renamed over the index, so readers never see a partial file and
+  // a concurrent writer fails instead of interleaving. An entry for a file modified at or after the
+  // write could still change within the same timestamp tick, and the next save would give the
+  // index a later mtime and so make it look trustworthy; such entries are smudged (as git does)
+  // and stay distrusted until the file is hashed again in a later tick.
   public void save(Path indexFile) throws IOException {
-    StringBuilder sb = new StringBuilder();
-    for (Map.Entry<String, String> e : additions.entrySet()) {
-      sb.append('A').append('\t').append(e.getKey()).append('\t').append(e.getValue()).append('\n');
-    }
-    for (String p : removals) {
-      sb.append('R').append('\t').append(p).append('\n');
+    save(indexFile, false, null);
+  }
+
+  // Like save(indexFile), but only if the index file is still the one this was loaded from, as
+  // described by loaded (null: there was none). Checked under the lock, so of two commands that
+  // loaded the same index the second to save fails instead of dropping the first one's changes.
+  public void save(Path indexFile, Stat loaded) throws IOException {
+    save(indexFile, true, loaded);
+  }
+
+  private void save(Path indexFile, boolean check, Stat loaded) throws IOException {
+    try (LockFile lock = LockFile.acquire(indexFile)) {
+      if (check && !Objects.equals(loaded, Files.exists(indexFile) ? Stat.of(indexFile) : null)) {
+        throw new IOException("The index was changed by another gitlet process while this command ran; run it again.");
+      }
+      long writeNs = lock.acquiredAt().to(TimeUnit.NANOSECONDS);
+      stats.replaceAll((path, st) -> st.mtimeNs() >= writeNs && st.size() != SMUDGED_SIZE ? st.smudged() : st);
+      StringBuilder sb = new StringBuilder();
+      for (Map.Entry<String, String> e : additions.entrySet()) {
+        sb.append('A').append('\t').append(e.getKey()).append('\t').append(e.getValue()).append('\n');
+      }
+      for (String p : removals) {
+        sb.append('R').append('\t').append(p).append('\n');
+      }
+      for (Map.Entry<String, Stat> e : stats.entrySet()) {
+        Stat st = e.getValue();
+        sb.append('S').append('\t').append(e.getKey()).append('\t').append(st.blobId())
+            .append('\t').append(st.size()).append('\t').append(st.mtimeNs())
+            .append('\t').append(st.inode()).append('\t').append(st.mode()).append('\n');
+      }
+      lock.write(sb.toString());
+      lock.commit();
+      // What a reload would now use; every entry at or after it was just smudged.
+      racyCutoffNs = writeNs;
     }
-    Path parent = indexFile.getParent();
-    if (parent != null) Files.createDirectories(parent);
-    Files.writeString(
-        indexFile,
-        sb.toString(),
-        StandardCharsets.UTF_8,
-        StandardOpenOption.CREATE,
-        StandardOpenOption.TRUNCATE_EXISTING,
-        StandardOpenOption.WRITE
-    );
   }
 
   public void load(Path indexFile) throws IOException {
     clear();
+    stats.clear();
+    racyCutoffNs = Long.MIN_VALUE;
     if (!Files.exists(indexFile)) return;
+    racyCutoffNs = Files.getLastModifiedTime(indexFile).to(TimeUnit.NANOSECONDS);
     for (String line : Files.readAllLines(indexFile, StandardCharsets.UTF_8)) {
       if (line.isEmpty()) continue;
+      if (line.charAt(0) == 'S') {
+        loadStat(line);
+        continue;
+      }
       String[] parts = line.split("\t", 3);
       if (parts.length == 0 || parts[0].isEmpty()) throw new IOException("Corrupt index line: " + line);
       char tag = parts[0].charAt(0);
@@ -145,6 +242,18 @@ public final class StagingArea {
     }
   }
 
+  private void loadStat(String line) throws IOException {
+    String[] parts = line.split("\t", -1);
+    if (parts.length != 7 || !"S".equals(parts[0])) throw new IOException("Corrupt index line (S): " + line);
+    try {
+      Stat st = new Stat(parts[2], Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[5]), Integer.parseInt(parts[6]));
+      validateField(st.blobId(), "blobId");
+      stats.put(normalizeAndValidate(parts[1]), st);
+    } catch (NumberFormatException e) {
+      throw new IOException("Corrupt index line (S): " + line, e);
+    }
+  }
+
   private String normalizeAndValidate(String pathString) {
     validateField(pathString, "path");
     String clean;
@@ -0,0 +1,196 @@
+package gitlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+// One directory level: names mapped to blob or subtree ids. Commits point at a root tree, so
+// unchanged directories are shared between commits and compared by id alone.
+public final class Tree {
+  public enum Kind {
+    BLOB("blob"), TREE("tree");
+
+    private final String tag;
+
+    Kind(String tag) { this.tag = tag; }
+
+    static Kind fromTag(String tag) {
+      for (Kind k : values()) if (k.tag.equals(tag)) return k;
+      throw new IllegalArgumentException("unknown tree entry kind: " + tag);
+    }
+  }
+
+  public record Entry(String name, Kind kind, String id) {
+    public Entry {
+      requireNonNull(name, "name");
+      requireNonNull(kind, "kind");
+      requireNonNull(id, "id");
+      if (name.isEmpty() || name.indexOf('/') >= 0 || name.indexOf('\t') >= 0 || name.indexOf('\n') >= 0)
+        throw new IllegalArgumentException("bad tree entry name: " + name);
+    }
+  }
+
+  // A change between two trees; a null id means the path is absent on that side.
+  public record Change(String path, String oldId, String newId) {}
+
+  public static final Tree EMPTY = of(List.of());
+
+  private final TreeMap<String, Entry> entries;
+  private final String id;
+
+  private Tree(TreeMap<String, Entry> entries) {
+    this.entries = entries;
+    this.id = Hashing.sha1(serialize());
+  }
+
+  private Tree(TreeMap<String, Entry> entries, String id) {
+    this.entries = entries;
+    this.id = id;
+  }
+
+  public static Tree of(Collection<Entry> entries) {
+    TreeMap<String, Entry> m = new TreeMap<>();
+    for (Entry e : entries) {
+      if (m.put(e.name(), e) != null) throw new IllegalArgumentException("duplicate tree entry: " + e.name());
+    }
+    return new Tree(m);
+  }
+
+  public static Tree deserialize(byte[] data) {
+    return parse(Hashing.sha1(requireNonNull(data, "data")), data);
+  }
+
+  // Trusted read path: id is the one the bytes were stored under and is not recomputed.
+  static Tree parse(String id, byte[] data) {
+    String s = new String(requireNonNull(data, "data"), StandardCharsets.UTF_8);
+    String[] lines = s.split("\n", -1);
+    if (lines.length < 1 || !"tree".equals(lines[0])) throw new IllegalArgumentException("bad tree payload");
+    TreeMap<String, Entry> m = new TreeMap<>();
+    for (int i = 1; i < lines.length; i++) {
+      if (lines[i].isEmpty()) continue;
+      String[] parts = lines[i].split("\t", 3);
+      if (parts.length != 3) throw new IllegalArgumentException("bad tree line: " + lines[i]);
+      if (m.put(parts[1], new Entry(parts[1], Kind.fromTag(parts[0]), parts[2])) != null)
+        throw new IllegalArgumentException("duplicate tree entry: " + parts[1]);
+    }
+    return new Tree(m, id);
+  }
+
+  public byte[] serialize() {
+    StringBuilder sb = new StringBuilder(16 + entries.size() * 64);
+    sb.append("tree").append('\n');
+    for (Entry e : entries.values())
+      sb.append(e.kind().tag).append('\t').append(e.name()).append('\t').append(e.id()).append('\n');
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  public String getId() { return id; }
+  public Entry get(String name) { return entries.get(name); }
+  public Collection<Entry> entries() { return Collections.unmodifiableCollection(entries.values()); }
+  public boolean isEmpty() { return entries.isEmpty(); }
+
+  // Applies path -> blob id changes (null removes the path) under rootId, which may be null for
+  // an empty tree. Only trees on changed paths are rewritten; returns the new root id.
+  public static String update(ObjectStore objects, String rootId, SortedMap<String, String> changes) throws IOException {
+    Tree root = apply(objects, rootId, changes);
+    return objects.writeTree(root);
+  }
+
+  public static String build(ObjectStore objects, Map<String, String> tracked) throws IOException {
+    return update(objects, null, new TreeMap<>(tracked));
+  }
+
+  private static Tree apply(ObjectStore objects, String treeId, SortedMap<String, String> changes) throws IOException {
+    Tree base = treeId == null ? EMPTY : objects.readTree(treeId);
+    TreeMap<String, Entry> out = new TreeMap<>(base.entries);
+    TreeMap<String, TreeMap<String, String>> byDir = new TreeMap<>();
+    for (Map.Entry<String, String> c : changes.entrySet()) {
+      String path = c.getKey();
+      int slash = path.indexOf('/');
+      if (slash < 0) {
+        if (c.getValue() != null) out.put(path, new Entry(path, Kind.BLOB, c.getValue()));
+        else if (out.containsKey(path) && out.get(path).kind() == Kind.BLOB) out.remove(path);
+      } else {
+        byDir.computeIfAbsent(path.substring(0, slash), k -> new TreeMap<>()).put(path.substring(slash + 1), c.getValue());
+      }
+    }
+    for (Map.Entry<String, TreeMap<String, String>> d : byDir.entrySet()) {
+      Entry existing = out.get(d.getKey());
+      String subId = existing != null && existing.kind() == Kind.TREE ? existing.id() : null;
+      Tree sub = apply(objects, subId, d.getValue());
+      if (sub.isEmpty()) {
+        if (subId != null) out.remove(d.getKey());
+      } else {
+        out.put(d.getKey(), new Entry(d.getKey(), Kind.TREE, objects.writeTree(sub)));
+      }
+    }
+    return new Tree(out);
+  }
+
+  // Blob id at path under rootId, reading only the trees along that path; null if absent.
+  public static String lookup(ObjectStore objects, String rootId, String path) throws IOException {
+    String treeId = rootId;
+    int start = 0;
+    while (treeId != null) {
+      int slash = path.indexOf('/', start);
+      Entry e = objects.readTree(treeId).get(slash < 0 ? path.substring(start) : path.substring(start, slash));
+      if (e == null) return null;
+      if (slash < 0) return e.kind() == Kind.BLOB ? e.id() : null;
+      if (e.kind() != Kind.TREE) return null;
+      treeId = e.id();
+      start = slash + 1;
+    }
+    return null;
+  }
+
+  public static Map<String, String> flatten(ObjectStore objects, String rootId) throws IOException {
+    TreeMap<String, String> out = new TreeMap<>();
+    flatten(objects, rootId, "", out);
+    return out;
+  }
+
+  private static void flatten(ObjectStore objects, String treeId, String prefix, Map<String, String> out) throws IOException {
+    for (Entry e : objects.readTree(treeId).entries.values()) {
+      if (e.kind() == Kind.BLOB) out.put(prefix + e.name(), e.id());
+      else flatten(objects, e.id(), prefix + e.name() + "/", out);
+    }
+  }
+
+  // Blob-level changes between two roots (either may be null). Subtrees with equal ids are
+  // skipped without being read.
+  public static List<Change> diff(ObjectStore objects, String oldRoot, String newRoot) throws IOException {
+    List<Change> out = new ArrayList<>();
+    diff(objects, oldRoot, newRoot, "", out);
+    return out;
+  }
+
+  private static void diff(ObjectStore objects, String oldId, String newId, String prefix, List<Change> out) throws IOException {
+    if (Objects.equals(oldId, newId)) return;
+    TreeMap<String, Entry> a = oldId == null ? EMPTY.entries : objects.readTree(oldId).entries;
+    TreeMap<String, Entry> b = newId == null ? EMPTY.entries : objects.readTree(newId).entries;
+    TreeMap<String, Boolean> names = new TreeMap<>();
+    for (String n : a.keySet()) names.put(n, Boolean.TRUE);
+    for (String n : b.keySet()) names.put(n, Boolean.TRUE);
+    for (String name : names.keySet()) {
+      Entry x = a.get(name);
+      Entry y = b.get(name);
+      if (x != null && y != null && x.kind() == y.kind() && x.id().equals(y.id())) continue;
+      String path = prefix + name;
+      String oldBlob = x != null && x.kind() == Kind.BLOB ? x.id() : null;
+      String newBlob = y != null && y.kind() == Kind.BLOB ? y.id() : null;
+      if (oldBlob != null || newBlob != null) out.add(new Change(path, oldBlob, newBlob));
+      String oldTree = x != null && x.kind() == Kind.TREE ? x.id() : null;
+      String newTree = y != null && y.kind() == Kind.TREE ? y.id() : null;
+      if (oldTree != null || newTree != null) diff(objects, oldTree, newTree, path + "/", out);
+    }
+  }
+}
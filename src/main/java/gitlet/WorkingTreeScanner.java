@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+// Compares the working tree against the expected path -> blob map (HEAD plus staged changes).
+// Each directory is a fork-join task; its files are checked in batches, trusting the index's
+// stat cache and hashing only files whose stat does not match. A directory task keeps at most
+// MAX_PENDING subtasks outstanding, so very wide directories do not queue their whole listing.
+// Results are returned only once the whole tree is scanned: status prints each section sorted and
+// every modification before any untracked file, so no line can be printed any earlier. Memory is
+// O(tracked paths): expected is the flattened HEAD plus staged changes, and seen records every
+// tracked path found so the ones left over can be reported deleted.
+final class WorkingTreeScanner {
+  static final String MODIFIED = "modified";
+  static final String DELETED = "deleted";
+
+  private static final int BATCH = 256;
+  private static final int MAX_PENDING = 64;
+
+  // notStaged maps path -> MODIFIED/DELETED; refreshed holds stats of clean files that had to be hashed.
+  record Result(SortedMap<String, String> notStaged, SortedSet<String> untracked, Map<String, StagingArea.Stat> refreshed) {}
+
+  private final Path repoRoot;
+  private final Map<String, String> expected;
+  private final StagingArea index;
+  private final ConcurrentSkipListMap<String, String> notStaged = new ConcurrentSkipListMap<>();
+  private final ConcurrentSkipListSet<String> untracked = new ConcurrentSkipListSet<>();
+  private final Map<String, StagingArea.Stat> refreshed = new ConcurrentHashMap<>();
+  private final Set<String> seen = ConcurrentHashMap.newKeySet();
+
+  WorkingTreeScanner(Path repoRoot, Map<String, String> expected, StagingArea index) {
+    this.repoRoot = repoRoot;
+    this.expected = expected;
+    this.index = index;
+  }
+
+  Result scan() throws IOException {
+    return scan(Runtime.getRuntime().availableProcessors());
+  }
+
+  Result scan(int parallelism) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      pool.invoke(new DirTask(repoRoot, ""));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      pool.shutdown();
+    }
+    for (String path : expected.keySet()) {
+      if (!seen.contains(path)) notStaged.put(path, DELETED);
+    }
+    // The skip lists are already sorted and no task touches them any more, so they are handed out
+    // as they are rather than copied.
+    return new Result(Collections.unmodifiableSortedMap(notStaged), Collections.unmodifiableSortedSet(untracked), refreshed);
+  }
+
+  @SuppressWarnings("serial") // Fork/join tasks are never serialized.
+  private final class DirTask extends RecursiveAction {
+    private final Path dir;
+    private final String prefix;
+
+    DirTask(Path dir, String prefix) {
+      this.dir = dir;
+      this.prefix = prefix;
+    }
+
+    @Override
+    protected void compute() {
+      Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+      List<Path> batch = new ArrayList<>(BATCH);
+      try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+        for (Path p : entries) {
+          String name = p.getFileName().toString();
+          if (prefix.isEmpty() && name.equals(Constants.dotDirName)) continue;
+          BasicFileAttributes a = Files.readAttributes(p, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+          if (a.isDirectory()) {
+            submit(pending, new DirTask(p, prefix + name + "/"));
+          } else if (a.isRegularFile()) {
+            batch.add(p);
+            if (batch.size() == BATCH) {
+              submit(pending, new FileBatch(batch, prefix));
+              batch = new ArrayList<>(BATCH);
+            }
+          }
+        }
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      if (!batch.isEmpty()) new FileBatch(batch, prefix).compute();
+      while (!pending.isEmpty()) pending.removeFirst().join();
+    }
+
+    private void submit(Deque<ForkJoinTask<?>> pending, ForkJoinTask<?> task) {
+      if (pending.size() >= MAX_PENDING) pending.removeFirst().join();
+      pending.addLast(task.fork());
+    }
+  }
+
+  @SuppressWarnings("serial")
+  private final class FileBatch extends RecursiveAction {
+    private final List<Path> files;
+    private final String prefix;
+
+    FileBatch(List<Path> files, String prefix) {
+      this.files = files;
+      this.prefix = prefix;
+    }
+
+    @Override
+    protected void compute() {
+      try {
+        for (Path file : files) check(file, prefix + file.getFileName());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  private void check(Path file, String path) throws IOException {
+    String want = expected.get(path);
+    if (want == null) {
+      untracked.add(path);
+      return;
+    }
+    seen.add(path);
+    StagingArea.Stat stat = StagingArea.Stat.of(file);
+    String cached = index.cachedBlob(path, stat);
+    String actual = cached != null ? cached : Hashing.sha1(file);
+    if (!actual.equals(want)) notStaged.put(path, MODIFIED);
+    else if (cached == null) refreshed.put(path, stat.withBlob(actual));
+  }
+}
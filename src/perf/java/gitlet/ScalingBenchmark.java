@@ -0,0 +1,254 @@
+package gitlet;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+
+// End-to-end scaling report. For each repository size it generates a SyntheticRepo and runs each
+// command `reps` times on a fresh Repository, as one CLI invocation would. Each run reports
+// wall-clock latency, heap allocated by all threads and bytes read and written through system
+// calls. Setup work such as editing files before `add` happens outside the measurement. The
+// report is printed and also written as Markdown and CSV.
+final class ScalingBenchmark {
+  record Sample(long nanos, long allocated, long read, long written) {}
+
+  record Row(int files, String op, Sample median, Sample worst) {}
+
+  // Untimed work before and after each measured run, and the run itself.
+  private interface Op {
+    default void before(SyntheticRepo repo) throws IOException {}
+
+    void run(Repository repo) throws IOException;
+
+    default void after(SyntheticRepo repo) throws IOException {}
+  }
+
+  private static final Map<String, Op> OPS = new LinkedHashMap<>();
+
+  static {
+    OPS.put("add", new Op() {
+      public void before(SyntheticRepo r) throws IOException { r.churn(); }
+      public void run(Repository repo) throws IOException { repo.add(List.of("-A")); }
+      public void after(SyntheticRepo r) throws IOException { r.commitAll("bench add"); }
+    });
+    OPS.put("commit", new Op() {
+      public void before(SyntheticRepo r) throws IOException {
+        r.churn();
+        SyntheticRepo.quietly(() -> new Repository(r.root()).add(List.of("-A")));
+      }
+      public void run(Repository repo) throws IOException { repo.commit("bench commit"); }
+    });
+    OPS.put("status (clean)", repo -> repo.status());
+    OPS.put("status (dirty)", new Op() {
+      public void before(SyntheticRepo r) throws IOException { r.churn(); }
+      public void run(Repository repo) throws IOException { repo.status(); }
+      public void after(SyntheticRepo r) throws IOException { r.commitAll("bench status"); }
+    });
+    OPS.put("log", repo -> repo.log(-1, null));
+    OPS.put("checkout", new Op() {
+      private boolean onSide;
+
+      public void before(SyntheticRepo r) throws IOException {
+        if (!Files.exists(Constants.branchRef(r.root(), "bench-side"))) {
+          SyntheticRepo.quietly(() -> {
+            new Repository(r.root()).branch("bench-side");
+            new Repository(r.root()).checkoutBranch("bench-side");
+          });
+          r.churn();
+          r.commitAll("bench side");
+          SyntheticRepo.quietly(() -> new Repository(r.root()).checkoutBranch(Constants.defaultBranch));
+          onSide = false;
+        }
+      }
+
+      public void run(Repository repo) throws IOException {
+        repo.checkoutBranch(onSide ? Constants.defaultBranch : "bench-side");
+        onSide = !onSide;
+      }
+    });
+  }
+
+  private final Meter meter = new Meter();
+
+  public static void main(String[] args) throws Exception {
+    Map<String, String> opts = SyntheticRepo.options(args, 0);
+    int[] sizes = Arrays.stream(opts.getOrDefault("sizes", "1000,10000,50000").split(",")).mapToInt(Integer::parseInt).toArray();
+    int reps = Integer.parseInt(opts.getOrDefault("reps", "5"));
+    Path out = Path.of(opts.getOrDefault("out", "build/reports/scaling"));
+    Path work = opts.containsKey("work") ? Path.of(opts.get("work")) : Files.createTempDirectory("gitlet-scaling");
+    SyntheticRepo.Shape base = SyntheticRepo.Shape.defaults(sizes[0]).with(opts);
+
+    ScalingBenchmark bench = new ScalingBenchmark();
+    List<Row> rows = new ArrayList<>();
+    try {
+      for (int files : sizes) {
+        SyntheticRepo.Shape shape = base.withFiles(files);
+        SyntheticRepo repo = new SyntheticRepo(work.resolve("repo-" + files), shape);
+        long t0 = System.nanoTime();
+        repo.generate();
+        System.out.printf("Generated %s in %d ms%n", shape, (System.nanoTime() - t0) / 1_000_000);
+        for (Map.Entry<String, Op> e : OPS.entrySet()) rows.add(bench.measure(repo, files, e.getKey(), e.getValue(), reps));
+      }
+    } finally {
+      if (!opts.containsKey("work")) delete(work);
+    }
+
+    String report = report(base, reps, rows);
+    System.out.println();
+    System.out.print(report);
+    Files.createDirectories(out);
+    Files.writeString(out.resolve("scaling.md"), report, StandardCharsets.UTF_8);
+    Files.writeString(out.resolve("scaling.csv"), csv(rows), StandardCharsets.UTF_8);
+    System.out.println("Report written to " + out.toAbsolutePath());
+  }
+
+  // One untimed warm-up, then reps measured runs. Reports the median and the slowest run.
+  private Row measure(SyntheticRepo repo, int files, String name, Op op, int reps) throws IOException {
+    List<Sample> samples = new ArrayList<>();
+    for (int i = 0; i <= reps; i++) {
+      op.before(repo);
+      Sample s = meter.sample(() -> op.run(new Repository(repo.root())));
+      op.after(repo);
+      if (i > 0) samples.add(s);
+    }
+    samples.sort(Comparator.comparingLong(Sample::nanos));
+    return new Row(files, name, median(samples), samples.get(samples.size() - 1));
+  }
+
+  private static Sample median(List<Sample> sorted) {
+    long[] alloc = sorted.stream().mapToLong(Sample::allocated).sorted().toArray();
+    long[] read = sorted.stream().mapToLong(Sample::read).sorted().toArray();
+    long[] written = sorted.stream().mapToLong(Sample::written).sorted().toArray();
+    int m = sorted.size() / 2;
+    return new Sample(sorted.get(m).nanos(), alloc[m], read[m], written[m]);
+  }
+
+  private static String report(SyntheticRepo.Shape base, int reps, List<Row> rows) {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# gitlet scaling report\n\n");
+    sb.append("Shape: ").append(base.toString().replaceFirst("^\\d+ files, ", "")).append("\n");
+    sb.append("Runs per cell: ").append(reps).append(", medians except `max ms`. `growth` is median latency relative to the smallest size.\n\n");
+    sb.append("| files | command | latency ms | max ms | growth | alloc MB | read MB | written MB |\n");
+    sb.append("|---:|---|---:|---:|---:|---:|---:|---:|\n");
+    Map<String, Long> smallest = new LinkedHashMap<>();
+    for (Row r : rows) {
+      long base0 = smallest.computeIfAbsent(r.op(), k -> Math.max(1, r.median().nanos()));
+      sb.append(String.format("| %d | %s | %.1f | %.1f | %.1fx | %.1f | %.2f | %.2f |%n", r.files(), r.op(),
+          r.median().nanos() / 1e6, r.worst().nanos() / 1e6, (double) r.median().nanos() / base0,
+          mb(r.median().allocated()), mb(r.median().read()), mb(r.median().written())));
+    }
+    return sb.toString();
+  }
+
+  private static String csv(List<Row> rows) {
+    StringBuilder sb = new StringBuilder("files,command,latency_ns,max_latency_ns,allocated_bytes,read_bytes,written_bytes\n");
+    for (Row r : rows) {
+      sb.append(r.files()).append(',').append(r.op()).append(',').append(r.median().nanos()).append(',')
+          .append(r.worst().nanos()).append(',').append(r.median().allocated()).append(',')
+          .append(r.median().read()).append(',').append(r.median().written()).append('\n');
+    }
+    return sb.toString();
+  }
+
+  private static double mb(long bytes) {
+    return bytes < 0 ? Double.NaN : bytes / (1024.0 * 1024.0);
+  }
+
+  private static void delete(Path dir) throws IOException {
+    if (!Files.exists(dir)) return;
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path p : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) Files.delete(p);
+    }
+  }
+
+  // Heap allocation across all threads, including the pools commands start and stop, is the
+  // growth in heap use plus whatever collections freed meanwhile; collections are seen through
+  // GC notifications. I/O comes from rchar/wchar in /proc/self/io, so it counts bytes passed
+  // through read and write calls, whether or not they reached the disk. Without /proc it is -1.
+  private static final class Meter {
+    private final AtomicLong freed = new AtomicLong();
+    private final AtomicLong reported = new AtomicLong();
+    private final long baseCollections;
+
+    Meter() {
+      baseCollections = collections();
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+        if (gc instanceof NotificationEmitter emitter) emitter.addNotificationListener(this::onGc, null, null);
+      }
+    }
+
+    private void onGc(Notification n, Object handback) {
+      if (!n.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) return;
+      var info = GarbageCollectionNotificationInfo.from((CompositeData) n.getUserData()).getGcInfo();
+      freed.addAndGet(used(info.getMemoryUsageBeforeGc()) - used(info.getMemoryUsageAfterGc()));
+      reported.incrementAndGet();
+    }
+
+    Sample sample(SyntheticRepo.IoAction action) throws IOException {
+      long[] io0 = io();
+      settle();
+      long heap0 = heapUsed();
+      long freed0 = freed.get();
+      long t0 = System.nanoTime();
+      SyntheticRepo.quietly(action);
+      long nanos = System.nanoTime() - t0;
+      settle();
+      long allocated = Math.max(0, heapUsed() - heap0 + freed.get() - freed0);
+      long[] io1 = io();
+      return new Sample(nanos, allocated, io0 == null ? -1 : io1[0] - io0[0], io0 == null ? -1 : io1[1] - io0[1]);
+    }
+
+    // Waits (briefly) until every collection so far has been reported, since notifications
+    // arrive asynchronously.
+    private void settle() {
+      long deadline = System.nanoTime() + 1_000_000_000L;
+      while (reported.get() < collections() - baseCollections && System.nanoTime() < deadline) Thread.onSpinWait();
+    }
+
+    private static long collections() {
+      long n = 0;
+      for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) n += Math.max(0, gc.getCollectionCount());
+      return n;
+    }
+
+    private static long heapUsed() {
+      return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long used(Map<String, MemoryUsage> pools) {
+      long n = 0;
+      for (MemoryUsage u : pools.values()) n += u.getUsed();
+      return n;
+    }
+
+    private static long[] io() {
+      try {
+        long[] out = {-1, -1};
+        for (String line : Files.readAllLines(Path.of("/proc/self/io"))) {
+          if (line.startsWith("rchar:")) out[0] = Long.parseLong(line.substring(6).trim());
+          else if (line.startsWith("wchar:")) out[1] = Long.parseLong(line.substring(6).trim());
+        }
+        return out[0] < 0 || out[1] < 0 ? null : out;
+      } catch (IOException | RuntimeException e) {
+        return null;
+      }
+    }
+  }
+}
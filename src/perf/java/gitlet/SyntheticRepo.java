@@ -0,0 +1,183 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Builds a repository of a given shape through the Repository API: files spread over nested
+// directories, sizes drawn from a log-normal distribution, then a history in which each commit
+// rewrites a fraction (the churn) of the files. Everything is derived from the seed, so one shape
+// always produces the same files and the same commit ids.
+final class SyntheticRepo {
+  // files: working-tree files; depth: deepest directory nesting; fanout: subdirectories per level;
+  // medianBytes/sizeSigma: log-normal file sizes, capped at maxBytes; commits: history length;
+  // churn: fraction of files rewritten by each commit after the first.
+  record Shape(int files, int depth, int fanout, long medianBytes, double sizeSigma, long maxBytes,
+               int commits, double churn, long seed) {
+    static Shape defaults(int files) {
+      return new Shape(files, 4, 8, 4096, 1.5, 4L << 20, 10, 0.02, 42);
+    }
+
+    Shape withFiles(int n) {
+      return new Shape(n, depth, fanout, medianBytes, sizeSigma, maxBytes, commits, churn, seed);
+    }
+
+    // This shape with any of --depth, --fanout, --median, --sigma, --max, --commits, --churn and
+    // --seed from opts applied.
+    Shape with(Map<String, String> opts) {
+      return new Shape(files,
+          Integer.parseInt(opts.getOrDefault("depth", String.valueOf(depth))),
+          Integer.parseInt(opts.getOrDefault("fanout", String.valueOf(fanout))),
+          Long.parseLong(opts.getOrDefault("median", String.valueOf(medianBytes))),
+          Double.parseDouble(opts.getOrDefault("sigma", String.valueOf(sizeSigma))),
+          Long.parseLong(opts.getOrDefault("max", String.valueOf(maxBytes))),
+          Integer.parseInt(opts.getOrDefault("commits", String.valueOf(commits))),
+          Double.parseDouble(opts.getOrDefault("churn", String.valueOf(churn))),
+          Long.parseLong(opts.getOrDefault("seed", String.valueOf(seed))));
+    }
+
+    @Override
+    public String toString() {
+      return String.format("%d files, depth %d, fanout %d, median %d B (sigma %.1f, max %d B), %d commits, churn %.1f%%",
+          files, depth, fanout, medianBytes, sizeSigma, maxBytes, commits, churn * 100);
+    }
+  }
+
+  private static final String[] WORDS = {
+      "commit", "tree", "blob", "index", "branch", "merge", "object", "hash", "delta", "pack",
+      "ref", "head", "stage", "file", "path", "status", "log", "diff", "chunk", "store",
+  };
+
+  private final Path root;
+  private final Shape shape;
+  private final Random random;
+  private final List<String> paths = new ArrayList<>();
+  private long bytesWritten;
+
+  SyntheticRepo(Path root, Shape shape) {
+    this.root = root.toAbsolutePath().normalize();
+    this.shape = shape;
+    this.random = new Random(shape.seed());
+  }
+
+  Path root() {
+    return root;
+  }
+
+  List<String> paths() {
+    return paths;
+  }
+
+  long bytesWritten() {
+    return bytesWritten;
+  }
+
+  // Creates the repository and its whole history. Command output is discarded.
+  void generate() throws IOException {
+    Files.createDirectories(root);
+    quietly(() -> new Repository(root).init());
+    for (int i = 0; i < shape.files(); i++) {
+      String path = pathFor(i);
+      paths.add(path);
+      writeFile(path);
+    }
+    commitAll("initial import");
+    for (int c = 1; c < shape.commits(); c++) {
+      churn();
+      commitAll("change " + c);
+    }
+  }
+
+  // Rewrites churn * files randomly chosen files with new content and returns their paths.
+  List<String> churn() throws IOException {
+    int n = Math.max(1, (int) Math.round(shape.files() * shape.churn()));
+    Map<String, Boolean> picked = new LinkedHashMap<>();
+    while (picked.size() < Math.min(n, paths.size())) picked.put(paths.get(random.nextInt(paths.size())), true);
+    for (String p : picked.keySet()) writeFile(p);
+    return new ArrayList<>(picked.keySet());
+  }
+
+  void commitAll(String message) throws IOException {
+    quietly(() -> {
+      Repository repo = new Repository(root);
+      repo.add(List.of("-A"));
+      repo.commit(message);
+    });
+  }
+
+  // file<i>.txt under up to `depth` levels of d<k> directories.
+  private String pathFor(int i) {
+    StringBuilder sb = new StringBuilder();
+    int levels = shape.depth() == 0 ? 0 : random.nextInt(shape.depth() + 1);
+    for (int l = 0; l < levels; l++) sb.append('d').append(random.nextInt(shape.fanout())).append('/');
+    return sb.append("file").append(i).append(".txt").toString();
+  }
+
+  // Lines of random words, so content deflates about as well as source code.
+  private void writeFile(String path) throws IOException {
+    long size = Math.min(shape.maxBytes(), Math.max(1,
+        Math.round(shape.medianBytes() * Math.exp(shape.sizeSigma() * random.nextGaussian()))));
+    StringBuilder sb = new StringBuilder((int) size + 64);
+    while (sb.length() < size) {
+      int words = 3 + random.nextInt(10);
+      for (int w = 0; w < words; w++) sb.append(WORDS[random.nextInt(WORDS.length)]).append(w + 1 < words ? ' ' : '\n');
+    }
+    sb.setLength((int) size);
+    byte[] data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+    Path file = root.resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, data);
+    bytesWritten += data.length;
+  }
+
+  @FunctionalInterface
+  interface IoAction {
+    void run() throws IOException;
+  }
+
+  // Runs action with System.out discarded, since every command prints.
+  static void quietly(IoAction action) throws IOException {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    try {
+      action.run();
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  // "--key=value" arguments as a map; anything else is an error.
+  static Map<String, String> options(String[] args, int from) {
+    Map<String, String> opts = new LinkedHashMap<>();
+    for (int i = from; i < args.length; i++) {
+      int eq = args[i].indexOf('=');
+      if (!args[i].startsWith("--") || eq < 0) throw new IllegalArgumentException("expected --key=value, got " + args[i]);
+      opts.put(args[i].substring(2, eq), args[i].substring(eq + 1));
+    }
+    return opts;
+  }
+
+  // Usage: SyntheticRepo <dir> [--files=n] [--depth=n] [--fanout=n] [--median=bytes] [--sigma=x]
+  //        [--max=bytes] [--commits=n] [--churn=fraction] [--seed=n]
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || Files.exists(Path.of(args[0]))) {
+      System.err.println("usage: SyntheticRepo <new dir> [--files=n] [--depth=n] [--fanout=n] [--median=bytes] "
+          + "[--sigma=x] [--max=bytes] [--commits=n] [--churn=fraction] [--seed=n]");
+      System.exit(2);
+    }
+    Map<String, String> opts = options(args, 1);
+    Shape shape = Shape.defaults(Integer.parseInt(opts.getOrDefault("files", "10000"))).with(opts);
+    SyntheticRepo repo = new SyntheticRepo(Path.of(args[0]), shape);
+    long t0 = System.nanoTime();
+    repo.generate();
+    System.out.printf("Generated %s in %s (%d ms)%n", shape, repo.root(), (System.nanoTime() - t0) / 1_000_000);
+  }
+}
@@ -0,0 +1,119 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CatalogTest {
+  @TempDir Path tmp;
+
+  private static String id(int n) {
+    return String.format("%040x", n);
+  }
+
+  private Catalog newCatalog() throws Exception {
+    Catalog c = new Catalog(tmp.resolve("catalog"), tmp.resolve("catalog.idx"));
+    c.create();
+    return c;
+  }
+
+  @Test
+  void tokensAreLowercasedWordRuns() {
+    assertEquals(Set.of("fix", "the", "parser", "2"), Catalog.tokens("Fix the  parser (#2) THE"));
+    assertTrue(Catalog.tokens("--- !").isEmpty());
+  }
+
+  @Test
+  void recordsRoundTripAndScanInAppendOrder() throws Exception {
+    Catalog c = newCatalog();
+    c.append(new Commit.Header(id(1), "initial commit", 10L, List.of()));
+    c.append(new Commit.Header(id(2), "merge: a b", 20L, List.of(id(1), id(3))));
+
+    List<Commit.Header> seen = new ArrayList<>();
+    List<Long> offsets = new ArrayList<>();
+    c.scan(0, (off, h) -> { offsets.add(off); seen.add(h); });
+    assertEquals(2, seen.size());
+    assertEquals(new Commit.Header(id(2), "merge: a b", 20L, List.of(id(1), id(3))), seen.get(1));
+    assertEquals(0L, offsets.get(0).longValue());
+    assertEquals(Catalog.format(seen.get(0)).length(), offsets.get(1).longValue());
+  }
+
+  @Test
+  void findUsesIndexAndScansTheUnindexedTail() throws Exception {
+    Catalog c = newCatalog();
+    c.append(new Commit.Header(id(1), "add parser", 1L, List.of()));
+    c.append(new Commit.Header(id(2), "add parser tests", 2L, List.of()));
+    c.reindex();
+    assertTrue(Files.readString(tmp.resolve("catalog.idx")).startsWith(Catalog.INDEX_HEADER));
+    c.append(new Commit.Header(id(3), "add parser", 3L, List.of()));
+
+    assertEquals(List.of(id(1), id(3)), c.find("add parser"));
+    assertEquals(List.of(id(2)), c.find("add parser tests"));
+    assertEquals(List.of(), c.find("Add Parser"));
+    assertEquals(List.of(), c.find("remove parser"));
+  }
+
+  @Test
+  void largeTailIsReindexedOnFind() throws Exception {
+    Catalog c = newCatalog();
+    int n = 2000;
+    for (int i = 0; i < n; i++) c.append(new Commit.Header(id(i), "change number " + i + " of the catalog", i, List.of()));
+    assertFalse(Files.exists(tmp.resolve("catalog.idx")));
+
+    assertEquals(List.of(id(1234)), c.find("change number 1234 of the catalog"));
+    String header = Files.readString(tmp.resolve("catalog.idx")).lines().findFirst().orElseThrow();
+    assertEquals(Catalog.INDEX_HEADER + Files.size(tmp.resolve("catalog")), header);
+  }
+
+  @Test
+  void messagesWithoutTokensFallBackToAScan() throws Exception {
+    Catalog c = newCatalog();
+    c.append(new Commit.Header(id(1), "...", 1L, List.of()));
+    c.append(new Commit.Header(id(2), "..", 2L, List.of()));
+    assertEquals(List.of(id(1)), c.find("..."));
+  }
+
+  @Test
+  void retainRewritesAndInvalidatesTheIndex() throws Exception {
+    Catalog c = newCatalog();
+    c.append(new Commit.Header(id(1), "keep me", 1L, List.of()));
+    c.append(new Commit.Header(id(2), "drop me", 2L, List.of()));
+    c.append(new Commit.Header(id(3), "keep me", 3L, List.of()));
+    c.reindex();
+
+    c.retain(i -> !i.equals(id(2)));
+    assertEquals(List.of(id(1), id(3)), c.find("keep me"));
+    assertEquals(List.of(), c.find("drop me"));
+  }
+
+  @Test
+  void appendWaitsForARewriteToReleaseTheLock() throws Exception {
+    Catalog c = newCatalog();
+    c.append(new Commit.Header(id(1), "first", 1L, List.of()));
+    Thread appender;
+    try (LockFile lock = LockFile.acquire(tmp.resolve("catalog"))) {
+      appender = new Thread(() -> {
+        try {
+          c.append(new Commit.Header(id(2), "second", 2L, List.of()));
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      appender.start();
+      Thread.sleep(50);
+      assertTrue(appender.isAlive());
+      lock.write(Catalog.format(new Commit.Header(id(1), "first", 1L, List.of())));
+      lock.commit();
+    }
+    appender.join();
+    assertEquals(List.of(id(2)), c.find("second"));
+    assertEquals(List.of(id(1)), c.find("first"));
+  }
+}
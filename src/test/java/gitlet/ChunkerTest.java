@@ -0,0 +1,82 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ChunkerTest {
+  private static List<String> chunks(byte[] data) throws IOException {
+    List<String> out = new ArrayList<>();
+    Chunker.split(new ByteArrayInputStream(data), (buf, off, len) -> {
+      byte[] c = new byte[len];
+      System.arraycopy(buf, off, c, 0, len);
+      out.add(Hashing.sha1(c) + ":" + len);
+    });
+    return out;
+  }
+
+  @Test
+  void chunkSizesStayWithinBounds() throws Exception {
+    byte[] data = new byte[4 << 20];
+    new Random(1).nextBytes(data);
+    List<String> chunks = chunks(data);
+    long total = 0;
+    for (int i = 0; i < chunks.size(); i++) {
+      int len = Integer.parseInt(chunks.get(i).split(":")[1]);
+      assertTrue(len <= Chunker.MAX_SIZE);
+      if (i < chunks.size() - 1) assertTrue(len >= Chunker.MIN_SIZE);
+      total += len;
+    }
+    assertEquals(data.length, total);
+    double avg = (double) data.length / chunks.size();
+    assertTrue(avg > Chunker.AVG_SIZE / 2.0 && avg < Chunker.AVG_SIZE * 2.0, "average " + avg);
+  }
+
+  @Test
+  void boundariesDoNotDependOnHowTheInputIsRead() throws Exception {
+    byte[] data = new byte[1 << 20];
+    new Random(2).nextBytes(data);
+    List<String> trickled = new ArrayList<>();
+    InputStream slow = new ByteArrayInputStream(data) {
+      @Override
+      public synchronized int read(byte[] b, int off, int len) {
+        return super.read(b, off, Math.min(len, 1000));
+      }
+    };
+    Chunker.split(slow, (buf, off, len) -> {
+      byte[] c = new byte[len];
+      System.arraycopy(buf, off, c, 0, len);
+      trickled.add(Hashing.sha1(c) + ":" + len);
+    });
+    assertEquals(chunks(data), trickled);
+  }
+
+  @Test
+  void editInTheMiddleKeepsMostChunks() throws Exception {
+    byte[] data = new byte[2 << 20];
+    new Random(3).nextBytes(data);
+    byte[] edited = data.clone();
+    for (int i = 0; i < 100; i++) edited[data.length / 2 + i] ^= 0x5a;
+    List<String> before = chunks(data);
+    Set<String> after = new HashSet<>(chunks(edited));
+    int shared = 0;
+    for (String c : before) if (after.contains(c)) shared++;
+    assertTrue(shared >= before.size() - 2, shared + " of " + before.size());
+  }
+
+  @Test
+  void manifestRoundTrips() throws Exception {
+    List<Chunker.Chunk> chunks = List.of(new Chunker.Chunk("0".repeat(40), 17), new Chunker.Chunk("a".repeat(40), 65536));
+    assertEquals(chunks, Chunker.parseManifest("x", Chunker.manifest(chunks)));
+    assertThrows(IOException.class, () -> Chunker.parseManifest("x", "chunk\tzz\t1\n".getBytes()));
+  }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CommitGraphTest {
+  @TempDir Path tmp;
+
+  private static ObjectId id(String s) { return Hashing.sha1Id(s.getBytes()); }
+
+  private static CommitGraph.Node node(String name, long ts, String... parents) {
+    List<ObjectId> ps = new ArrayList<>();
+    for (String p : parents) ps.add(id(p));
+    return new CommitGraph.Node(id(name), ps, ts);
+  }
+
+  @Test
+  void writesSortedGraphWithGenerations() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(
+        node("root", 1),
+        node("a", 2, "root"),
+        node("b", 3, "root"),
+        node("c", 4, "a"),
+        node("merge", 5, "c", "b")));
+    CommitGraph g = CommitGraph.load(file);
+
+    assertEquals(5, g.count());
+    for (int i = 1; i < g.count(); i++) assertTrue(g.id(i - 1).compareTo(g.id(i)) < 0);
+    assertEquals(1, g.generation(g.find(id("root"))));
+    assertEquals(3, g.generation(g.find(id("c"))));
+    assertEquals(4, g.generation(g.find(id("merge"))));
+    assertEquals(5, g.timestamp(g.find(id("merge"))));
+    int[] parents = g.parents(g.find(id("merge")));
+    assertEquals(id("c"), g.id(parents[0]));
+    assertEquals(id("b"), g.id(parents[1]));
+    assertEquals(-1, g.find(id("missing")));
+  }
+
+  @Test
+  void ancestryUsesParentPositions() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(
+        node("root", 1), node("a", 2, "root"), node("b", 3, "root"), node("tip", 4, "a")));
+    CommitGraph g = CommitGraph.load(file);
+    int root = g.find(id("root"));
+    int b = g.find(id("b"));
+    int tip = g.find(id("tip"));
+
+    assertTrue(g.isAncestor(root, tip));
+    assertTrue(g.isAncestor(tip, tip));
+    assertFalse(g.isAncestor(b, tip));
+    assertFalse(g.isAncestor(tip, root));
+  }
+
+  @Test
+  void mergeBaseFindsLatestCommonAncestor() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    // root - a - b - c (main)      x: merged main at b into side
+    //          \- s1 - x - s2 (side)
+    CommitGraph.write(file, List.of(
+        node("root", 1), node("a", 2, "root"), node("b", 3, "a"), node("c", 4, "b"),
+        node("s1", 5, "a"), node("x", 6, "s1", "b"), node("s2", 7, "x"), node("lone", 8)));
+    CommitGraph g = CommitGraph.load(file);
+
+    assertEquals(g.find(id("b")), g.mergeBase(g.find(id("c")), g.find(id("s2"))));
+    assertEquals(g.find(id("a")), g.mergeBase(g.find(id("b")), g.find(id("s1"))));
+    assertEquals(g.find(id("b")), g.mergeBase(g.find(id("b")), g.find(id("c"))));
+    assertEquals(g.find(id("c")), g.mergeBase(g.find(id("c")), g.find(id("c"))));
+    assertEquals(-1, g.mergeBase(g.find(id("c")), g.find(id("lone"))));
+  }
+
+  @Test
+  void keepsOctopusParentsInOrder() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(
+        node("p1", 1), node("p2", 1), node("p3", 1), node("p4", 1),
+        node("octo", 2, "p1", "p2", "p3", "p4")));
+    CommitGraph g = CommitGraph.load(file);
+    List<ObjectId> parents = new ArrayList<>();
+    for (int p : g.parents(g.find(id("octo")))) parents.add(g.id(p));
+    assertEquals(Arrays.asList(id("p1"), id("p2"), id("p3"), id("p4")), parents);
+  }
+
+  @Test
+  void missingFileIsAnEmptyGraph() throws Exception {
+    CommitGraph g = CommitGraph.load(tmp.resolve("nope"));
+    assertEquals(0, g.count());
+    assertEquals(-1, g.find(id("x")));
+  }
+
+  @Test
+  void ignoresATailLeftOverFromAnotherGraph() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(node("root", 1)));
+    byte[] header = new byte[28];
+    System.arraycopy(CommitGraph.TAIL_MAGIC, 0, header, 0, 4);
+    header[7] = (byte) CommitGraph.VERSION;
+    Files.write(CommitGraph.tailFile(file), header);
+    assertEquals(1, CommitGraph.load(file).count());
+  }
+
+  @Test
+  void addsNodesAfterTheGraphInParentOrder() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(node("root", 1)));
+    CommitGraph g = CommitGraph.load(file).with(List.of(node("b", 3, "a"), node("a", 2, "root")));
+    assertEquals(3, g.count());
+    int a = g.find(id("a"));
+    int b = g.find(id("b"));
+    assertTrue(a < b);
+    assertEquals(3, g.generation(b));
+    assertTrue(g.isAncestor(g.find(id("root")), b));
+  }
+
+  @Test
+  void refusesToAddANodeWhoseParentIsUnknown() throws Exception {
+    Path file = tmp.resolve("commit-graph");
+    CommitGraph.write(file, List.of(node("root", 1)));
+    CommitGraph g = CommitGraph.load(file);
+    assertThrows(IllegalArgumentException.class, () -> g.with(List.of(node("b", 3, "a"))));
+  }
+}
@@ -28,6 +28,40 @@ public class CommitTest {
     assertArrayEquals(bytes, c2.serialize());
   }
 
+  @Test
+  void treeCommitRoundTripsAndNeedsStoreForFiles() {
+    Commit c1 = Commit.create("m", List.of("p"), "treeid", 7L);
+    Commit c2 = Commit.deserialize(c1.serialize());
+    assertEquals("treeid", c2.getTreeId());
+    assertEquals(c1.getId(), c2.getId());
+    assertEquals(List.of("p"), c2.getParents());
+    assertThrows(IllegalStateException.class, c2::getTrackedFiles);
+    assertNull(Commit.create("m", List.of(), Map.of(), 1L).getTreeId());
+  }
+
+  @Test
+  void readHeaderStopsBeforeFileLines() throws Exception {
+    Commit c = Commit.create("msg", List.of("p1", "p2"), Map.of("a", "A"), 99L);
+    byte[] withJunk = (new String(c.serialize(), StandardCharsets.UTF_8) + "not\ta valid line\n").getBytes(StandardCharsets.UTF_8);
+    Commit.Header h = Commit.readHeader(c.getId(), new java.io.ByteArrayInputStream(withJunk));
+    assertEquals(c.header(), h);
+    assertEquals(List.of("p1", "p2"), h.parents());
+  }
+
+  @Test
+  void trustedParseKeepsIdAndDecodesFilesLazily() {
+    Commit c = Commit.create("m", List.of("p"), Map.of("dir/a b.txt", "A"), 5L);
+    Commit parsed = Commit.parse("known-id", c.serialize(), null);
+    assertEquals("known-id", parsed.getId());
+    assertEquals(List.of("p"), parsed.getParents());
+    assertEquals(Map.of("dir/a b.txt", "A"), parsed.getTrackedFiles());
+
+    byte[] broken = "commit\nmessage\tm\ntimestamp\t1\nfile\tno-blob-column\n".getBytes(StandardCharsets.UTF_8);
+    Commit lazy = Commit.parse("x", broken, null);
+    assertEquals("m", lazy.getMessage());
+    assertThrows(IllegalArgumentException.class, lazy::getTrackedFiles);
+  }
+
   @Test
   void deterministicIdForSamePayload() {
     String msg = "commit";
@@ -0,0 +1,106 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DaemonTest {
+  @TempDir Path tmp;
+
+  private record Reply(int code, String out, String err) {}
+
+  private Reply run(Path socket, Path cwd, String... args) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+    int code = DaemonClient.forward(socket, cwd, args, out, err);
+    return new Reply(code, out.toString(StandardCharsets.UTF_8), err.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void forwardsCommandsAndSeesChangesMadeOutsideTheDaemon() throws Exception {
+    Path socket = tmp.resolve("d.sock");
+    Path root = tmp.resolve("repo");
+    Files.createDirectories(root);
+    assertEquals(-1, run(socket, root, "status").code());
+
+    try (Daemon daemon = new Daemon(socket, Duration.ofMinutes(1))) {
+      CompletableFuture<Void> served = CompletableFuture.runAsync(() -> {
+        try {
+          daemon.run();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+
+      assertTrue(run(socket, root, "init").out().startsWith("Initialized empty repository"));
+      Files.writeString(root.resolve("a.txt"), "a");
+      assertEquals(0, run(socket, root, "add", "a.txt").code());
+      assertEquals(0, run(socket, root, "commit", "first").code());
+
+      // A second writer outside the daemon: its index and branch updates must be picked up.
+      Files.writeString(root.resolve("b.txt"), "b");
+      Repository outside = new Repository(root);
+      outside.add("b.txt");
+      outside.branch("side");
+      String status = run(socket, root, "status").out();
+      assertTrue(status.contains("side\n"), status);
+      assertTrue(status.contains("=== Staged Files ===\nb.txt\n"), status);
+
+      Reply failed = run(socket, root, "gc", "--prune=bogus");
+      assertEquals(1, failed.code());
+      assertTrue(failed.err().contains("--prune"), failed.err());
+      assertEquals(0, run(socket, root, "commit", "second").code());
+      assertTrue(run(socket, root, "log").out().contains("second"));
+
+      assertThrows(Exception.class, () -> new Daemon(socket, Duration.ofMinutes(1)));
+      assertFalse(served.isDone());
+    }
+    assertFalse(Files.exists(socket));
+  }
+
+  @Test
+  void refusesASocketDirectoryOthersCanReach() throws Exception {
+    Path dir = tmp.resolve("shared");
+    Files.createDirectories(dir);
+    Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwxr-xr-x"));
+    Path socket = dir.resolve("d.sock");
+
+    IOException e = assertThrows(IOException.class, () -> new Daemon(socket, Duration.ofMinutes(1)));
+    assertTrue(e.getMessage().contains("0700"), e.getMessage());
+    assertFalse(Files.exists(socket));
+    assertThrows(IOException.class, () -> run(socket, tmp, "status"));
+
+    Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+    try (Daemon daemon = new Daemon(socket, Duration.ofMinutes(1))) {
+      assertTrue(Files.exists(socket));
+    }
+  }
+
+  @Test
+  void shutsDownWhenIdle() throws Exception {
+    Path socket = tmp.resolve("d.sock");
+    try (Daemon daemon = new Daemon(socket, Duration.ofMillis(200))) {
+      CompletableFuture<Void> served = CompletableFuture.runAsync(() -> {
+        try {
+          daemon.run();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      served.get(10, TimeUnit.SECONDS);
+    }
+    assertFalse(Files.exists(socket));
+    assertEquals(-1, run(socket, tmp, "status").code());
+  }
+}
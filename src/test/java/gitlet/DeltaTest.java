@@ -0,0 +1,67 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaTest {
+
+  private static byte[] lines(int n, int changed) {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      sb.append(i == changed ? "this line was edited " : "line number ").append(i).append('\n');
+    }
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void smallEditProducesSmallDelta() throws Exception {
+    byte[] base = lines(5000, -1);
+    byte[] target = lines(5000, 2500);
+    byte[] delta = Delta.create(base, target, target.length);
+    assertNotNull(delta);
+    assertTrue(delta.length < 200, "delta was " + delta.length + " bytes");
+    assertArrayEquals(target, Delta.apply(base, delta));
+  }
+
+  @Test
+  void handlesInsertionsDeletionsAndShifts() throws Exception {
+    byte[] base = lines(2000, -1);
+    String t = "header\n" + new String(base, StandardCharsets.UTF_8).substring(500, 20000) + "trailer\n";
+    byte[] target = t.getBytes(StandardCharsets.UTF_8);
+    byte[] delta = Delta.create(base, target, target.length);
+    assertNotNull(delta);
+    assertArrayEquals(target, Delta.apply(base, delta));
+  }
+
+  @Test
+  void unrelatedContentRoundTripsOrExceedsLimit() throws Exception {
+    Random r = new Random(1);
+    byte[] base = new byte[10_000];
+    byte[] target = new byte[12_000];
+    r.nextBytes(base);
+    r.nextBytes(target);
+    assertNull(Delta.create(base, target, target.length / 2));
+    byte[] delta = Delta.create(base, target, Integer.MAX_VALUE);
+    assertArrayEquals(target, Delta.apply(base, delta));
+  }
+
+  @Test
+  void tinyInputsRoundTrip() throws Exception {
+    byte[] base = "abc".getBytes(StandardCharsets.UTF_8);
+    byte[] target = "abcd".getBytes(StandardCharsets.UTF_8);
+    assertArrayEquals(target, Delta.apply(base, Delta.create(base, target, 100)));
+    assertArrayEquals(new byte[0], Delta.apply(base, Delta.create(base, new byte[0], 100)));
+  }
+
+  @Test
+  void applyRejectsWrongBase() {
+    byte[] base = lines(100, -1);
+    byte[] delta = Delta.create(base, lines(100, 5), 10_000);
+    assertThrows(IOException.class, () -> Delta.apply(new byte[3], delta));
+  }
+}
@@ -6,7 +6,13 @@ import org.junit.jupiter.api.io.TempDir;
 import java.nio.file.Path;
 import java.nio.file.Files;
 import static org.junit.jupiter.api.Assertions.*;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 public class FileObjectStoreTest {
     @TempDir Path tmp;
@@ -81,6 +87,137 @@ public class FileObjectStoreTest {
 
     }
 
+    @Test
+    void findPrefixIsSortedAndSeesObjectsWrittenLater() throws Exception{
+        FileObjectStore store = newStore();
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 64; i++) ids.add(store.writeBlob(("blob " + i).getBytes()));
+        Collections.sort(ids);
+        List<ObjectId> all = new ArrayList<>();
+        for (char c : "0123456789abcdef".toCharArray()) all.addAll(store.findPrefix(String.valueOf(c), 100, null));
+        assertEquals(ids, all.stream().map(ObjectId::name).toList());
+        assertEquals(List.of(ObjectId.fromHex(ids.get(5))), store.findPrefix(ids.get(5).toUpperCase(), 10, null));
+        assertEquals(List.of(ObjectId.fromHex(ids.get(0))), store.findPrefix(ids.get(0).substring(0, 1), 1, null));
+
+        // Written through another instance after this one listed the fan-out directories.
+        String later = new FileObjectStore(tmp.resolve("gitlet")).writeBlob("later".getBytes());
+        assertEquals(later, store.resolvePrefix(later.substring(0, 12)));
+        assertTrue(store.findPrefix("xyz", 10, null).isEmpty());
+    }
+
+    @Test
+    void streamingWriteMatchesByteArrayWrite() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = new byte[300_000];
+        new Random(7).nextBytes(data);
+        Path f = tmp.resolve("big.bin");
+        Files.write(f, data);
+
+        String fromFile = store.writeBlob(f);
+        String fromStream = store.writeBlob(new ByteArrayInputStream(data));
+
+        assertEquals(Hashing.sha1(data), fromFile);
+        assertEquals(fromFile, fromStream);
+        assertArrayEquals(data, store.readBlob(fromFile));
+    }
+
+    @Test
+    void streamingWriteLeavesNoTempFiles() throws Exception{
+        FileObjectStore store = newStore();
+        store.writeBlob(new ByteArrayInputStream("one".getBytes()));
+        store.writeBlob(new ByteArrayInputStream("one".getBytes()));
+        try (var s = Files.list(tmp.resolve("gitlet").resolve("objects"))){
+            assertTrue(s.allMatch(Files::isDirectory));
+        }
+    }
+
+    @Test
+    void textObjectsAreStoredCompressedWithTypedHeader() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = "all work and no play\n".repeat(2000).getBytes();
+        String id = store.writeBlob(data);
+
+        Path onDisk = tmp.resolve("gitlet").resolve("objects").resolve(id.substring(0, 2)).resolve(id.substring(2));
+        assertTrue(Files.size(onDisk) < data.length / 10);
+        assertEquals(new FileObjectStore.ObjectHeader(ObjectType.BLOB, data.length), store.peek(id));
+        assertArrayEquals(data, store.readBlob(id));
+    }
+
+    @Test
+    void openObjectStreamsInflatedContent() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = new byte[200_000];
+        new Random(3).nextBytes(data);
+        String id = store.writeBlob(data);
+        try (InputStream in = store.openObject(id)){
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void legacyRawObjectsRemainReadable() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = "commit\nmessage\tm\n".getBytes();
+        String id = Hashing.sha1(data);
+        Path dir = tmp.resolve("gitlet").resolve("objects").resolve(id.substring(0, 2));
+        Files.createDirectories(dir);
+        Files.write(dir.resolve(id.substring(2)), data);
+
+        assertArrayEquals(data, store.readBlob(id));
+        assertEquals(new FileObjectStore.ObjectHeader(ObjectType.COMMIT, data.length), store.peek(id));
+        try (InputStream in = store.openObject(id)){
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
+    @Test
+    void chunkedBlobReadsBackWholeAndSharesChunksAcrossVersions() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = new byte[1 << 20];
+        new Random(7).nextBytes(data);
+        Path f = tmp.resolve("big.bin");
+        Files.write(f, data);
+
+        String id = store.writeChunked(f);
+        assertEquals(Hashing.sha1(data), id);
+        assertEquals(ObjectType.MANIFEST, store.peek(id).type());
+        assertArrayEquals(data, store.readContent(id));
+        try (InputStream in = store.openContent(id)){
+            assertArrayEquals(data, in.readAllBytes());
+        }
+        int chunks = store.listLoose().size() - 1;
+
+        // An insertion near the front only disturbs the chunks around it.
+        byte[] edited = new byte[data.length + 10];
+        System.arraycopy(data, 0, edited, 0, 1000);
+        System.arraycopy(data, 1000, edited, 1010, data.length - 1000);
+        Files.write(f, edited);
+        String id2 = store.writeChunked(f);
+        assertArrayEquals(edited, store.readContent(id2));
+        int added = store.listLoose().size() - chunks - 2;
+        assertTrue(added <= 2, "new chunks: " + added + " of " + chunks);
+    }
+
+    @Test
+    void chunkedBlobSurvivesPacking() throws Exception{
+        FileObjectStore store = newStore();
+        byte[] data = new byte[600_000];
+        new Random(11).nextBytes(data);
+        Path f = tmp.resolve("big.bin");
+        Files.write(f, data);
+        String id = store.writeChunked(f);
+
+        store.writePack(store.listObjectIds());
+        for (FileObjectStore.LooseObject obj : store.listLoose()) store.deleteLoose(obj);
+        store.rescanPacks();
+
+        assertEquals(ObjectType.MANIFEST, store.peek(id).type());
+        assertArrayEquals(data, store.readContent(id));
+        try (InputStream in = store.openContent(id)){
+            assertArrayEquals(data, in.readAllBytes());
+        }
+    }
+
     @Test
     void readBlobThrowsWhenMissing() throws Exception{
         FileObjectStore store = newStore();
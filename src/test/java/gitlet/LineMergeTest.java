@@ -0,0 +1,82 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineMergeTest {
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static String merge(String base, String ours, String theirs, boolean expectConflict) throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(expectConflict, LineMerge.merge(bytes(base), bytes(ours), bytes(theirs), "other", out));
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void diffHunksRebuildTheTarget() {
+    Random rnd = new Random(42);
+    for (int round = 0; round < 300; round++) {
+      int[] a = rnd.ints(rnd.nextInt(40), 0, 5).toArray();
+      int[] b = rnd.ints(rnd.nextInt(40), 0, 5).toArray();
+      List<Integer> rebuilt = new ArrayList<>();
+      int pos = 0;
+      for (LineMerge.Hunk h : LineMerge.diff(a, b)) {
+        for (int i = pos; i < h.a0(); i++) rebuilt.add(a[i]);
+        for (int j = h.b0(); j < h.b1(); j++) rebuilt.add(b[j]);
+        pos = h.a1();
+      }
+      for (int i = pos; i < a.length; i++) rebuilt.add(a[i]);
+      List<Integer> expected = new ArrayList<>();
+      for (int x : b) expected.add(x);
+      assertEquals(expected, rebuilt);
+    }
+  }
+
+  @Test
+  void diffFindsMinimalEdits() {
+    List<LineMerge.Hunk> hunks = LineMerge.diff(new int[] {1, 2, 3, 4, 5}, new int[] {1, 9, 3, 4, 5, 6});
+    assertEquals(List.of(new LineMerge.Hunk(1, 2, 1, 2), new LineMerge.Hunk(5, 5, 5, 6)), hunks);
+  }
+
+  @Test
+  void nonOverlappingChangesMergeCleanly() throws Exception {
+    String base = "a\nb\nc\nd\ne\n";
+    assertEquals("A\nb\nc\nd\nE\n", merge(base, "A\nb\nc\nd\ne\n", "a\nb\nc\nd\nE\n", false));
+    assertEquals("a\nB\nc\nd\ne\nf\n", merge(base, "a\nB\nc\nd\ne\nf\n", "a\nB\nc\nd\ne\n", false));
+  }
+
+  @Test
+  void overlappingChangesConflict() throws Exception {
+    String out = merge("a\nb\nc\n", "a\nmine\nc\n", "a\ntheirs\nc\n", true);
+    assertEquals("a\n<<<<<<< HEAD\nmine\n=======\ntheirs\n>>>>>>> other\nc\n", out);
+  }
+
+  @Test
+  void missingFinalNewlineKeepsMarkersOnTheirOwnLines() throws Exception {
+    String out = merge("x", "y", "z", true);
+    assertEquals("<<<<<<< HEAD\ny\n=======\nz\n>>>>>>> other\n", out);
+  }
+
+  @Test
+  void largeInputsWithManyDifferencesMerge() throws Exception {
+    StringBuilder base = new StringBuilder();
+    StringBuilder ours = new StringBuilder();
+    StringBuilder theirs = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) {
+      base.append("line ").append(i).append('\n');
+      ours.append(i % 3 == 0 ? "ours " : "line ").append(i).append('\n');
+      theirs.append(i % 3 == 1 ? "theirs " : "line ").append(i).append('\n');
+    }
+    String out = merge(base.toString(), ours.toString(), theirs.toString(), true);
+    assertTrue(out.startsWith("<<<<<<< HEAD\nours 0\nline 1\n=======\nline 0\ntheirs 1\n>>>>>>> other\n"), out.substring(0, 200));
+  }
+}
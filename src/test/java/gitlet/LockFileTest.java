@@ -0,0 +1,40 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LockFileTest {
+  @TempDir Path tmp;
+
+  @Test
+  void commitReplacesTargetAndReleasesLock() throws Exception {
+    Path target = tmp.resolve("index");
+    Files.writeString(target, "old");
+    try (LockFile lock = LockFile.acquire(target)) {
+      lock.write("new");
+      assertEquals("old", Files.readString(target));
+      lock.commit();
+    }
+    assertEquals("new", Files.readString(target));
+    assertFalse(Files.exists(tmp.resolve("index.lock")));
+  }
+
+  @Test
+  void secondWriterFailsAndAbandonedLockLeavesTarget() throws Exception {
+    Path target = tmp.resolve("sub/ref");
+    try (LockFile lock = LockFile.acquire(target)) {
+      lock.write("partial");
+      assertThrows(IOException.class, () -> LockFile.acquire(target));
+    }
+    assertFalse(Files.exists(target));
+    try (LockFile again = LockFile.acquire(target)) {
+      assertNotNull(again);
+    }
+  }
+}
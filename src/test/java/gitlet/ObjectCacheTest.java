@@ -0,0 +1,51 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectCacheTest {
+
+  @Test
+  void evictsLeastRecentlyUsedByWeight() {
+    ObjectCache cache = new ObjectCache(100);
+    cache.put("a", "A", 40);
+    cache.put("b", "B", 40);
+    assertEquals("A", cache.get("a", String.class));
+    cache.put("c", "C", 40);
+
+    assertNull(cache.get("b", String.class));
+    assertEquals("A", cache.get("a", String.class));
+    assertEquals("C", cache.get("c", String.class));
+
+    ObjectCache.Stats stats = cache.stats();
+    assertEquals(3, stats.hits());
+    assertEquals(1, stats.misses());
+    assertEquals(1, stats.evictions());
+    assertEquals(80, stats.bytes());
+    assertEquals(2, stats.entries());
+  }
+
+  @Test
+  void skipsEntriesLargerThanCapacity() {
+    ObjectCache cache = new ObjectCache(10);
+    cache.put("big", "X", 11);
+    assertNull(cache.get("big", String.class));
+    assertEquals(0, cache.stats().bytes());
+  }
+
+  @Test
+  void typeMismatchIsAMiss() {
+    ObjectCache cache = new ObjectCache(10);
+    cache.put("id", "text", 1);
+    assertNull(cache.get("id", byte[].class));
+    assertEquals(1, cache.stats().misses());
+  }
+
+  @Test
+  void zeroCapacityDisablesCaching() {
+    ObjectCache cache = new ObjectCache(0);
+    cache.put("a", "A", 1);
+    assertNull(cache.get("a", String.class));
+  }
+}
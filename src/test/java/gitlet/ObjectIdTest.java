@@ -0,0 +1,58 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ObjectIdTest {
+
+  @Test
+  void hexRoundTripPreservesLeadingZeros() {
+    String hex = "00ab0000000000000000000000000000000000ff";
+    ObjectId id = ObjectId.fromHex(hex);
+    assertEquals(hex, id.name());
+    assertEquals(0, id.firstByte());
+    assertEquals(id, ObjectId.fromRaw(id.toRaw()));
+  }
+
+  @Test
+  void matchesStringHashing() {
+    byte[] data = "abc".getBytes(StandardCharsets.UTF_8);
+    assertEquals(Hashing.sha1(data), Hashing.sha1Id(data).name());
+    assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Hashing.sha1Id(data).toString());
+  }
+
+  @Test
+  void compareToIsUnsignedAndConsistentWithHexOrder() {
+    ObjectId[] ids = {
+        ObjectId.fromHex("ff00000000000000000000000000000000000000"),
+        ObjectId.fromHex("0000000000000000000000000000000000000001"),
+        ObjectId.fromHex("7fffffffffffffffffffffffffffffffffffffff"),
+        ObjectId.fromHex("8000000000000000000000000000000000000000"),
+    };
+    ObjectId[] sorted = ids.clone();
+    Arrays.sort(sorted);
+    String[] names = Arrays.stream(ids).map(ObjectId::name).sorted().toArray(String[]::new);
+    assertArrayEquals(names, Arrays.stream(sorted).map(ObjectId::name).toArray(String[]::new));
+  }
+
+  @Test
+  void equalIdsHashEqually() {
+    ObjectId a = ObjectId.fromHex("a9993e364706816aba3e25717850c26c9cd0d89d");
+    ObjectId b = ObjectId.fromHex("A9993E364706816ABA3E25717850C26C9CD0D89D");
+    assertEquals(a, b);
+    assertEquals(a.hashCode(), b.hashCode());
+    assertEquals(0, a.compareTo(b));
+  }
+
+  @Test
+  void rejectsMalformedHex() {
+    assertThrows(IllegalArgumentException.class, () -> ObjectId.fromHex("abc"));
+    assertThrows(IllegalArgumentException.class, () -> ObjectId.fromHex("g9993e364706816aba3e25717850c26c9cd0d89d"));
+    assertFalse(ObjectId.isValid("blobA"));
+    assertTrue(ObjectId.isValid("a9993e364706816aba3e25717850c26c9cd0d89d"));
+  }
+}
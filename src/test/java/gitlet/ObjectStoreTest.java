@@ -43,5 +43,114 @@ public class ObjectStoreTest {
     Commit d = store.readCommit(id);
     assertEquals(c.getId(), d.getId());
     assertEquals(c.getTrackedFiles(), d.getTrackedFiles());
+    assertEquals(ObjectType.COMMIT, store.peek(id).type());
+  }
+
+  @Test
+  void repeatedReadsAreServedFromCache() throws Exception {
+    Path repo = repoRoot();
+    ObjectStore store = new ObjectStore(repo);
+    Commit c = Commit.create("m", List.of(), Map.of("a", "A"), 1L);
+    String id = store.writeCommit(c);
+
+    ObjectStore fresh = new ObjectStore(repo);
+    Commit first = fresh.readCommit(id);
+    assertSame(first, fresh.readCommit(id));
+    assertEquals(1, fresh.cacheStats().hits());
+
+    String blob = fresh.writeBlob("small".getBytes());
+    byte[] b1 = fresh.readBlob(blob);
+    b1[0] = 'X';
+    assertEquals("small", new String(fresh.readBlob(blob)));
+  }
+
+  @Test
+  void disabledCacheStillReads() throws Exception {
+    Path repo = repoRoot();
+    ObjectStore store = new ObjectStore(repo, 0, 0);
+    Commit c = Commit.create("m", List.of(), Map.of(), 1L);
+    String id = store.writeCommit(c);
+    assertNotSame(store.readCommit(id), store.readCommit(id));
+    assertEquals(0, store.cacheStats().hits());
+  }
+
+  @Test
+  void resolvePrefixListsCandidatesAndCanIgnoreNonCommits() throws Exception {
+    ObjectStore store = new ObjectStore(repoRoot());
+    Map<Character, List<String>> byFirst = new TreeMap<>();
+    for (int i = 0; i < 40; i++) {
+      String id = store.writeBlob(("blob " + i).getBytes());
+      byFirst.computeIfAbsent(id.charAt(0), k -> new ArrayList<>()).add(id);
+    }
+    List<String> shared = byFirst.values().stream().filter(l -> l.size() > 1).findFirst().orElseThrow();
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> store.resolvePrefix(shared.get(0).substring(0, 1), false));
+    for (String id : shared) assertTrue(e.getMessage().contains(id), e.getMessage());
+
+    Commit c = Commit.create("only commit", List.of(), Map.of(), 1L);
+    store.writeCommit(c);
+    assertEquals(c.getId(), store.resolvePrefix(c.getId().substring(0, 1), true));
+    assertNull(store.resolvePrefix(shared.get(0), true));
+    assertEquals(shared.get(0), store.resolvePrefix(shared.get(0).substring(0, 10), false));
+  }
+
+  @Test
+  void resolveCommitPrefixAnswersFromTheCommitGraph() throws Exception {
+    Path repo = repoRoot();
+    ObjectStore store = new ObjectStore(repo);
+    Commit stored = Commit.create("stored", List.of(), Map.of(), 1L);
+    store.writeCommit(stored);
+    // Only in the graph: resolving it must not open the object.
+    ObjectId graphOnly = Hashing.sha1Id("graph only".getBytes());
+    Path file = repo.resolve("commit-graph");
+    CommitGraph.write(file, List.of(new CommitGraph.Node(graphOnly, List.of(), 2L)));
+    CommitGraph graph = CommitGraph.load(file);
+
+    assertEquals(graphOnly.name(), store.resolveCommitPrefix(graphOnly.name().substring(0, 8), graph));
+    assertEquals(stored.getId(), store.resolveCommitPrefix(stored.getId().substring(0, 8), graph));
+    assertNull(store.resolveCommitPrefix("ffffffff", graph));
+  }
+
+  @Test
+  void resolveCommitPrefixSeesCommitsMissingFromTheGraph() throws Exception {
+    Path repo = repoRoot();
+    ObjectStore store = new ObjectStore(repo);
+    Map<Character, List<Commit>> byFirst = new TreeMap<>();
+    for (int i = 0; i < 40; i++) {
+      Commit c = Commit.create("c" + i, List.of(), Map.of(), i);
+      store.writeCommit(c);
+      byFirst.computeIfAbsent(c.getId().charAt(0), k -> new ArrayList<>()).add(c);
+    }
+    List<Commit> shared = byFirst.values().stream()
+        .filter(l -> l.size() > 1 && l.size() <= ObjectStore.AMBIGUOUS_CANDIDATES).findFirst().orElseThrow();
+    Commit inGraph = shared.get(0);
+    Path file = repo.resolve("commit-graph");
+    CommitGraph.write(file, List.of(new CommitGraph.Node(ObjectId.fromHex(inGraph.getId()), List.of(), 0L)));
+
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> store.resolveCommitPrefix(inGraph.getId().substring(0, 1), CommitGraph.load(file)));
+    for (Commit c : shared) assertTrue(e.getMessage().contains(c.getId()), e.getMessage());
+  }
+
+  @Test
+  void verifyModeRejectsObjectStoredUnderWrongId() throws Exception {
+    Path repo = repoRoot();
+    ObjectStore store = new ObjectStore(repo);
+    String real = store.writeCommit(Commit.create("m", List.of(), Map.of("a", "A"), 1L));
+    String fake = "ab" + "c".repeat(38);
+    Path looseDir = Constants.objects(repo).resolve("objects");
+    Path src = looseDir.resolve(real.substring(0, 2)).resolve(real.substring(2));
+    Path dst = looseDir.resolve(fake.substring(0, 2)).resolve(fake.substring(2));
+    Files.createDirectories(dst.getParent());
+    Files.copy(src, dst);
+
+    assertEquals(fake, new ObjectStore(repo).readCommit(fake).getId());
+    System.setProperty(ObjectStore.VERIFY_PROPERTY, "true");
+    try {
+      assertThrows(IOException.class, () -> new ObjectStore(repo).readCommit(fake));
+      assertEquals(real, new ObjectStore(repo).readCommit(real).getId());
+    } finally {
+      System.clearProperty(ObjectStore.VERIFY_PROPERTY);
+    }
   }
 }
@@ -0,0 +1,169 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PackFileTest {
+  @TempDir Path tmp;
+
+  private FileObjectStore newStore() throws IOException {
+    Path repoDir = tmp.resolve("gitlet");
+    Files.createDirectories(repoDir);
+    return new FileObjectStore(repoDir);
+  }
+
+  private void deleteLoose(String id) throws IOException {
+    Files.delete(tmp.resolve("gitlet").resolve("objects").resolve(id.substring(0, 2)).resolve(id.substring(2)));
+  }
+
+  @Test
+  void packedObjectsAreReadableAfterLooseCopiesAreGone() throws Exception {
+    FileObjectStore store = newStore();
+    List<String> ids = new ArrayList<>();
+    List<byte[]> contents = new ArrayList<>();
+    Random r = new Random(11);
+    for (int i = 0; i < 300; i++) {
+      byte[] data = ("object " + i + " " + r.nextLong()).getBytes(StandardCharsets.UTF_8);
+      contents.add(data);
+      ids.add(store.writeBlob(data));
+    }
+    String commitId = store.writeObject(ObjectType.COMMIT, "commit\nmessage\tm\ntimestamp\t1\n".getBytes(StandardCharsets.UTF_8));
+    ids.add(commitId);
+
+    Path pack = store.writePack(ids);
+    assertTrue(Files.exists(pack));
+    for (String id : ids) deleteLoose(id);
+
+    for (int i = 0; i < contents.size(); i++) {
+      assertTrue(store.exists(ids.get(i)));
+      assertArrayEquals(contents.get(i), store.readBlob(ids.get(i)));
+    }
+    assertEquals(ObjectType.COMMIT, store.peek(commitId).type());
+    assertEquals(ObjectType.BLOB, store.peek(ids.get(0)).type());
+    assertFalse(store.exists("0123456789abcdef0123456789abcdef01234567"));
+    assertThrows(IOException.class, () -> store.readBlob("0123456789abcdef0123456789abcdef01234567"));
+  }
+
+  @Test
+  void packedObjectsStream() throws Exception {
+    FileObjectStore store = newStore();
+    byte[] data = new byte[250_000];
+    new Random(5).nextBytes(data);
+    String id = store.writeBlob(data);
+    store.writePack(List.of(id));
+    deleteLoose(id);
+    try (InputStream in = store.openObject(id)) {
+      assertArrayEquals(data, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void indexSupportsLookupAndPrefixSearch() throws Exception {
+    FileObjectStore store = newStore();
+    List<String> ids = new ArrayList<>();
+    for (int i = 0; i < 50; i++) ids.add(store.writeBlob(("p" + i).getBytes(StandardCharsets.UTF_8)));
+    try (PackFile pack = PackFile.open(store.writePack(ids))) {
+      PackIndex idx = pack.index();
+      assertEquals(50, idx.count());
+      for (int i = 1; i < idx.count(); i++) assertTrue(idx.idAt(i - 1).compareTo(idx.idAt(i)) < 0);
+      for (String id : ids) {
+        int pos = idx.find(ObjectId.fromHex(id));
+        assertTrue(pos >= 0);
+        assertEquals(id, idx.idAt(pos).name());
+        assertEquals(List.of(ObjectId.fromHex(id)), idx.findPrefix(id.substring(0, 12), 10, null));
+      }
+      assertEquals(-1, idx.find(ObjectId.fromHex("ffffffffffffffffffffffffffffffffffffffff")));
+    }
+  }
+
+  @Test
+  void verifyModeChecksEntryCrcs() throws Exception {
+    FileObjectStore store = newStore();
+    String a = store.writeBlob("first entry".getBytes(StandardCharsets.UTF_8));
+    String b = store.writeBlob("second entry".getBytes(StandardCharsets.UTF_8));
+    Path packPath = store.writePack(List.of(a, b));
+    long offset;
+    try (PackFile pack = PackFile.open(packPath)) {
+      offset = pack.index().offsetAt(pack.index().find(ObjectId.fromHex(a)));
+    }
+    byte[] raw = Files.readAllBytes(packPath);
+    raw[(int) offset + 4] ^= 0x01;
+    Files.write(packPath, raw);
+
+    System.setProperty(ObjectStore.VERIFY_PROPERTY, "true");
+    try (PackFile pack = PackFile.open(packPath)) {
+      IOException e = assertThrows(IOException.class, () -> pack.read(ObjectId.fromHex(a)));
+      assertTrue(e.getMessage().contains("CRC"), e.getMessage());
+      assertArrayEquals("second entry".getBytes(StandardCharsets.UTF_8), pack.read(ObjectId.fromHex(b)));
+    } finally {
+      System.clearProperty(ObjectStore.VERIFY_PROPERTY);
+    }
+  }
+
+  @Test
+  void resolvePrefixSeesPackedObjects() throws Exception {
+    FileObjectStore store = newStore();
+    String id = store.writeBlob("packed".getBytes(StandardCharsets.UTF_8));
+    store.writePack(List.of(id));
+    deleteLoose(id);
+    assertEquals(id, store.resolvePrefix(id.substring(0, 7)));
+  }
+
+  @Test
+  void similarVersionsAreStoredAsDeltas() throws Exception {
+    FileObjectStore store = newStore();
+    List<String> ids = new ArrayList<>();
+    List<byte[]> versions = new ArrayList<>();
+    Map<String, String> hints = new HashMap<>();
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 20_000; i++) sb.append("line ").append(i).append('\n');
+    Random r = new Random(9);
+    for (int v = 0; v < 30; v++) {
+      int at = r.nextInt(sb.length() - 10);
+      sb.replace(at, at + 4, "v" + v + "!");
+      byte[] data = sb.toString().getBytes(StandardCharsets.UTF_8);
+      versions.add(data);
+      String id = store.writeBlob(data);
+      ids.add(id);
+      hints.put(id, "src/big.txt");
+    }
+    long full = 0;
+    for (byte[] v : versions) full += v.length;
+
+    Path pack = store.writePack(ids, hints);
+    for (String id : ids) deleteLoose(id);
+    assertTrue(Files.size(pack) * 20 < full, "pack was " + Files.size(pack) + " bytes for " + full);
+
+    for (int i = 0; i < versions.size(); i++) {
+      assertArrayEquals(versions.get(i), store.readBlob(ids.get(i)));
+      assertEquals(versions.get(i).length, store.peek(ids.get(i)).size());
+      try (InputStream in = store.openObject(ids.get(i))) {
+        assertArrayEquals(versions.get(i), in.readAllBytes());
+      }
+    }
+  }
+
+  @Test
+  void newPacksArePickedUpByExistingStores() throws Exception {
+    FileObjectStore writer = newStore();
+    FileObjectStore reader = newStore();
+    String id = writer.writeBlob("late".getBytes(StandardCharsets.UTF_8));
+    assertTrue(reader.exists(id));
+    writer.writePack(List.of(id));
+    deleteLoose(id);
+    assertArrayEquals("late".getBytes(StandardCharsets.UTF_8), reader.readBlob(id));
+  }
+}
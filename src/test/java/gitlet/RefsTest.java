@@ -5,6 +5,12 @@ import org.junit.jupiter.api.io.TempDir;
 
 import java.io.IOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -48,4 +54,126 @@ public class RefsTest {
     refs.updateRef(Constants.refsDirName + "/" + Constants.headsDirName + "/dev", "c0");
     assertEquals("c0", refs.readRef(Constants.refsDirName + "/" + Constants.headsDirName + "/dev"));
   }
+
+  @Test
+  void packRefsMovesLooseRefsAndLooseOverridesPacked() throws Exception {
+    Path repo = repoRoot();
+    Refs refs = new Refs(repo);
+    String a = "a".repeat(40);
+    String b = "b".repeat(40);
+    String c = "c".repeat(40);
+    refs.pointHeadToBranch("master");
+    refs.updateCurrentBranch(a);
+    for (int i = 0; i < 50; i++) refs.updateRef("refs/heads/ci/" + i, b);
+    refs.updateRef("refs/heads/unborn", "");
+
+    assertEquals(51, refs.packRefs());
+    assertFalse(Files.exists(Constants.branchRef(repo, "master")));
+    assertTrue(Files.exists(Constants.branchRef(repo, "unborn")));
+
+    Refs fresh = new Refs(repo);
+    assertEquals(a, fresh.resolveHeadCommitId());
+    assertEquals(b, fresh.readRef("refs/heads/ci/17"));
+    assertNull(fresh.readRef("refs/heads/ci/99"));
+    assertEquals(52, fresh.listBranches().size());
+    assertTrue(fresh.listBranches().contains("ci/3"));
+
+    fresh.updateRef("refs/heads/ci/17", c);
+    assertEquals(c, new Refs(repo).readRef("refs/heads/ci/17"));
+
+    assertTrue(fresh.deleteRef("refs/heads/ci/17"));
+    assertNull(new Refs(repo).readRef("refs/heads/ci/17"));
+    assertFalse(fresh.deleteRef("refs/heads/ci/17"));
+  }
+
+  @Test
+  void snapshotReadsHeadOnceUntilRefreshed() throws Exception {
+    Path repo = repoRoot();
+    Refs refs = new Refs(repo);
+    refs.pointHeadToBranch("master");
+    assertEquals("master", refs.currentBranchName());
+
+    Files.writeString(Constants.headFile(repo), "ref: refs/heads/other");
+    assertEquals("master", refs.currentBranchName());
+    refs.refresh();
+    assertEquals("other", refs.currentBranchName());
+  }
+
+  @Test
+  void compareAndSwapRejectsStaleExpectation() throws Exception {
+    Path repo = repoRoot();
+    Refs refs = new Refs(repo);
+    String a = "a".repeat(40);
+    String b = "b".repeat(40);
+    refs.pointHeadToBranch("master");
+
+    refs.updateCurrentBranch(a, null);
+    Refs.ConflictException e = assertThrows(Refs.ConflictException.class, () -> refs.updateCurrentBranch(b, null));
+    assertEquals("refs/heads/master", e.refName());
+    refs.updateCurrentBranch(b, a);
+    assertEquals(b, new Refs(repo).resolveHeadCommitId());
+  }
+
+  @Test
+  void transactionIsAllOrNothing() throws Exception {
+    Path repo = repoRoot();
+    Refs refs = new Refs(repo);
+    String a = "a".repeat(40);
+    String b = "b".repeat(40);
+    refs.updateRef("refs/heads/x", a);
+    refs.updateRef("refs/heads/y", a);
+
+    assertThrows(Refs.ConflictException.class, () -> refs.transaction()
+        .update("refs/heads/x", a, b)
+        .update("refs/heads/y", b, b)
+        .commit());
+    assertEquals(a, refs.readRef("refs/heads/x"));
+
+    refs.transaction().update("refs/heads/x", a, b).delete("refs/heads/y", a).commit();
+    assertEquals(b, refs.readRef("refs/heads/x"));
+    assertNull(refs.readRef("refs/heads/y"));
+    try (Stream<Path> s = Files.list(Constants.heads(repo))) {
+      assertTrue(s.noneMatch(p -> p.toString().endsWith(".lock")));
+    }
+  }
+
+  @Test
+  void lockedRefFailsFastWhileOthersProceed() throws Exception {
+    Path repo = repoRoot();
+    Refs refs = new Refs(repo);
+    String a = "a".repeat(40);
+    try (LockFile held = LockFile.acquire(Constants.branchRef(repo, "busy"))) {
+      assertThrows(Refs.ConflictException.class, () -> refs.transaction().update("refs/heads/busy", null, a).commit());
+      refs.transaction().update("refs/heads/free", null, a).commit();
+    }
+    assertEquals(a, refs.readRef("refs/heads/free"));
+    assertEquals(List.of("free"), new Refs(repo).listBranches());
+  }
+
+  @Test
+  void concurrentUpdatesToIndependentBranchesAllLand() throws Exception {
+    Path repo = repoRoot();
+    int n = 16;
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i < n; i++) {
+        String ref = "refs/heads/b" + i;
+        futures.add(pool.submit(() -> {
+          Refs own = new Refs(repo);
+          String prev = null;
+          for (int k = 0; k < 20; k++) {
+            String next = ObjectId.toHex(Hashing.sha1Id((ref + k).getBytes()).toRaw());
+            own.transaction().update(ref, prev, next).commit();
+            prev = next;
+          }
+          return null;
+        }));
+      }
+      for (Future<?> f : futures) f.get();
+    } finally {
+      pool.shutdown();
+    }
+    assertEquals(n, new Refs(repo).listBranches().size());
+  }
 }
@@ -8,7 +8,12 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -68,6 +73,456 @@ public class RepositoryTest {
     assertEquals(Map.of("a.txt", Hashing.sha1("one".getBytes())), c.getTrackedFiles());
   }
 
+  @Test
+  void commitsNestedPathsAsTrees() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "src/a.txt", "one");
+    writeFile(root, "docs/b.txt", "two");
+    repo.add("src/a.txt");
+    repo.add("docs/b.txt");
+    repo.commit("first");
+    ObjectStore store = new ObjectStore(root);
+    Commit first = store.readCommit(new Refs(root).resolveHeadCommitId());
+
+    writeFile(root, "src/a.txt", "changed");
+    repo.add("src/a.txt");
+    repo.commit("second");
+    Commit second = store.readCommit(new Refs(root).resolveHeadCommitId());
+
+    assertNotNull(second.getTreeId());
+    assertEquals(store.readTree(first.getTreeId()).get("docs").id(), store.readTree(second.getTreeId()).get("docs").id());
+    assertEquals(Map.of("src/a.txt", Hashing.sha1("changed".getBytes()), "docs/b.txt", Hashing.sha1("two".getBytes())),
+        second.getTrackedFiles());
+  }
+
+  @Test
+  void addTrustsMatchingStatWithoutRehashing() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "a.txt", "one");
+    // Older than any index write below, so its entry is never smudged as racy.
+    Files.setLastModifiedTime(root.resolve("a.txt"), FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    repo.add("a.txt");
+    repo.commit("first");
+
+    // Same size and mtime: the stat matches, so add must not read the file.
+    FileTime mtime = Files.getLastModifiedTime(root.resolve("a.txt"));
+    Files.writeString(root.resolve("a.txt"), "two", StandardCharsets.UTF_8, StandardOpenOption.TRUNCATE_EXISTING);
+    Files.setLastModifiedTime(root.resolve("a.txt"), mtime);
+    Files.setLastModifiedTime(Constants.indexFile(root), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    Repository reopened = new Repository(root);
+    reopened.add("a.txt");
+    assertFalse(Files.readString(Constants.indexFile(root), StandardCharsets.UTF_8).contains("A\ta.txt"));
+
+    // Racy index (not newer than the file): add falls back to hashing and sees the change.
+    Files.setLastModifiedTime(Constants.indexFile(root), mtime);
+    new Repository(root).add("a.txt");
+    assertTrue(Files.readString(Constants.indexFile(root), StandardCharsets.UTF_8)
+        .contains("A\ta.txt\t" + Hashing.sha1("two".getBytes())));
+  }
+
+  @Test
+  void concurrentIndexWriterFailsInsteadOfDroppingStagedFiles() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    new Repository(root).init();
+    writeFile(root, "a.txt", "a");
+    writeFile(root, "b.txt", "b");
+
+    Repository first = new Repository(root);
+    captureStdout(first::status);
+    new Repository(root).add("b.txt");
+    IOException e = assertThrows(IOException.class, () -> first.add("a.txt"));
+    assertTrue(e.getMessage().contains("run it again"), e.getMessage());
+
+    StagingArea staged = new StagingArea(root);
+    staged.load(Constants.indexFile(root));
+    assertEquals(Set.of("b.txt"), staged.getAdditions().keySet());
+    new Repository(root).add("a.txt");
+    staged.load(Constants.indexFile(root));
+    assertEquals(Set.of("a.txt", "b.txt"), staged.getAdditions().keySet());
+  }
+
+  @Test
+  void statusReportsUnstagedChangesAndUntrackedFiles() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "kept.txt", "k");
+    writeFile(root, "edited.txt", "e");
+    writeFile(root, "dir/gone.txt", "g");
+    repo.add("kept.txt");
+    repo.add("edited.txt");
+    repo.add("dir/gone.txt");
+    repo.commit("first");
+
+    writeFile(root, "edited.txt", "changed");
+    Files.delete(root.resolve("dir/gone.txt"));
+    writeFile(root, "new/untracked.txt", "u");
+    writeFile(root, "staged.txt", "s");
+    repo.add("staged.txt");
+    writeFile(root, "staged.txt", "s2");
+
+    String out = captureStdout(repo::status);
+    assertTrue(out.contains("=== Modifications Not Staged For Commit ===\n"
+        + "dir/gone.txt (deleted)\n"
+        + "edited.txt (modified)\n"
+        + "staged.txt (modified)\n\n"), out);
+    assertTrue(out.contains("=== Untracked Files ===\nnew/untracked.txt\n\n"), out);
+  }
+
+  @Test
+  void bulkAddStagesDirectoriesAndWritesIndexOnce() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    for (int i = 0; i < 300; i++) writeFile(root, "gen/d" + (i % 7) + "/f" + i + ".txt", "content " + i);
+    writeFile(root, "top.txt", "top");
+    writeFile(root, "other/skip.txt", "not added");
+    repo.add(List.of("gen", "top.txt"));
+
+    StagingArea staged = new StagingArea(root);
+    staged.load(Constants.indexFile(root));
+    assertEquals(301, staged.getAdditions().size());
+    assertEquals(Hashing.sha1("content 42".getBytes()), staged.getStagedBlob("gen/d0/f42.txt"));
+    assertFalse(staged.isStagedForAddition("other/skip.txt"));
+    assertThrows(IOException.class, () -> repo.add(List.of("top.txt", "missing.txt")));
+  }
+
+  @Test
+  void addAllStagesDeletionsAndSkipsGitletDir() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "a.txt", "a");
+    writeFile(root, "dir/b.txt", "b");
+    repo.add("a.txt");
+    repo.add("dir/b.txt");
+    repo.commit("first");
+
+    Files.delete(root.resolve("dir/b.txt"));
+    writeFile(root, "c.txt", "c");
+    repo.add("-A");
+
+    StagingArea staged = new StagingArea(root);
+    staged.load(Constants.indexFile(root));
+    assertEquals(Map.of("c.txt", Hashing.sha1("c".getBytes())), staged.getAdditions());
+    assertEquals(Set.of("dir/b.txt"), staged.getRemovals());
+  }
+
+  @Test
+  void branchAndRmBranch() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    writeFile(root, "a.txt", "a");
+    repo.add("a.txt");
+    String head = captureStdout(() -> repo.commit("first")).trim();
+
+    repo.branch("dev");
+    assertEquals(head, new Refs(root).readRef("refs/heads/dev"));
+    assertTrue(captureStdout(() -> repo.branch("dev")).contains("A branch with that name already exists."));
+    assertTrue(captureStdout(() -> repo.rmBranch("master")).contains("Cannot remove the current branch."));
+
+    captureStdout(repo::packRefs);
+    repo.rmBranch("dev");
+    assertNull(new Refs(root).readRef("refs/heads/dev"));
+    assertTrue(captureStdout(() -> repo.rmBranch("dev")).contains("A branch with that name does not exist."));
+    assertEquals(head, new Refs(root).resolveHeadCommitId());
+  }
+
+  @Test
+  void logStreamsFirstParentHistoryWithLimitAndSince() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    String[] ids = new String[3];
+    for (int i = 0; i < 3; i++) {
+      writeFile(root, "a.txt", "v" + i);
+      repo.add("a.txt");
+      int n = i;
+      ids[i] = captureStdout(() -> repo.commit("commit " + n)).trim();
+    }
+
+    String all = captureStdout(repo::log);
+    assertTrue(all.indexOf("commit " + ids[2]) < all.indexOf("commit " + ids[1]), all);
+    assertTrue(all.indexOf("commit " + ids[1]) < all.indexOf("commit " + ids[0]), all);
+    assertTrue(all.startsWith("===\ncommit " + ids[2] + "\nDate: "), all);
+    assertTrue(all.contains("\ncommit 2\n\n"), all);
+
+    String two = captureStdout(() -> repo.log(2, null));
+    assertFalse(two.contains(ids[0]));
+    assertTrue(two.contains(ids[1]));
+
+    assertEquals("", captureStdout(() -> repo.log(-1, System.currentTimeMillis() + 60_000)));
+  }
+
+  @Test
+  void globalLogAndFindReadTheCatalog() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    assertTrue(Files.exists(Constants.catalog(root)));
+
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("same message")).trim();
+    repo.branch("side");
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    String second = captureStdout(() -> repo.commit("same message")).trim();
+    writeFile(root, "a.txt", "three");
+    repo.add("a.txt");
+    String third = captureStdout(() -> repo.commit("other")).trim();
+
+    String all = captureStdout(repo::globalLog);
+    assertTrue(all.indexOf(first) < all.indexOf(second) && all.indexOf(second) < all.indexOf(third), all);
+    assertEquals(3, all.split("===\n", -1).length - 1);
+
+    assertEquals(first + "\n" + second + "\n", captureStdout(() -> repo.find("same message")));
+    assertEquals(third + "\n", captureStdout(() -> repo.find("other")));
+    assertEquals("Found no commit with that message.\n", captureStdout(() -> repo.find("missing")));
+  }
+
+  @Test
+  void catalogIsBuiltFromObjectsWhenMissing() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    Files.delete(Constants.catalog(root));
+
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("first")).trim();
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    String second = captureStdout(() -> repo.commit("second")).trim();
+    assertFalse(Files.exists(Constants.catalog(root)));
+
+    assertEquals(second + "\n", captureStdout(() -> repo.find("second")));
+    String all = captureStdout(repo::globalLog);
+    assertTrue(all.indexOf(first) > 0 && all.indexOf(first) < all.indexOf(second), all);
+  }
+
+  @Test
+  void resolveAbbrevMatchesCommitsOnly() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String id = captureStdout(() -> repo.commit("first")).trim();
+
+    assertEquals(id, repo.resolveAbbrev(id.substring(0, 6)));
+    assertEquals(id, repo.resolveAbbrev(id.substring(0, 1)));
+    assertNull(repo.resolveAbbrev(Hashing.sha1("one".getBytes(StandardCharsets.UTF_8))));
+  }
+
+  // Commits files (null content deletes) on a new branch "other" forked from HEAD, then checks
+  // master out again.
+  private String commitOnOtherBranch(Path root, Repository repo, Map<String, String> files, String message) throws Exception {
+    repo.branch("other");
+    captureStdout(() -> repo.checkoutBranch("other"));
+    for (Map.Entry<String, String> e : files.entrySet()) {
+      if (e.getValue() == null) {
+        repo.remove(e.getKey());
+        Files.delete(root.resolve(e.getKey()));
+      } else {
+        writeFile(root, e.getKey(), e.getValue());
+        repo.add(e.getKey());
+      }
+    }
+    String id = captureStdout(() -> repo.commit(message)).trim();
+    captureStdout(() -> repo.checkoutBranch("master"));
+    return id;
+  }
+
+  @Test
+  void checkoutBranchRewritesOnlyDifferingFiles() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    for (int i = 0; i < 20; i++) writeFile(root, "src/f" + i + ".txt", "shared " + i);
+    writeFile(root, "only-master.txt", "m");
+    repo.add("-A");
+    captureStdout(() -> repo.commit("base"));
+    repo.branch("side");
+    String out = captureStdout(() -> repo.checkoutBranch("side"));
+    assertTrue(out.startsWith("Updated 0 files, deleted 0"), out);
+
+    writeFile(root, "src/f3.txt", "changed on side");
+    writeFile(root, "dir/new.txt", "new");
+    repo.add(List.of("src/f3.txt", "dir/new.txt"));
+    repo.remove("only-master.txt");
+    Files.delete(root.resolve("only-master.txt"));
+    captureStdout(() -> repo.commit("side work"));
+
+    FileTime untouched = FileTime.fromMillis(1_000_000L);
+    Files.setLastModifiedTime(root.resolve("src/f7.txt"), untouched);
+    out = captureStdout(() -> repo.checkoutBranch("master"));
+    assertTrue(out.startsWith("Updated 2 files, deleted 1"), out);
+    assertEquals("shared 3", Files.readString(root.resolve("src/f3.txt")));
+    assertEquals("m", Files.readString(root.resolve("only-master.txt")));
+    assertFalse(Files.exists(root.resolve("dir")));
+    assertEquals(untouched, Files.getLastModifiedTime(root.resolve("src/f7.txt")));
+    assertEquals("master", new Refs(root).currentBranchName());
+    assertTrue(captureStdout(repo::status).endsWith("=== Untracked Files ===\n\n"));
+
+    assertEquals("No need to checkout the current branch.\n", captureStdout(() -> repo.checkoutBranch("master")));
+    assertEquals("No such branch exists.\n", captureStdout(() -> repo.checkoutBranch("nope")));
+    writeFile(root, "dir/new.txt", "mine");
+    assertEquals("There is an untracked file in the way; delete it, or add and commit it first.\n",
+        captureStdout(() -> repo.checkoutBranch("side")));
+    assertEquals("mine", Files.readString(root.resolve("dir/new.txt")));
+  }
+
+  @Test
+  void failedCheckoutRestoresTheWorkingTree() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    for (int i = 0; i < 20; i++) writeFile(root, "f" + i + ".txt", "master " + i);
+    writeFile(root, "gone.txt", "master only");
+    repo.add("-A");
+    captureStdout(() -> repo.commit("base"));
+    Map<String, String> side = new TreeMap<>();
+    for (int i = 0; i < 20; i++) side.put("f" + i + ".txt", "other " + i);
+    side.put("dir/new.txt", "lost");
+    side.put("gone.txt", null);
+    commitOnOtherBranch(root, repo, side, "other work");
+
+    String lost = Hashing.sha1("lost".getBytes(StandardCharsets.UTF_8));
+    Files.delete(Constants.objects(root).resolve("objects").resolve(lost.substring(0, 2)).resolve(lost.substring(2)));
+    IOException e = assertThrows(IOException.class, () -> captureStdout(() -> new Repository(root).checkoutBranch("other")));
+    assertTrue(e.getMessage().contains("left unchanged"), e.getMessage());
+
+    for (int i = 0; i < 20; i++) assertEquals("master " + i, Files.readString(root.resolve("f" + i + ".txt")));
+    assertEquals("master only", Files.readString(root.resolve("gone.txt")));
+    assertFalse(Files.exists(root.resolve("dir")));
+    assertEquals("master", new Refs(root).currentBranchName());
+    assertTrue(captureStdout(new Repository(root)::status).endsWith("=== Untracked Files ===\n\n"));
+  }
+
+  @Test
+  void resetAndCheckoutFileRestoreOlderContent() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    writeFile(root, "a.txt", "v1");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("first")).trim();
+    writeFile(root, "a.txt", "v2");
+    writeFile(root, "b.txt", "b");
+    repo.add(List.of("a.txt", "b.txt"));
+    captureStdout(() -> repo.commit("second"));
+
+    writeFile(root, "a.txt", "scratch");
+    repo.checkoutFile("a.txt");
+    assertEquals("v2", Files.readString(root.resolve("a.txt")));
+    repo.checkoutCommitFile(first.substring(0, 8), "a.txt");
+    assertEquals("v1", Files.readString(root.resolve("a.txt")));
+    assertEquals("File does not exist in that commit.\n", captureStdout(() -> repo.checkoutCommitFile(first, "b.txt")));
+    assertEquals("No commit with that id exists.\n", captureStdout(() -> repo.checkoutCommitFile("0000000", "a.txt")));
+
+    repo.checkoutFile("a.txt");
+    String out = captureStdout(() -> repo.reset(first.substring(0, 6)));
+    assertTrue(out.startsWith("Updated 1 files, deleted 1"), out);
+    assertEquals(first, new Refs(root).resolveHeadCommitId());
+    assertEquals("v1", Files.readString(root.resolve("a.txt")));
+    assertFalse(Files.exists(root.resolve("b.txt")));
+  }
+
+  @Test
+  void mergeCombinesChangesAndMarksConflicts() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    new Repository(root).init();
+    Repository repo = new Repository(root);
+    writeFile(root, "f.txt", "1\n2\n3\n4\n5\n");
+    writeFile(root, "gone.txt", "old\n");
+    writeFile(root, "clash.txt", "base\n");
+    repo.add(List.of("f.txt", "gone.txt", "clash.txt"));
+    captureStdout(() -> repo.commit("base"));
+
+    Map<String, String> theirs = new TreeMap<>();
+    theirs.put("f.txt", "1\n2\n3\n4\nfive\n");
+    theirs.put("new.txt", "new\n");
+    theirs.put("gone.txt", null);
+    theirs.put("clash.txt", "theirs\n");
+    String other = commitOnOtherBranch(root, repo, theirs, "other work");
+
+    Repository onMaster = new Repository(root);
+    writeFile(root, "f.txt", "one\n2\n3\n4\n5\n");
+    writeFile(root, "clash.txt", "mine\n");
+    onMaster.add(List.of("f.txt", "clash.txt"));
+    String mine = captureStdout(() -> onMaster.commit("master work")).trim();
+
+    Repository merging = new Repository(root);
+    String out = captureStdout(() -> merging.merge("other"));
+    assertEquals("Encountered a merge conflict.\n", out);
+    assertEquals("one\n2\n3\n4\nfive\n", Files.readString(root.resolve("f.txt")));
+    assertEquals("new\n", Files.readString(root.resolve("new.txt")));
+    assertFalse(Files.exists(root.resolve("gone.txt")));
+    assertEquals("<<<<<<< HEAD\nmine\n=======\ntheirs\n>>>>>>> other\n", Files.readString(root.resolve("clash.txt")));
+
+    Repository after = new Repository(root);
+    String head = new Refs(root).resolveHeadCommitId();
+    ObjectStore objects = new ObjectStore(root);
+    Commit merge = objects.readCommit(head);
+    assertEquals(List.of(mine, other), merge.getParents());
+    assertEquals("Merged other into master.", merge.getMessage());
+    assertEquals(Set.of("f.txt", "new.txt", "clash.txt"), merge.getTrackedFiles().keySet());
+    String status = captureStdout(after::status);
+    assertTrue(status.contains("=== Modifications Not Staged For Commit ===\n\n"), status);
+
+    assertEquals("Given branch is an ancestor of the current branch.\n", captureStdout(() -> new Repository(root).merge("other")));
+  }
+
+  @Test
+  void mergeFastForwardsAndRefusesToClobberUntrackedFiles() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    new Repository(root).init();
+    Repository repo = new Repository(root);
+    writeFile(root, "a.txt", "a\n");
+    repo.add("a.txt");
+    captureStdout(() -> repo.commit("base"));
+    String other = commitOnOtherBranch(root, repo, Map.of("b.txt", "b\n"), "add b");
+
+    writeFile(root, "b.txt", "untracked\n");
+    assertEquals("There is an untracked file in the way; delete it, or add and commit it first.\n",
+        captureStdout(() -> new Repository(root).merge("other")));
+    assertEquals("untracked\n", Files.readString(root.resolve("b.txt")));
+
+    Files.delete(root.resolve("b.txt"));
+    assertEquals("Current branch fast-forwarded.\n", captureStdout(() -> new Repository(root).merge("other")));
+    assertEquals(other, new Refs(root).resolveHeadCommitId());
+    assertEquals("b\n", Files.readString(root.resolve("b.txt")));
+    assertEquals("Cannot merge a branch with itself.\n", captureStdout(() -> new Repository(root).merge("master")));
+    assertEquals("A branch with that name does not exist.\n", captureStdout(() -> new Repository(root).merge("nope")));
+  }
+
   @Test
   void removeBehavior() throws Exception {
     Path root = repoRoot();
@@ -97,4 +552,217 @@ public class RepositoryTest {
     String out = captureStdout(() -> repo.commit("no-op"));
     assertTrue(out.contains("No changes added to commit."));
   }
+
+  @Test
+  void commitUpdatesCommitGraphIncrementally() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("first")).trim();
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    String second = captureStdout(() -> repo.commit("second")).trim();
+
+    Path graph = Constants.commitGraph(root);
+    assertFalse(Files.exists(graph));
+    assertTrue(Files.exists(CommitGraph.tailFile(graph)));
+    CommitGraph g = CommitGraph.load(graph);
+    assertEquals(2, g.count());
+    int pos = g.find(second);
+    assertEquals(2, g.generation(pos));
+    assertEquals(first, g.id(g.firstParent(pos)).name());
+    assertTrue(repo.isAncestor(first, second));
+    assertFalse(repo.isAncestor(second, first));
+  }
+
+  @Test
+  void commitAfterTheGraphLostItsTailKeepsFullAncestry() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    String first = "";
+    for (int i = 0; i < 3; i++) {
+      writeFile(root, "a.txt", "v" + i);
+      repo.add("a.txt");
+      String id = captureStdout(() -> repo.commit("c")).trim();
+      if (i == 0) first = id;
+    }
+    // As if gc rewrote the graph without the commits in the tail.
+    Path graph = Constants.commitGraph(root);
+    CommitGraph.write(graph, List.of());
+    writeFile(root, "a.txt", "last");
+    repo.add("a.txt");
+    String last = captureStdout(() -> repo.commit("last")).trim();
+
+    CommitGraph g = CommitGraph.load(graph);
+    assertEquals(4, g.count());
+    assertEquals(4, g.generation(g.find(last)));
+    assertTrue(g.isAncestor(g.find(first), g.find(last)));
+  }
+
+  @Test
+  void gcFoldsTheCommitGraphTailIntoTheGraph() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("first")).trim();
+    captureStdout(() -> repo.gc(Duration.ZERO));
+
+    Path graph = Constants.commitGraph(root);
+    assertTrue(Files.exists(graph));
+    assertFalse(Files.exists(CommitGraph.tailFile(graph)));
+    byte[] folded = Files.readAllBytes(graph);
+
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    String second = captureStdout(() -> repo.commit("second")).trim();
+    assertArrayEquals(folded, Files.readAllBytes(graph));
+    CommitGraph g = CommitGraph.load(graph);
+    assertEquals(2, g.count());
+    assertEquals(first, g.id(g.firstParent(g.find(second))).name());
+  }
+
+  @Test
+  void commitGraphIsRebuiltWhenMissing() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    String first = captureStdout(() -> repo.commit("first")).trim();
+    Files.deleteIfExists(Constants.commitGraph(root));
+    Files.delete(CommitGraph.tailFile(Constants.commitGraph(root)));
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    String second = captureStdout(() -> repo.commit("second")).trim();
+
+    CommitGraph g = CommitGraph.load(Constants.commitGraph(root));
+    assertEquals(2, g.count());
+    assertTrue(g.isAncestor(g.find(first), g.find(second)));
+  }
+
+  @Test
+  void gcPacksReachableAndPrunesUnreachable() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    repo.commit("first");
+    writeFile(root, "a.txt", "two");
+    repo.add("a.txt");
+    repo.commit("second");
+    writeFile(root, "b.txt", "staged");
+    repo.add("b.txt");
+
+    ObjectStore store = new ObjectStore(root);
+    String junk = store.writeBlob("never committed".getBytes(StandardCharsets.UTF_8));
+
+    String out = captureStdout(() -> repo.gc(Duration.ZERO));
+    // 2 commits, their 2 root trees, 2 versions of a.txt and the staged b.txt.
+    assertTrue(out.contains("Marked 7 reachable objects from 2 commits"), out);
+    assertTrue(out.contains("Pruned 1 unreachable objects"), out);
+
+    ObjectStore after = new ObjectStore(root);
+    assertFalse(after.exists(junk));
+    assertTrue(after.listLoose().isEmpty());
+    assertEquals(1, after.listPacks().size());
+    Commit head = after.readCommit(new Refs(root).resolveHeadCommitId());
+    assertEquals("two", new String(after.readBlob(head.getTrackedFiles().get("a.txt")), StandardCharsets.UTF_8));
+    assertEquals("one", new String(after.readBlob(Hashing.sha1("one".getBytes())), StandardCharsets.UTF_8));
+    assertEquals("staged", new String(after.readBlob(Hashing.sha1("staged".getBytes())), StandardCharsets.UTF_8));
+
+    captureStdout(() -> repo.gc(Duration.ZERO));
+    assertEquals(1, after.listPacks().size());
+  }
+
+  @Test
+  void gcWaitsForACommitGraphAppendToFinish() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    writeFile(root, "a.txt", "one");
+    repo.add("a.txt");
+    captureStdout(() -> repo.commit("first"));
+
+    Path graph = Constants.commitGraph(root);
+    String out;
+    try (LockFile lock = LockFile.acquire(graph)) {
+      Thread release = new Thread(() -> {
+        try {
+          Thread.sleep(100);
+          lock.close();
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+      release.start();
+      out = captureStdout(() -> repo.gc(Duration.ZERO));
+      release.join();
+    }
+    assertFalse(out.contains("Skipped"), out);
+    assertTrue(Files.exists(graph));
+    assertFalse(Files.exists(CommitGraph.tailFile(graph)));
+    assertEquals(1, new ObjectStore(root).listPacks().size());
+  }
+
+  @Test
+  void gcKeepsYoungUnreachableObjects() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    ObjectStore store = new ObjectStore(root);
+    String junk = store.writeBlob("fresh".getBytes(StandardCharsets.UTF_8));
+    captureStdout(() -> repo.gc(Repository.DEFAULT_GC_GRACE));
+    assertTrue(store.exists(junk));
+  }
+
+  @Test
+  void gcKeepsYoungUnreachablePackedObjectsLoose() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    Repository repo = new Repository(root);
+    repo.init();
+    ObjectStore store = new ObjectStore(root);
+    String junk = store.writeBlob("packed".getBytes(StandardCharsets.UTF_8));
+    store.writePack(List.of(junk));
+    for (FileObjectStore.LooseObject obj : store.listLoose()) store.deleteLoose(obj);
+
+    String out = captureStdout(() -> repo.gc(Repository.DEFAULT_GC_GRACE));
+    assertTrue(out.contains("Kept 1 unreachable packed objects loose"), out);
+    ObjectStore after = new ObjectStore(root);
+    assertTrue(after.listPacks().isEmpty());
+    assertEquals(1, after.listLoose().size());
+    assertEquals("packed", new String(after.readBlob(junk), StandardCharsets.UTF_8));
+
+    captureStdout(() -> repo.gc(Duration.ZERO));
+    assertFalse(new ObjectStore(root).exists(junk));
+  }
+
+  @Test
+  void writingAPackedObjectStoresItLooseAgain() throws Exception {
+    Path root = repoRoot();
+    Files.createDirectories(root);
+    ObjectStore store = new ObjectStore(root);
+    String id = store.writeBlob("again".getBytes(StandardCharsets.UTF_8));
+    store.writePack(List.of(id));
+    for (FileObjectStore.LooseObject obj : store.listLoose()) store.deleteLoose(obj);
+
+    assertEquals(id, store.writeBlob("again".getBytes(StandardCharsets.UTF_8)));
+    assertEquals(1, store.listLoose().size());
+  }
 }
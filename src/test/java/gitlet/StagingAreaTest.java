@@ -156,6 +156,79 @@ public class StagingAreaTest {
     assertEquals(expected, content);
   }
 
+  @Test
+  void statEntriesRoundTripAndSurviveClear() throws Exception {
+    Path repo = repoRoot();
+    Path idx = indexPath();
+
+    StagingArea s1 = new StagingArea(repo);
+    s1.recordStat("dir/a.txt", new StagingArea.Stat("blobA", 3, 1_000L, 42, 0100644));
+    s1.stageForAddition("b.txt", "blobB");
+    s1.clear();
+    s1.save(idx);
+    assertEquals("S\tdir/a.txt\tblobA\t3\t1000\t42\t33188\n", Files.readString(idx, StandardCharsets.UTF_8));
+
+    StagingArea s2 = new StagingArea(repo);
+    s2.load(idx);
+    assertEquals(s1.getStats(), s2.getStats());
+    assertTrue(s2.isEmpty());
+  }
+
+  @Test
+  void racyEntriesStayDistrustedAcrossLaterSaves() throws Exception {
+    Path repo = repoRoot();
+    Path idx = indexPath();
+    Path file = repo.resolve("a.txt");
+    // The file's mtime tick is still running when the index is first written.
+    java.nio.file.attribute.FileTime tick = java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 300);
+    Files.writeString(file, "one", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, tick);
+    StagingArea s1 = new StagingArea(repo);
+    s1.recordStat("a.txt", StagingArea.Stat.of(file).withBlob("blobA"));
+    s1.save(idx);
+
+    // Edited again within the same tick, keeping its size.
+    Files.writeString(file, "two", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, tick);
+    Thread.sleep(400);
+
+    // Any later command rewrites the index, which now has an mtime after the file's.
+    StagingArea s2 = new StagingArea(repo);
+    s2.load(idx);
+    s2.save(idx);
+
+    StagingArea s3 = new StagingArea(repo);
+    s3.load(idx);
+    assertNull(s3.cachedBlob("a.txt", StagingArea.Stat.of(file)));
+  }
+
+  @Test
+  void cachedBlobRequiresMatchingNonRacyStat() throws Exception {
+    Path repo = repoRoot();
+    Path idx = indexPath();
+    Path file = repo.resolve("a.txt");
+    Files.writeString(file, "one", StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    StagingArea.Stat now = StagingArea.Stat.of(file);
+
+    StagingArea s1 = new StagingArea(repo);
+    s1.recordStat("a.txt", now.withBlob("blobA"));
+    s1.save(idx);
+
+    // Index written no later than the file: the entry is racy and must not be trusted.
+    Files.setLastModifiedTime(idx, java.nio.file.attribute.FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis()));
+    StagingArea racy = new StagingArea(repo);
+    racy.load(idx);
+    assertNull(racy.cachedBlob("a.txt", now));
+
+    Files.setLastModifiedTime(idx, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    StagingArea clean = new StagingArea(repo);
+    clean.load(idx);
+    assertEquals("blobA", clean.cachedBlob("a.txt", now));
+    assertNull(clean.cachedBlob("a.txt", new StagingArea.Stat(null, now.size() + 1, now.mtimeNs(), now.inode(), now.mode())));
+    assertNull(clean.cachedBlob("other.txt", now));
+  }
+
   @Test
   void loadErrorsOnCorruptLinesAndUnknownTags() throws Exception {
     Path idx = indexPath();
@@ -171,5 +244,9 @@ public class StagingAreaTest {
     Files.writeString(idx, "R\tpath\textra\n", StandardCharsets.UTF_8);
     StagingArea s3 = new StagingArea();
     assertThrows(IOException.class, () -> s3.load(idx));
+
+    Files.writeString(idx, "S\tpath\tblob\tnot-a-size\t1\t2\t3\n", StandardCharsets.UTF_8);
+    StagingArea s4 = new StagingArea();
+    assertThrows(IOException.class, () -> s4.load(idx));
   }
 }
@@ -0,0 +1,75 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TreeTest {
+  @TempDir Path tmp;
+
+  private ObjectStore store() throws Exception {
+    Path root = tmp.resolve("repo");
+    Files.createDirectories(Constants.objects(root));
+    return new ObjectStore(root);
+  }
+
+  @Test
+  void serializeDeserializeRoundTrip() {
+    Tree t = Tree.of(List.of(
+        new Tree.Entry("b.txt", Tree.Kind.BLOB, "B"),
+        new Tree.Entry("dir", Tree.Kind.TREE, "D")));
+    Tree back = Tree.deserialize(t.serialize());
+    assertEquals(t.getId(), back.getId());
+    assertEquals(Tree.Kind.TREE, back.get("dir").kind());
+    assertThrows(IllegalArgumentException.class, () -> new Tree.Entry("a/b", Tree.Kind.BLOB, "X"));
+  }
+
+  @Test
+  void buildAndFlattenNestedPaths() throws Exception {
+    ObjectStore store = store();
+    Map<String, String> files = Map.of("a.txt", "A", "src/x/Main.java", "M", "src/y.txt", "Y");
+    String root = Tree.build(store, files);
+    assertEquals(new TreeMap<>(files), store.flattenTree(root));
+    assertEquals("M", Tree.lookup(store, root, "src/x/Main.java"));
+    assertNull(Tree.lookup(store, root, "src/x"));
+    assertNull(Tree.lookup(store, root, "a.txt/nope"));
+  }
+
+  @Test
+  void updateRewritesOnlyChangedPathAndSharesSubtrees() throws Exception {
+    ObjectStore store = store();
+    String root = Tree.build(store, Map.of("lib/a", "A", "lib/b", "B", "app/main", "M1"));
+    TreeMap<String, String> changes = new TreeMap<>();
+    changes.put("app/main", "M2");
+    String next = Tree.update(store, root, changes);
+
+    assertEquals(store.readTree(root).get("lib").id(), store.readTree(next).get("lib").id());
+    assertNotEquals(store.readTree(root).get("app").id(), store.readTree(next).get("app").id());
+
+    changes.clear();
+    changes.put("app/main", null);
+    String removed = Tree.update(store, next, changes);
+    assertNull(store.readTree(removed).get("app"));
+    assertEquals(Map.of("lib/a", "A", "lib/b", "B"), store.flattenTree(removed));
+  }
+
+  @Test
+  void diffReportsBlobChangesOnly() throws Exception {
+    ObjectStore store = store();
+    String a = Tree.build(store, Map.of("same/x", "X", "dir/f", "F1", "gone", "G"));
+    String b = Tree.build(store, Map.of("same/x", "X", "dir/f", "F2", "new", "N"));
+    List<Tree.Change> changes = Tree.diff(store, a, b);
+    assertEquals(List.of(
+        new Tree.Change("dir/f", "F1", "F2"),
+        new Tree.Change("gone", "G", null),
+        new Tree.Change("new", null, "N")), changes);
+    assertTrue(Tree.diff(store, a, a).isEmpty());
+  }
+}
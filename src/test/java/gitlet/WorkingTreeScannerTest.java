@@ -0,0 +1,60 @@
+package gitlet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkingTreeScannerTest {
+  @TempDir Path tmp;
+
+  private void write(String rel, String content) throws Exception {
+    Path p = tmp.resolve(rel);
+    Files.createDirectories(p.getParent());
+    Files.writeString(p, content, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  void classifiesWideAndNestedTrees() throws Exception {
+    Map<String, String> expected = new HashMap<>();
+    for (int i = 0; i < 1000; i++) {
+      write("wide/f" + i, "v" + i);
+      expected.put("wide/f" + i, Hashing.sha1(("v" + i).getBytes(StandardCharsets.UTF_8)));
+    }
+    write("wide/f7", "changed");
+    write("deep/a/b/c/new.txt", "x");
+    write(".gitlet/objects/ignored", "x");
+    expected.put("deep/gone.txt", "deadbeef");
+
+    WorkingTreeScanner.Result r = new WorkingTreeScanner(tmp, expected, new StagingArea(tmp)).scan(2);
+
+    assertEquals(Map.of("wide/f7", WorkingTreeScanner.MODIFIED, "deep/gone.txt", WorkingTreeScanner.DELETED), r.notStaged());
+    assertEquals(List.of("deep/a/b/c/new.txt"), List.copyOf(r.untracked()));
+    assertEquals(999, r.refreshed().size());
+  }
+
+  @Test
+  void trustsMatchingStatsInsteadOfHashing() throws Exception {
+    write("a.txt", "one");
+    // Written in an earlier tick than the index, so the entry is not smudged as racy.
+    Files.setLastModifiedTime(tmp.resolve("a.txt"), java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() - 10_000));
+    Path idx = tmp.resolve("index");
+    StagingArea index = new StagingArea(tmp);
+    // A stat claiming a different blob proves the file was not rehashed.
+    index.recordStat("a.txt", StagingArea.Stat.of(tmp.resolve("a.txt")).withBlob("claimed"));
+    index.save(idx);
+    Files.setLastModifiedTime(idx, java.nio.file.attribute.FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+    index.load(idx);
+
+    WorkingTreeScanner.Result r = new WorkingTreeScanner(tmp, Map.of("a.txt", "claimed"), index).scan(1);
+    assertTrue(r.notStaged().isEmpty());
+    assertTrue(r.refreshed().isEmpty());
+  }
+}